@@ -0,0 +1,152 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.benchmark;
+
+import edu.brandeis.cs.nlp.mae.MaeException;
+import edu.brandeis.cs.nlp.mae.agreement.MaeAgreementMain;
+import edu.brandeis.cs.nlp.mae.database.InMemorySqliteDriverImpl;
+import edu.brandeis.cs.nlp.mae.database.MaeDriverI;
+import edu.brandeis.cs.nlp.mae.util.MappedSet;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static edu.brandeis.cs.nlp.mae.agreement.MaeAgreementStrings.*;
+
+/**
+ * Created by krim on 11/15/2016.
+ *
+ * Benchmarks for each IAA metric over a synthetic multi-annotator corpus.
+ * Parses are warmed up once per trial, so measurements cover the
+ * calculation itself rather than XML parsing, except for
+ * {@link #loadAnnotationFiles()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AgreementBenchmark {
+
+    @Param({"10000"})
+    public int textLength;
+
+    @Param({"5"})
+    public double tagDensity;
+
+    @Param({"0.5"})
+    public double linkDensity;
+
+    @Param({"3"})
+    public int annotators;
+
+    @Param({"10"})
+    public int documents;
+
+    @Param({"0"})
+    public int threads;
+
+    private File workDir;
+    private MaeDriverI driver;
+    private MaeAgreementMain calc;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, MaeException, SAXException {
+        workDir = Files.createTempDirectory("mae-bench").toFile();
+        SyntheticCorpus corpus = new SyntheticCorpus(textLength, tagDensity, linkDensity, annotators, documents, 42L);
+        File taskFile = corpus.writeCorpus(workDir);
+        driver = new InMemorySqliteDriverImpl();
+        driver.readTask(taskFile);
+        calc = newCalc();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, MaeException {
+        driver.destroy();
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    private MaeAgreementMain newCalc() throws IOException, MaeException, SAXException {
+        MaeAgreementMain newCalc = new MaeAgreementMain(driver);
+        if (threads > 0) {
+            newCalc.setParallelism(threads);
+        }
+        newCalc.loadAnnotationFiles(workDir);
+        return newCalc;
+    }
+
+    /**
+     * A metric and its targets: attributes of each extent tag type for local
+     * agreements, extent tag types themselves for global agreements.
+     */
+    @State(Scope.Benchmark)
+    public static class Target {
+
+        @Param({ALPHAU_CALC_STRING, MULTIPI_CALC_STRING, MULTIKAPPA_CALC_STRING})
+        public String metric;
+
+        @Param({"global", "local"})
+        public String scope;
+
+        MappedSet<String, String> targets;
+
+        @Setup(Level.Trial)
+        public void setUp(AgreementBenchmark bench) throws IOException, MaeException, SAXException {
+            targets = new MappedSet<>();
+            for (int i = 0; i < SyntheticCorpus.EXTENT_TYPES.length; i++) {
+                if (scope.equals("local")) {
+                    targets.putItem(SyntheticCorpus.EXTENT_TYPES[i], SyntheticCorpus.EXTENT_ATTS[i]);
+                } else {
+                    targets.putCollection(SyntheticCorpus.EXTENT_TYPES[i], Collections.<String>emptyList());
+                }
+            }
+            // warm the parse cache
+            bench.calculate(this);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Double> calculate(Target target) throws IOException, MaeException, SAXException {
+        if (target.scope.equals("local")) {
+            return calc.calculateLocalAgreement(target.metric, target.targets);
+        } else {
+            return calc.calculateGlobalAgreement(target.metric, target.targets);
+        }
+    }
+
+    @Benchmark
+    public MaeAgreementMain loadAnnotationFiles() throws IOException, MaeException, SAXException {
+        return newCalc();
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.benchmark;
+
+import edu.brandeis.cs.nlp.mae.MaeException;
+import edu.brandeis.cs.nlp.mae.controller.action.SaveXML;
+import edu.brandeis.cs.nlp.mae.database.LocalSqliteDriverImpl;
+import edu.brandeis.cs.nlp.mae.database.MaeDriverI;
+import edu.brandeis.cs.nlp.mae.model.ExtentTag;
+import edu.brandeis.cs.nlp.mae.model.TagType;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by krim on 11/15/2016.
+ *
+ * Benchmarks for loading a single annotation into a driver, and for the
+ * queries the UI issues against a loaded annotation: tags at a caret
+ * location, anchors for coloring the text pane, and serialization on save.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DriverBenchmark {
+
+    @Param({"10000", "100000"})
+    public int textLength;
+
+    @Param({"5"})
+    public double tagDensity;
+
+    @Param({"0.5"})
+    public double linkDensity;
+
+    private File workDir;
+    private File taskFile;
+    private File annotationFile;
+    private MaeDriverI driver;
+    private TagType anchorType;
+    private int[] locations;
+    private int nextLocation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, MaeException {
+        workDir = Files.createTempDirectory("mae-bench").toFile();
+        SyntheticCorpus corpus = new SyntheticCorpus(textLength, tagDensity, linkDensity, 1, 1, 42L);
+        taskFile = corpus.writeCorpus(workDir);
+        annotationFile = new File(workDir, "doc0_a0.xml");
+        driver = newDriver("loaded");
+        driver.readAnnotation(annotationFile);
+        anchorType = driver.getTagTypeByName(SyntheticCorpus.EXTENT_TYPES[0]);
+
+        Random random = new Random(42L);
+        locations = new int[1024];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = random.nextInt(textLength);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, MaeException {
+        driver.destroy();
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    private MaeDriverI newDriver(String name) throws IOException, MaeException {
+        MaeDriverI newDriver = new LocalSqliteDriverImpl(new File(workDir, name + ".db").getAbsolutePath());
+        newDriver.readTask(taskFile);
+        return newDriver;
+    }
+
+    /**
+     * A fresh driver with the task installed, for each load measurement.
+     */
+    @State(Scope.Thread)
+    public static class EmptyDriver {
+        MaeDriverI driver;
+
+        @Setup(Level.Invocation)
+        public void setUp(DriverBenchmark bench) throws IOException, MaeException {
+            driver = bench.newDriver("empty");
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws MaeException {
+            driver.destroy();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public String load(EmptyDriver empty) throws MaeException {
+        return empty.driver.readAnnotation(annotationFile);
+    }
+
+    @Benchmark
+    public List<ExtentTag> getTagsAt() throws MaeException {
+        nextLocation = (nextLocation + 1) % locations.length;
+        return driver.getTagsAt(locations[nextLocation]);
+    }
+
+    @Benchmark
+    public List<Integer> getAllAnchorsOfTagType() throws MaeException {
+        return driver.getAllAnchorsOfTagType(anchorType);
+    }
+
+    @Benchmark
+    public List<Integer> getAllAnchors() throws MaeException {
+        return driver.getAllAnchors();
+    }
+
+    @Benchmark
+    public String generateXMLString() throws MaeException {
+        return SaveXML.generateXMLString(driver);
+    }
+
+}
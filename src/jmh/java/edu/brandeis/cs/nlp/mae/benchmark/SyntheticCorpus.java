@@ -0,0 +1,218 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Created by krim on 11/15/2016.
+ *
+ * Generates a synthetic task DTD and annotation XMLs for benchmarking.
+ * The task has two extent tag types (NOUN, VERB) with one categorical
+ * attribute each, and one link tag type (LINK) between them. Each annotator
+ * copies a shared base annotation of a document, then shifts spans or flips
+ * attribute values of some tags, so agreement scores are non-trivial.
+ */
+public class SyntheticCorpus {
+
+    public static final String TASK_NAME = "SyntheticTask";
+    public static final String[] EXTENT_TYPES = {"NOUN", "VERB"};
+    public static final String[] EXTENT_ATTS = {"type", "tense"};
+    private static final String[][] EXTENT_ATT_VALUES = {
+            {"person", "place", "thing", "other"},
+            {"past", "present", "future"}};
+    private static final String[] EXTENT_PREFIXES = {"N", "V"};
+    public static final String LINK_TYPE = "LINK";
+    private static final String[] LINK_VALUES = {"agent", "patient"};
+
+    private static final double DISAGREEMENT = 0.2;
+
+    private final int textLength;
+    private final double tagDensity;
+    private final double linkDensity;
+    private final int annotators;
+    private final int documents;
+    private final long seed;
+
+    /**
+     * @param textLength  number of characters in each primary text
+     * @param tagDensity  extent tags per 100 characters
+     * @param linkDensity link tags per extent tag
+     * @param annotators  number of annotation files per document
+     * @param documents   number of documents
+     */
+    public SyntheticCorpus(int textLength, double tagDensity, double linkDensity, int annotators, int documents, long seed) {
+        this.textLength = textLength;
+        this.tagDensity = tagDensity;
+        this.linkDensity = linkDensity;
+        this.annotators = annotators;
+        this.documents = documents;
+        this.seed = seed;
+    }
+
+    public File writeTask(File dir) throws IOException {
+        File dtd = new File(dir, "syntheticTask.dtd");
+        try (PrintWriter out = new PrintWriter(dtd, StandardCharsets.UTF_8.name())) {
+            out.printf("<!ENTITY name \"%s\">\n\n", TASK_NAME);
+            for (int i = 0; i < EXTENT_TYPES.length; i++) {
+                out.printf("<!ELEMENT %s ( #PCDATA ) >\n", EXTENT_TYPES[i]);
+                out.printf("<!ATTLIST %s %s ( %s ) #IMPLIED >\n\n",
+                        EXTENT_TYPES[i], EXTENT_ATTS[i], String.join(" | ", (CharSequence[]) EXTENT_ATT_VALUES[i]));
+            }
+            out.printf("<!ELEMENT %s EMPTY >\n", LINK_TYPE);
+            out.printf("<!ATTLIST %s relationship ( %s ) #IMPLIED >\n",
+                    LINK_TYPE, String.join(" | ", (CharSequence[]) LINK_VALUES));
+        }
+        return dtd;
+    }
+
+    /**
+     * Writes the task DTD and doc{i}_a{j}.xml files into the directory.
+     *
+     * @return the task DTD file
+     */
+    public File writeCorpus(File dir) throws IOException {
+        File dtd = writeTask(dir);
+        for (int doc = 0; doc < documents; doc++) {
+            Random docRandom = new Random(seed + doc);
+            String text = generateText(docRandom);
+            List<Object[]> baseTags = generateTags(docRandom);
+            for (int annotator = 0; annotator < annotators; annotator++) {
+                Random annRandom = new Random(seed + doc * 31 + annotator + 1);
+                File xml = new File(dir, String.format("doc%d_a%d.xml", doc, annotator));
+                writeAnnotation(xml, text, perturb(baseTags, annRandom), annRandom);
+            }
+        }
+        return dtd;
+    }
+
+    private String generateText(Random random) {
+        StringBuilder text = new StringBuilder(textLength);
+        int lineLength = 0;
+        while (text.length() < textLength) {
+            if (random.nextInt(8) == 0 && text.length() > 0) {
+                text.append(lineLength > 72 ? '\n' : ' ');
+                lineLength = lineLength > 72 ? 0 : lineLength + 1;
+            } else {
+                text.append((char) ('a' + random.nextInt(26)));
+                lineLength++;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Each extent tag is {typeIndex, start, end, valueIndex}.
+     */
+    private List<Object[]> generateTags(Random random) {
+        int count = (int) (textLength * tagDensity / 100);
+        List<Object[]> tags = new ArrayList<>(count);
+        Set<Long> used = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            int type = random.nextInt(EXTENT_TYPES.length);
+            int start = random.nextInt(Math.max(1, textLength - 12));
+            int end = Math.min(textLength, start + 1 + random.nextInt(12));
+            if (used.add(spanKey(start, end))) {
+                tags.add(new Object[]{type, start, end, random.nextInt(EXTENT_ATT_VALUES[type].length)});
+            }
+        }
+        return tags;
+    }
+
+    private List<Object[]> perturb(List<Object[]> baseTags, Random random) {
+        List<Object[]> tags = new ArrayList<>(baseTags.size());
+        Set<Long> used = new HashSet<>();
+        for (Object[] base : baseTags) {
+            used.add(spanKey((int) base[1], (int) base[2]));
+        }
+        for (Object[] base : baseTags) {
+            Object[] tag = base.clone();
+            int type = (int) tag[0];
+            if (random.nextDouble() < DISAGREEMENT) {
+                int shift = random.nextInt(5) - 2;
+                int start = Math.max(0, (int) tag[1] + shift);
+                int end = Math.max(start + 1, Math.min(textLength, (int) tag[2] + shift));
+                // coding studies reject two tags on the same range
+                if (used.add(spanKey(start, end))) {
+                    used.remove(spanKey((int) tag[1], (int) tag[2]));
+                    tag[1] = start;
+                    tag[2] = end;
+                }
+            }
+            if (random.nextDouble() < DISAGREEMENT) {
+                tag[3] = random.nextInt(EXTENT_ATT_VALUES[type].length);
+            }
+            tags.add(tag);
+        }
+        return tags;
+    }
+
+    private static long spanKey(int start, int end) {
+        return ((long) start << 32) | end;
+    }
+
+    private void writeAnnotation(File xml, String text, List<Object[]> tags, Random random) throws IOException {
+        try (PrintWriter out = new PrintWriter(xml, StandardCharsets.UTF_8.name())) {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>");
+            out.printf("<%s>\n", TASK_NAME);
+            out.printf("<TEXT><![CDATA[%s]]></TEXT>\n", text);
+            out.println("<TAGS>");
+            List<String> ids = new ArrayList<>(tags.size());
+            List<String> texts = new ArrayList<>(tags.size());
+            int[] counters = new int[EXTENT_TYPES.length];
+            for (Object[] tag : tags) {
+                int type = (int) tag[0];
+                int start = (int) tag[1];
+                int end = (int) tag[2];
+                String id = EXTENT_PREFIXES[type] + counters[type]++;
+                String tagText = text.substring(start, end).replace('\n', ' ');
+                ids.add(id);
+                texts.add(tagText);
+                out.printf("<%s id=\"%s\" spans=\"%d~%d\" text=\"%s\" %s=\"%s\" />\n",
+                        EXTENT_TYPES[type], id, start, end, tagText,
+                        EXTENT_ATTS[type], EXTENT_ATT_VALUES[type][(int) tag[3]]);
+            }
+            int links = tags.isEmpty() ? 0 : (int) (tags.size() * linkDensity);
+            for (int i = 0; i < links; i++) {
+                int from = random.nextInt(tags.size());
+                int to = random.nextInt(tags.size());
+                out.printf("<%s id=\"L%d\" fromID=\"%s\" fromText=\"%s\" toID=\"%s\" toText=\"%s\" relationship=\"%s\" />\n",
+                        LINK_TYPE, i, ids.get(from), texts.get(from), ids.get(to), texts.get(to),
+                        LINK_VALUES[random.nextInt(LINK_VALUES.length)]);
+            }
+            out.println("</TAGS>");
+            out.printf("</%s>\n", TASK_NAME);
+        }
+    }
+
+}
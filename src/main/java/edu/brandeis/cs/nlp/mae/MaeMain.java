@@ -43,6 +43,10 @@ public class MaeMain {
 
     private static final Logger logger = LoggerFactory.getLogger(MaeMain.class.getName());
 
+    // -Dmae.driver=memory is equivalent to --in-memory
+    private static final String DRIVER_PROPERTY = "mae.driver";
+    private static final String IN_MEMORY_DRIVER = "memory";
+
     private static void enableOSXQuitStrategy() {
         // for two reasons:
         // 1) unless using apple jdk extensions (com.apple.eawt.Application, QuitStagety)
@@ -88,6 +92,9 @@ public class MaeMain {
             @Override
             public void run() {
                 MaeMainController controller = createAndShowGUI();
+                if (IN_MEMORY_DRIVER.equals(System.getProperty(DRIVER_PROPERTY))) {
+                    controller.setUsingInMemoryDrivers(true);
+                }
 
                 if (args.length > 0) {
                     boolean argCmd = false;
@@ -96,6 +103,10 @@ public class MaeMain {
                     String dFilename = null;
                     String dFilenames = null;
                     Collections.addAll(argsList, args);
+                    if (argsList.contains("--in-memory")) {
+                        controller.setUsingInMemoryDrivers(true);
+                        argCmd = true;
+                    }
                     if (argsList.contains("--task")) {
                         tFilename = argsList.get(argsList.indexOf("--task") + 1);
                         argCmd = true;
@@ -112,20 +123,16 @@ public class MaeMain {
                     }
 
                     if (tFilename != null) {
-                        controller.setupScheme(new File(tFilename), true);
+                        List<File> documents = new ArrayList<>();
                         if (dFilename != null) {
-                            controller.addDocument(new File(dFilename));
+                            documents.add(new File(dFilename));
                         } else if (dFilenames != null) {
-                            String[] filesToOpen = dFilenames.split(",");
-                            for (String fileName : filesToOpen) {
-                                controller.addDocument(new File((fileName)));
-                                try {
-                                    Thread.sleep(500);
-                                } catch (InterruptedException e) {
-                                    e.printStackTrace();
-                                }
+                            for (String fileName : dFilenames.split(",")) {
+                                documents.add(new File(fileName));
                             }
                         }
+                        // documents are opened together once the task is ready
+                        controller.setupScheme(new File(tFilename), true, documents);
                     }
                 }
             }
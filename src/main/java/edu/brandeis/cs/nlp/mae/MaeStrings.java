@@ -25,6 +25,7 @@
 package edu.brandeis.cs.nlp.mae;
 
 import java.awt.*;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Calendar;
@@ -66,6 +67,7 @@ public class MaeStrings {
     public final static String ADJ_DB_URL = DB_DRIVER + ADJ_DB_FILE;
     public final static String TEST_DB_FILE = "test.db";
     public final static String TEST_DB_URL = DB_DRIVER + TEST_DB_FILE;
+    public final static String JOURNAL_DIR = System.getProperty("user.home") + File.separator + ".mae" + File.separator + "journals";
 
     /* Internal data structures and actionEvents */
     public final static String COMBO_DELIMITER = " - ";
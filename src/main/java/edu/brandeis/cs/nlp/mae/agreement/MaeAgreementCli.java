@@ -0,0 +1,351 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.agreement;
+
+import edu.brandeis.cs.nlp.mae.MaeException;
+import edu.brandeis.cs.nlp.mae.agreement.io.AgreementResultStore;
+import edu.brandeis.cs.nlp.mae.database.InMemorySqliteDriverImpl;
+import edu.brandeis.cs.nlp.mae.database.MaeDBException;
+import edu.brandeis.cs.nlp.mae.database.MaeDriverI;
+import edu.brandeis.cs.nlp.mae.util.MappedSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static edu.brandeis.cs.nlp.mae.agreement.MaeAgreementStrings.*;
+
+/**
+ * Computes inter-annotator agreements without GUI, for a build server or
+ * any other machine without a display. Takes a DTD, a dataset directory,
+ * and metrics with their targets, then prints results in JSON or CSV,
+ * along with how long each metric took. With --cache, per-document
+ * contributions are kept in the directory, and later runs only re-parse
+ * documents whose annotation files changed.
+ *
+ * <pre>
+ * --task iaaSample.dtd --dataset iaa_example \
+ *     --local alphau=NOUN/type/comment,VERB \
+ *     --global pi=MOOD_DECL,MOOD_IMPE,MOOD_SUBJ \
+ *     --format csv --threads 4 --output results.csv --cache .iaa-cache
+ * </pre>
+ *
+ * Created by krim on 11/12/2016.
+ */
+public class MaeAgreementCli {
+
+    private static final Logger logger = LoggerFactory.getLogger(MaeAgreementCli.class.getName());
+
+    static final String FORMAT_JSON = "json";
+    static final String FORMAT_CSV = "csv";
+
+    static final String USAGE = "usage: MaeAgreementCli --task <dtd> --dataset <dir>\n" +
+            "        (--local|--global) <metric>=<TAG>[/<att>...][,<TAG>[/<att>...]...] ...\n" +
+            "        [--format json|csv] [--threads <n>] [--output <file>] [--cache <dir>]\n" +
+            "  metrics: alphau, pi, kappa\n";
+
+    private static final Map<String, String> METRIC_NAMES = new LinkedHashMap<String, String>() {{
+        put("alphau", ALPHAU_CALC_STRING);
+        put("pi", MULTIPI_CALC_STRING);
+        put("kappa", MULTIKAPPA_CALC_STRING);
+    }};
+
+    private File taskFile;
+    private File datasetDir;
+    private String format = FORMAT_JSON;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private File outputFile;
+    private File cacheDir;
+    private List<MetricRequest> requests = new ArrayList<>();
+
+    /**
+     * @return exit status; 0 on success, 1 on failure, 2 on bad arguments
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        MaeAgreementCli cli = new MaeAgreementCli();
+        try {
+            cli.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return 2;
+        }
+        try {
+            if (cli.outputFile == null) {
+                cli.calculate(out);
+            } else {
+                try (PrintStream fileOut = new PrintStream(new FileOutputStream(cli.outputFile), true, StandardCharsets.UTF_8.name())) {
+                    cli.calculate(fileOut);
+                }
+            }
+            return 0;
+        } catch (IOException | MaeException | SAXException e) {
+            logger.error("failed to calculate agreements", e);
+            err.println("failed to calculate agreements: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(run(args, System.out, System.err));
+    }
+
+    void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--task":
+                    taskFile = new File(value);
+                    break;
+                case "--dataset":
+                    datasetDir = new File(value);
+                    break;
+                case "--local":
+                case "--global":
+                    requests.add(parseMetric(option.equals("--global"), value));
+                    break;
+                case "--format":
+                    if (!value.equals(FORMAT_JSON) && !value.equals(FORMAT_CSV)) {
+                        throw new IllegalArgumentException("unknown format: " + value);
+                    }
+                    format = value;
+                    break;
+                case "--threads":
+                    try {
+                        threads = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("not a number: " + value);
+                    }
+                    break;
+                case "--output":
+                    outputFile = new File(value);
+                    break;
+                case "--cache":
+                    cacheDir = new File(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + option);
+            }
+        }
+        if (taskFile == null || datasetDir == null) {
+            throw new IllegalArgumentException("both --task and --dataset are required");
+        }
+        if (requests.size() == 0) {
+            throw new IllegalArgumentException("at least one --local or --global metric is required");
+        }
+    }
+
+    static MetricRequest parseMetric(boolean global, String spec) {
+        int eq = spec.indexOf('=');
+        if (eq < 1 || eq == spec.length() - 1) {
+            throw new IllegalArgumentException("metric should look like <metric>=<targets>: " + spec);
+        }
+        String metricKey = spec.substring(0, eq).toLowerCase();
+        if (!METRIC_NAMES.containsKey(metricKey)) {
+            throw new IllegalArgumentException("unknown metric: " + metricKey);
+        }
+        MappedSet<String, String> targets = new MappedSet<>();
+        for (String target : spec.substring(eq + 1).split(",")) {
+            String[] tagAndAtts = target.split("/");
+            List<String> atts = new LinkedList<>(Arrays.asList(tagAndAtts).subList(1, tagAndAtts.length));
+            targets.putCollection(tagAndAtts[0], atts);
+        }
+        return new MetricRequest(global, metricKey, METRIC_NAMES.get(metricKey), targets);
+    }
+
+    void calculate(PrintStream out) throws IOException, MaeException, SAXException {
+        MaeDriverI driver = new InMemorySqliteDriverImpl();
+        try {
+            long start = System.currentTimeMillis();
+            driver.readTask(taskFile);
+            MaeAgreementMain calc = new MaeAgreementMain(driver);
+            calc.setParallelism(threads);
+            if (cacheDir != null) {
+                calc.setResultStore(new AgreementResultStore(cacheDir));
+            }
+            calc.loadAnnotationFiles(datasetDir);
+            long loadMillis = System.currentTimeMillis() - start;
+
+            List<MetricResult> results = new ArrayList<>();
+            for (MetricRequest request : requests) {
+                long metricStart = System.currentTimeMillis();
+                Map<String, Double> agreements = request.global
+                        ? calc.calculateGlobalAgreement(request.metricType, request.targets)
+                        : calc.calculateLocalAgreement(request.metricType, request.targets);
+                results.add(new MetricResult(request, agreements, System.currentTimeMillis() - metricStart));
+            }
+
+            if (format.equals(FORMAT_CSV)) {
+                writeCsv(out, results);
+            } else {
+                writeJson(out, driver.getTaskName(), calc, loadMillis, results);
+            }
+            out.flush();
+        } finally {
+            destroyQuietly(driver);
+        }
+    }
+
+    private static void destroyQuietly(MaeDriverI driver) {
+        try {
+            driver.destroy();
+        } catch (MaeDBException e) {
+            logger.warn("could not destroy the driver", e);
+        }
+    }
+
+    void writeCsv(PrintStream out, List<MetricResult> results) {
+        out.println("scope,metric,target,agreement,millis");
+        for (MetricResult result : results) {
+            for (String target : result.agreements.keySet()) {
+                out.println(String.join(",",
+                        result.request.scope(), result.request.metricKey, csvField(target),
+                        formatDouble(result.agreements.get(target), ""), Long.toString(result.millis)));
+            }
+        }
+    }
+
+    void writeJson(PrintStream out, String taskName, MaeAgreementMain calc, long loadMillis, List<MetricResult> results) {
+        out.println("{");
+        out.printf("  \"task\": %s,%n", jsonString(taskName));
+        out.printf("  \"dataset\": %s,%n", jsonString(datasetDir.getPath()));
+        out.printf("  \"documents\": %d,%n", calc.getFileIdx().getDocumentNames().size());
+        out.printf("  \"annotators\": %d,%n", calc.getFileIdx().getAnnotators().size());
+        out.printf("  \"loadMillis\": %d,%n", loadMillis);
+        out.println("  \"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            MetricResult result = results.get(i);
+            out.println("    {");
+            out.printf("      \"scope\": %s,%n", jsonString(result.request.scope()));
+            out.printf("      \"metric\": %s,%n", jsonString(result.request.metricKey));
+            out.printf("      \"millis\": %d,%n", result.millis);
+            out.print("      \"agreements\": {");
+            String delim = "";
+            for (String target : result.agreements.keySet()) {
+                out.printf("%s%n        %s: %s", delim, jsonString(target),
+                        formatDouble(result.agreements.get(target), "null"));
+                delim = ",";
+            }
+            out.println(result.agreements.size() > 0 ? "\n      }" : "}");
+            out.println(i < results.size() - 1 ? "    }," : "    }");
+        }
+        out.println("  ],");
+        out.print("  \"warnings\": {");
+        Map<String, String> warnings = calc.getParseWarnings();
+        String delim = "";
+        for (String fileName : warnings.keySet()) {
+            out.printf("%s%n    %s: %s", delim, jsonString(fileName), jsonString(warnings.get(fileName)));
+            delim = ",";
+        }
+        out.println(warnings.size() > 0 ? "\n  }" : "}");
+        out.println("}");
+    }
+
+    // NaN and infinities are not valid JSON numbers
+    private static String formatDouble(Double value, String invalid) {
+        if (value == null || value.isNaN() || value.isInfinite()) {
+            return invalid;
+        }
+        return value.toString();
+    }
+
+    static String jsonString(String string) {
+        if (string == null) {
+            return "null";
+        }
+        StringBuilder escaped = new StringBuilder("\"");
+        for (char c : string.toCharArray()) {
+            switch (c) {
+                case '"':
+                    escaped.append("\\\"");
+                    break;
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+            }
+        }
+        return escaped.append('"').toString();
+    }
+
+    static String csvField(String field) {
+        if (field.contains(",") || field.contains("\"") || field.contains("\n")) {
+            return "\"" + field.replace("\"", "\"\"") + "\"";
+        }
+        return field;
+    }
+
+    static class MetricRequest {
+        final boolean global;
+        final String metricKey;
+        final String metricType;
+        final MappedSet<String, String> targets;
+
+        MetricRequest(boolean global, String metricKey, String metricType, MappedSet<String, String> targets) {
+            this.global = global;
+            this.metricKey = metricKey;
+            this.metricType = metricType;
+            this.targets = targets;
+        }
+
+        String scope() {
+            return global ? "global" : "local";
+        }
+    }
+
+    static class MetricResult {
+        final MetricRequest request;
+        final Map<String, Double> agreements;
+        final long millis;
+
+        MetricResult(MetricRequest request, Map<String, Double> agreements, long millis) {
+            this.request = request;
+            this.agreements = agreements == null ? Collections.emptyMap() : agreements;
+            this.millis = millis;
+        }
+    }
+}
@@ -27,6 +27,8 @@ package edu.brandeis.cs.nlp.mae.agreement;
 import edu.brandeis.cs.nlp.mae.MaeException;
 import edu.brandeis.cs.nlp.mae.agreement.calculator.*;
 import edu.brandeis.cs.nlp.mae.agreement.io.AbstractAnnotationIndexer;
+import edu.brandeis.cs.nlp.mae.agreement.io.AgreementResultStore;
+import edu.brandeis.cs.nlp.mae.agreement.io.AnnotationDirsIndexer;
 import edu.brandeis.cs.nlp.mae.agreement.io.AnnotationFilesIndexer;
 import edu.brandeis.cs.nlp.mae.agreement.io.XMLParseCache;
 import edu.brandeis.cs.nlp.mae.database.MaeDBException;
@@ -41,7 +43,11 @@ import org.xml.sax.SAXParseException;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static edu.brandeis.cs.nlp.mae.agreement.MaeAgreementStrings.*;
 
@@ -56,20 +62,66 @@ public class MaeAgreementMain {
     private MaeDriverI driver;
     private XMLParseCache parseCache;
     private int[] documentLength;
+    private int parallelism;
+    private long parseCacheBudget;
+    private Map<String, Preamble> preambles;
+    private AgreementResultStore resultStore;
 
     public MaeAgreementMain(MaeDriverI driver) {
         this.driver = driver;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+        this.parseCacheBudget = Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    public long getParseCacheBudget() {
+        return parseCacheBudget;
+    }
+
+    /**
+     * Sets approximate number of bytes parsed annotations can take on the
+     * heap. Parses over the budget are kept in temporary files instead.
+     */
+    public void setParseCacheBudget(long parseCacheBudget) throws IOException {
+        this.parseCacheBudget = parseCacheBudget;
+        if (parseCache != null) {
+            parseCache.setMemoryBudget(parseCacheBudget);
+        }
+    }
+
+    public AgreementResultStore getResultStore() {
+        return resultStore;
+    }
+
+    /**
+     * Sets a store to keep per-document contributions to agreements across
+     * runs, so that re-running re-parses only documents with changed files.
+     * null (default) turns it off.
+     */
+    public void setResultStore(AgreementResultStore resultStore) {
+        this.resultStore = resultStore;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets how many threads to use to read documents while calculating
+     * agreements. 1 turns off parallel calculation.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
     }
 
     public void loadAnnotationFiles(File singleDir) throws MaeIOException, IOException, SAXException, MaeDBException {
 
         if (!FileHandler.containsDirsOnly(singleDir)) {
             fileIdx = new AnnotationFilesIndexer();
-//        } else {
-            // TODO: 2016-04-23 17:03:30EDT  implement indexer from dirs
-//            fileIdx = new AnnotationDirsIndexer();
+        } else {
+            fileIdx = new AnnotationDirsIndexer();
         }
         fileIdx.indexAnnotations(singleDir);
+        preambles = null;
         String invalidTaskNameFile = validateTaskNames(driver.getTaskName());
         String invalidPrimaryTextFile = validateTextSharing();
         if (!invalidTaskNameFile.equals(SUCCESS)) {
@@ -78,23 +130,94 @@ public class MaeAgreementMain {
         if (!invalidPrimaryTextFile.equals(SUCCESS)) {
             throw new MaeIOException("XML file has different primary text: " + invalidPrimaryTextFile);
         }
-        parseCache = new XMLParseCache(driver, fileIdx);
+        if (parseCache != null) {
+            parseCache.clear();
+        }
+        parseCache = new XMLParseCache(driver.getTaskSchema(), fileIdx, parseCacheBudget);
+        // preambles are no longer needed once validated
+        preambles = null;
+    }
+
+    XMLParseCache getParseCache() {
+        return parseCache;
     }
 
     public Map<String, String> getParseWarnings() {
         return parseCache.getParseWarnings();
     }
 
-    String validateTaskNames(String taskName) throws IOException, SAXException, MaeIOXMLException {
+    /**
+     * Reads task names and primary texts of all annotation files, with one
+     * preamble-only parse per file, concurrently. Results are kept until the
+     * next loadAnnotationFiles(), for both validations to use.
+     */
+    Map<String, Preamble> readPreambles() throws IOException, SAXException, MaeIOXMLException {
+        if (preambles != null) {
+            return preambles;
+        }
+        List<String> fileNames = new ArrayList<>();
+        for (String docName : fileIdx.getDocumentNames()) {
+            for (String fileName : fileIdx.getAnnotationsOfDocument(docName)) {
+                if (fileName != null) {
+                    fileNames.add(fileName);
+                }
+            }
+        }
+        List<Callable<Preamble>> tasks = new ArrayList<>(fileNames.size());
+        for (String fileName : fileNames) {
+            tasks.add(() -> readPreamble(fileName));
+        }
+        Map<String, Preamble> read = new HashMap<>();
+        ExecutorService executor = newExecutor();
+        try {
+            if (executor == null) {
+                for (String fileName : fileNames) {
+                    read.put(fileName, readPreamble(fileName));
+                }
+            } else {
+                List<Future<Preamble>> futures = executor.invokeAll(tasks);
+                for (int i = 0; i < fileNames.size(); i++) {
+                    read.put(fileNames.get(i), futures.get(i).get());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while validating annotation files", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MaeIOXMLException) {
+                throw (MaeIOXMLException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            }
+            throw new IOException("failed to validate annotation files", cause);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        preambles = read;
+        return preambles;
+    }
+
+    private static Preamble readPreamble(String fileName) throws IOException, SAXException, MaeIOXMLException {
         MaeXMLParser parser = new MaeXMLParser();
+        try {
+            parser.readAnnotationPreamble(new File(fileName));
+        } catch (SAXParseException e) {
+            throw new MaeIOXMLException(String.format("Invalid XML string (%s): %s", e.getMessage(), fileName));
+        }
+        return new Preamble(parser.getParsedTaskName(), parser.getParsedPrimaryText());
+    }
+
+    String validateTaskNames(String taskName) throws IOException, SAXException, MaeIOXMLException {
+        Map<String, Preamble> preambles = readPreambles();
         for (String docName : fileIdx.getDocumentNames()) {
             for (String fileName : fileIdx.getAnnotationsOfDocument(docName)) {
-                try {
-                    if (fileName != null && !parser.isTaskNameMatching(new File(fileName), taskName)) {
-                        return fileName;
-                    }
-                } catch (SAXParseException e) {
-                    throw new MaeIOXMLException(String.format("Invalid XML string (%s): %s", e.getMessage(), fileName));
+                if (fileName != null && (taskName == null || !taskName.equals(preambles.get(fileName).taskName))) {
+                    return fileName;
                 }
             }
         }
@@ -102,28 +225,52 @@ public class MaeAgreementMain {
     }
 
     String validateTextSharing() throws IOException, SAXException, MaeIOXMLException {
-        MaeXMLParser parser = new MaeXMLParser();
+        Map<String, Preamble> preambles = readPreambles();
         documentLength = new int[fileIdx.getDocumentNames().size()];
         int curDoc = 0;
         for (String docName : fileIdx.getDocumentNames()) {
             String[] fileNames = fileIdx.getAnnotationsOfDocument(docName);
             int seen = getFirstNonNullIndex(fileNames);
-            parser.readAnnotationPreamble(new File(fileNames[seen++]));
-            String primaryText = parser.getParsedPrimaryText();
-            documentLength[curDoc++] = primaryText.length();
+            Preamble primary = preambles.get(fileNames[seen++]);
+            documentLength[curDoc++] = primary.textLength;
             for (int i = seen; i < fileNames.length; i++) {
-                try {
-                    if (fileNames[i] != null && !parser.isPrimaryTextMatching(new File(fileNames[i]), primaryText)) {
-                        return fileNames[i];
-                    }
-                } catch (SAXParseException e) {
-                    throw new MaeIOXMLException(String.format("Invalid XML string (%s): %s", e.getMessage(), fileNames[i]));
+                if (fileNames[i] != null && !primary.isSameText(preambles.get(fileNames[i]))) {
+                    return fileNames[i];
                 }
             }
         }
         return SUCCESS;
     }
 
+    /**
+     * Task name and primary text of an annotation file. Only a digest of the
+     * text is kept, texts of all files don't need to stay on memory.
+     */
+    static class Preamble {
+        final String taskName;
+        final int textLength;
+        final byte[] textDigest;
+
+        Preamble(String taskName, String primaryText) {
+            this.taskName = taskName;
+            this.textLength = primaryText == null ? 0 : primaryText.length();
+            this.textDigest = primaryText == null ? null : digest(primaryText);
+        }
+
+        boolean isSameText(Preamble other) {
+            return textLength == other.textLength && Arrays.equals(textDigest, other.textDigest);
+        }
+
+        private static byte[] digest(String text) {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            } catch (NoSuchAlgorithmException e) {
+                // every java platform is required to support SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
     private static int countNonNull(Object[] array) {
         int countNonNull = 0;
         for (Object obj : array) {
@@ -155,34 +302,84 @@ public class MaeAgreementMain {
         return String.format("% .4f (%s) %s\n", agr, agrType, agrKey );
     }
 
-    Map<String, Double> calculateLocalAlphaU(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeDBException {
+    Map<String, Double> calculateLocalAlphaU(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeException {
         LocalAlphaUCalc calc = new LocalAlphaUCalc(fileIdx, parseCache, documentLength);
-        return calc.calculateAgreement(targetTagsAndAtts);
+        return runWithExecutor(calc, targetTagsAndAtts);
     }
 
-    Map<String, Double> calculateGlobalAlphaU(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeDBException {
+    Map<String, Double> calculateGlobalAlphaU(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeException {
         GlobalAlphaUCalc calc = new GlobalAlphaUCalc(fileIdx, parseCache, documentLength);
-        return calc.calculateAgreement(targetTagsAndAtts);
+        return runWithExecutor(calc, targetTagsAndAtts);
     }
 
     Map<String, Double> calculateLocalMultiPi(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeException {
         LocalMultiPiCalc calc = new LocalMultiPiCalc(fileIdx, parseCache);
-        return calc.calculateAgreement(targetTagsAndAtts);
+        return runWithExecutor(calc, targetTagsAndAtts);
     }
 
     Map<String, Double> calculateGlobalMultiPi(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeException {
         GlobalMultiPiCalc calc = new GlobalMultiPiCalc(fileIdx, parseCache);
-        return calc.calculateAgreement(targetTagsAndAtts);
+        return runWithExecutor(calc, targetTagsAndAtts);
     }
 
-     Map<String, Double> calculateLocalMultiKappa(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeException {
+    Map<String, Double> calculateLocalMultiKappa(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeException {
         LocalMultiKappaCalc calc = new LocalMultiKappaCalc(fileIdx, parseCache);
-        return calc.calculateAgreement(targetTagsAndAtts);
+        return runWithExecutor(calc, targetTagsAndAtts);
     }
 
     Map<String, Double> calculateGlobalMultiKappa(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeException {
         GlobalMultiKappaCalc calc = new GlobalMultiKappaCalc(fileIdx, parseCache);
-        return calc.calculateAgreement(targetTagsAndAtts);
+        return runWithExecutor(calc, targetTagsAndAtts);
+    }
+
+    private ExecutorService newExecutor() {
+        return parallelism > 1 ? Executors.newFixedThreadPool(parallelism) : null;
+    }
+
+    private Map<String, Double> runWithExecutor(AbstractMaeAgreementCalc calc, MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeException {
+        ExecutorService executor = newExecutor();
+        try {
+            calc.setExecutor(executor);
+            calc.setResultStore(resultStore);
+            calc.setTaskFileName(driver.getTaskFileName());
+            return calc.calculateAgreement(targetTagsAndAtts);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @return agreements keyed by the target name, or null if the metric is not supported
+     */
+    public Map<String, Double> calculateGlobalAgreement(String metricType, MappedSet<String, String> targetTagsAndAtts) throws MaeException, SAXException, IOException {
+        switch (metricType) {
+            case ALPHAU_CALC_STRING:
+                return calculateGlobalAlphaU(targetTagsAndAtts);
+            case MULTIKAPPA_CALC_STRING:
+                return calculateGlobalMultiKappa(targetTagsAndAtts);
+            case MULTIPI_CALC_STRING:
+                return calculateGlobalMultiPi(targetTagsAndAtts);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return agreements keyed by the target name, or null if the metric is not supported
+     */
+    public Map<String, Double> calculateLocalAgreement(String metricType, MappedSet<String, String> targetTagsAndAtts) throws MaeException, SAXException, IOException {
+        switch (metricType) {
+            case ALPHAU_CALC_STRING:
+                return calculateLocalAlphaU(targetTagsAndAtts);
+            case MULTIKAPPA_CALC_STRING:
+                return calculateLocalMultiKappa(targetTagsAndAtts);
+            case MULTIPI_CALC_STRING:
+                return calculateLocalMultiPi(targetTagsAndAtts);
+            default:
+                return null;
+        }
     }
 
     public String calcGlobalAgreementToString(Map<String, MappedSet<String, String>> metricToTargetsMap) throws MaeException, SAXException, IOException {
@@ -193,20 +390,10 @@ public class MaeAgreementMain {
                 continue;
             }
             String agrTitle = String.format("<%s> %s  %s", SCOPE_CROSSTAG_STRING, metricType, targetTagsAndAtts.keyList());
-            switch (metricType) {
-                case ALPHAU_CALC_STRING:
-                    result += agreementsToString(agrTitle, calculateGlobalAlphaU(targetTagsAndAtts));
-                    break;
-                case ALPHA_CALC_STRING:
-                    break;
-                case MULTIKAPPA_CALC_STRING:
-                    result += agreementsToString(agrTitle, calculateGlobalMultiKappa(targetTagsAndAtts));
-                    break;
-                case MULTIPI_CALC_STRING:
-                    result += agreementsToString(agrTitle, calculateGlobalMultiPi(targetTagsAndAtts));
-                    break;
+            Map<String, Double> agreements = calculateGlobalAgreement(metricType, targetTagsAndAtts);
+            if (agreements != null) {
+                result += agreementsToString(agrTitle, agreements);
             }
-
         }
         return result;
     }
@@ -219,21 +406,15 @@ public class MaeAgreementMain {
                 continue;
             }
             String agrTitle = String.format("<%s> %s", SCOPE_LOCAL_STRING, metricType);
-            switch (metricType) {
-                case ALPHAU_CALC_STRING:
-                    result += agreementsToString(agrTitle, calculateLocalAlphaU(targetTagsAndAtts));
-                    break;
-                case ALPHA_CALC_STRING:
-                    break;
-                case MULTIKAPPA_CALC_STRING:
-                    result += agreementsToString(agrTitle, calculateLocalMultiKappa(targetTagsAndAtts));
-                    break;
-                case MULTIPI_CALC_STRING:
-                    result += agreementsToString(agrTitle, calculateLocalMultiPi(targetTagsAndAtts));
-                    break;
+            Map<String, Double> agreements = calculateLocalAgreement(metricType, targetTagsAndAtts);
+            if (agreements != null) {
+                result += agreementsToString(agrTitle, agreements);
             }
-
         }
         return result;
     }
+
+    public AbstractAnnotationIndexer getFileIdx() {
+        return fileIdx;
+    }
 }
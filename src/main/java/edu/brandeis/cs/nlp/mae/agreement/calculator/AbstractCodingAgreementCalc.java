@@ -26,8 +26,8 @@ package edu.brandeis.cs.nlp.mae.agreement.calculator;
 
 import edu.brandeis.cs.nlp.mae.MaeException;
 import edu.brandeis.cs.nlp.mae.agreement.io.AbstractAnnotationIndexer;
+import edu.brandeis.cs.nlp.mae.agreement.io.ParsedAnnotation;
 import edu.brandeis.cs.nlp.mae.agreement.io.XMLParseCache;
-import edu.brandeis.cs.nlp.mae.io.MaeXMLParser;
 import edu.brandeis.cs.nlp.mae.io.ParsedAtt;
 import edu.brandeis.cs.nlp.mae.io.ParsedTag;
 import edu.brandeis.cs.nlp.mae.util.MappedSet;
@@ -37,7 +37,7 @@ import org.xml.sax.SAXException;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
 
 import static edu.brandeis.cs.nlp.mae.agreement.MaeAgreementStrings.*;
 
@@ -46,46 +46,41 @@ import static edu.brandeis.cs.nlp.mae.agreement.MaeAgreementStrings.*;
  */
 public abstract class AbstractCodingAgreementCalc extends AbstractMaeAgreementCalc {
 
+    static final String LOCAL_CODINGS = "local-codings";
+    static final String GLOBAL_CODINGS = "global-codings";
+
     public AbstractCodingAgreementCalc(AbstractAnnotationIndexer fileIdx, XMLParseCache parseCache) {
         super(fileIdx, parseCache);
     }
 
-    Set<int[]> getSegmentSpansOfTagType(MaeXMLParser[] parses, String tagTypeName) {
-        TreeSet<int[]> spans = new TreeSet<>(new SortedIntArrayComparator());
-
-        Arrays.stream(parses).filter(
-                parse -> parse != null
-        ).forEach(
-                parse -> parse.getParsedTags().stream().filter(
-                        tag -> tagTypeName.equals(tag.getTagTypeName())
-                ).forEach(
-                        tag -> spans.add(tag.getSpans())
-                ));
-        return spans;
+    Set<int[]> getSegmentSpansOfTagType(ParsedAnnotation[] parses, String tagTypeName) {
+        return getSegmentSpansOfTagTypes(parses, Collections.singleton(tagTypeName));
     }
 
-    Set<int[]> getSegmentSpansOfTagTypes(MaeXMLParser[] parses, Set<String> tagTypeNames) {
+    Set<int[]> getSegmentSpansOfTagTypes(ParsedAnnotation[] parses, Set<String> tagTypeNames) {
 
         TreeSet<int[]> spans = new TreeSet<>(new SortedIntArrayComparator());
 
-        Arrays.stream(parses).filter(
-                parse -> parse != null
-        ).forEach(
-                parse -> parse.getParsedTags().stream().filter(
-                        tag -> tagTypeNames.contains(tag.getTagTypeName())
-                ).forEach(
-                        tag -> spans.add(tag.getSpans())
-                ));
+        for (ParsedAnnotation parse : parses) {
+            if (parse != null) {
+                for (String tagTypeName : tagTypeNames) {
+                    for (ParsedTag tag : parse.getTagsOfType(tagTypeName)) {
+                        spans.add(tag.getSpans());
+                    }
+                }
+            }
+        }
         return spans;
     }
 
-    List<ParsedTag> getTagsOfTagTypesAndSpans(int[] spans, Collection<String> tagTypeNames, MaeXMLParser parse) {
+    List<ParsedTag> getTagsOfTagTypesAndSpans(int[] spans, Collection<String> tagTypeNames, ParsedAnnotation parse) {
+        List<ParsedTag> tags = new ArrayList<>();
         if (parse != null) {
-            return parse.getParsedTags().stream().filter(
-                    tag -> tagTypeNames.contains(tag.getTagTypeName()) && Arrays.equals(tag.getSpans(), spans)
-            ).collect(Collectors.toList());
+            for (String tagTypeName : tagTypeNames) {
+                tags.addAll(parse.getTagsOfTypeAndSpans(tagTypeName, spans));
+            }
         }
-        return new ArrayList<>();
+        return tags;
     }
 
     Object[] prepareNullCodings() {
@@ -96,58 +91,79 @@ public abstract class AbstractCodingAgreementCalc extends AbstractMaeAgreementCa
 
     public Map<String, CodingAnnotationStudy> prepareLocalCodingStudies(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeException {
 
-        Map<String, String> attFullNameMap = new HashMap<>();
         Map<String, CodingAnnotationStudy> studyPerAtt = new LinkedHashMap<>();
-        for (String tagTypeName : targetTagsAndAtts.keyList()) {
+        List<String> tagTypeNames = targetTagsAndAtts.keyList();
+        List<String> documents = fileIdx.getDocumentNames();
+        List<Callable<List<Map<String, String[]>>>> tasks = new ArrayList<>();
+        for (String tagTypeName : tagTypeNames) {
             List<String> attTypeNames = targetTagsAndAtts.getAsList(tagTypeName);
             attTypeNames.add(0, SPAN_ATT);
             for (String attTypeName : attTypeNames) {
                 String attFullName = tagTypeName + TAG_ATT_DELIM + attTypeName;
                 studyPerAtt.put(attFullName, new CodingAnnotationStudy(numAnnotators));
-                attFullNameMap.put(attTypeName, attFullName);
             }
-            List<String> documents = fileIdx.getDocumentNames();
+            String configuration = tagTypeName + attTypeNames;
             for (String document : documents) {
-                MaeXMLParser[] parses = getParses(document);
-                Set<int[]> relevantSpans = getSegmentSpansOfTagType(parses, tagTypeName);
-
-                for (int[] relevantSpan : relevantSpans) {
-                    Map<String, String[]> attAnnotationsMap = prepareAttAnnotationMap(attTypeNames);
+                tasks.add(() -> getOrCollect(LOCAL_CODINGS, configuration, document,
+                        () -> collectLocalCodings(document, tagTypeName, attTypeNames)));
+            }
+        }
 
-                    for (int j = 0; j < parses.length; j++) {
-                        MaeXMLParser parse = parses[j];
-                        if (parse == null) {
-                            fillUnmarkednessOfAnnotator(attAnnotationsMap, j);
-                        } else {
-                            List<ParsedTag> relevantTags
-                                    = getTagsOfTagTypesAndSpans(relevantSpan, Collections.singletonList(tagTypeName), parse);
-                            switch (relevantTags.size()) {
-                                case 0:
-                                    fillUnmarkednessOfAnnotator(attAnnotationsMap, j);
-                                    break;
-                                case 1:
-                                    attAnnotationsMap.get(SPAN_ATT)[j] = Boolean.toString(true);
-                                    String tid = relevantTags.get(0).getTid();
-                                    fillAllAttValueOfTid(parse, j, tid, attAnnotationsMap);
-                                    break;
-                                default:
-                                    throw new MaeException(
-                                            String.format("Error occurred while calculating local labeling agreement:" +
-                                                    " an annotator marked the same range with two or more times - \"%s\", \"%s\"",
-                                                    document, fileIdx.getAnnotators().get(j)));
-                            }
-                        }
-                    }
+        // merge in the order of tag types, then documents, so that items are
+        // added to studies the same way no matter how tasks were scheduled
+        List<List<Map<String, String[]>>> codings = invokeInOrder(tasks);
+        int task = 0;
+        for (String tagTypeName : tagTypeNames) {
+            for (int i = 0; i < documents.size(); i++) {
+                for (Map<String, String[]> attAnnotationsMap : codings.get(task)) {
                     for (String attTypeName : attAnnotationsMap.keySet()) {
-                        String attFullName = attFullNameMap.get(attTypeName);
+                        String attFullName = tagTypeName + TAG_ATT_DELIM + attTypeName;
                         studyPerAtt.get(attFullName).addItemAsArray(attAnnotationsMap.get(attTypeName));
                     }
                 }
+                task++;
             }
         }
         return studyPerAtt;
     }
 
+    List<Map<String, String[]>> collectLocalCodings(String document, String tagTypeName, List<String> attTypeNames) throws IOException, SAXException, MaeException {
+        List<Map<String, String[]>> codings = new ArrayList<>();
+        ParsedAnnotation[] parses = getParses(document);
+        Set<int[]> relevantSpans = getSegmentSpansOfTagType(parses, tagTypeName);
+
+        for (int[] relevantSpan : relevantSpans) {
+            Map<String, String[]> attAnnotationsMap = prepareAttAnnotationMap(attTypeNames);
+
+            for (int j = 0; j < parses.length; j++) {
+                ParsedAnnotation parse = parses[j];
+                if (parse == null) {
+                    fillUnmarkednessOfAnnotator(attAnnotationsMap, j);
+                } else {
+                    List<ParsedTag> relevantTags
+                            = getTagsOfTagTypesAndSpans(relevantSpan, Collections.singletonList(tagTypeName), parse);
+                    switch (relevantTags.size()) {
+                        case 0:
+                            fillUnmarkednessOfAnnotator(attAnnotationsMap, j);
+                            break;
+                        case 1:
+                            attAnnotationsMap.get(SPAN_ATT)[j] = Boolean.toString(true);
+                            String tid = relevantTags.get(0).getTid();
+                            fillAllAttValueOfTid(parse, j, tid, attAnnotationsMap);
+                            break;
+                        default:
+                            throw new MaeException(
+                                    String.format("Error occurred while calculating local labeling agreement:" +
+                                            " an annotator marked the same range with two or more times - \"%s\", \"%s\"",
+                                            document, fileIdx.getAnnotators().get(j)));
+                    }
+                }
+            }
+            codings.add(attAnnotationsMap);
+        }
+        return codings;
+    }
+
     void fillUnmarkednessOfAnnotator(Map<String, String[]> attAnnotationMap, int annotatorIdx) {
         for (String attTypeName : attAnnotationMap.keySet()) {
             String[] markups = attAnnotationMap.get(attTypeName);
@@ -164,9 +180,9 @@ public abstract class AbstractCodingAgreementCalc extends AbstractMaeAgreementCa
         return attMarkupMap;
     }
 
-    void fillAllAttValueOfTid(MaeXMLParser annotation, int annotatorIdx, String tid, Map<String, String[]> attAnnotationsMap) {
-        for (ParsedAtt att : annotation.getParsedAtts()) {
-            if (att.getTid().equals(tid) && attAnnotationsMap.containsKey(att.getAttTypeName())) {
+    void fillAllAttValueOfTid(ParsedAnnotation annotation, int annotatorIdx, String tid, Map<String, String[]> attAnnotationsMap) {
+        for (ParsedAtt att : annotation.getAttsOfTid(tid)) {
+            if (attAnnotationsMap.containsKey(att.getAttTypeName())) {
                 String attTypeName = att.getAttTypeName();
                 if (att.getAttValue() != null && att.getAttValue().length() > 0) {
                     attAnnotationsMap.get(attTypeName)[annotatorIdx] = att.getAttValue();
@@ -184,36 +200,49 @@ public abstract class AbstractCodingAgreementCalc extends AbstractMaeAgreementCa
         List<String> documents = fileIdx.getDocumentNames();
         Set<String> targetTags = targetTagsAndAtts.keySet();
 
+        String configuration = new TreeSet<>(targetTags).toString();
+        List<Callable<List<Object[]>>> tasks = new ArrayList<>();
         for (String document : documents) {
-            MaeXMLParser[] parses = parseCache.getParses(document);
-            Set<int[]> relevantSpans = getSegmentSpansOfTagTypes(parses, targetTags);
-            if (relevantSpans.size() == 0) {
-                study.addItem(prepareNullCodings());
-            } else {
-                for (int[] span : relevantSpans) {
-                    Object[] annotations = new String[numAnnotators];
-                    for (int i = 0; i < parses.length; i++) {
-                        MaeXMLParser parse = parses[i];
-                        List<ParsedTag> relevantTags = getTagsOfTagTypesAndSpans(span, targetTags, parse);
-                        switch (relevantTags.size()) {
-                            case 0:
-                                annotations[i] = UNMARKED_CAT;
-                                break;
-                            case 1:
-                                annotations[i] = relevantTags.get(0).getTagTypeName();
-                                break;
-                            default:
-                                throw new MaeException(
-                                String.format("Error occurred while calculating global labeling agreement:" +
-                                                " an annotator marked the same range with two or labels - \"%s\", \"%s\"",
-                                        document, fileIdx.getAnnotators().get(i)));
-                        }
+            tasks.add(() -> getOrCollect(GLOBAL_CODINGS, configuration, document,
+                    () -> collectGlobalCodings(document, targetTags)));
+        }
+        for (List<Object[]> items : invokeInOrder(tasks)) {
+            for (Object[] item : items) {
+                study.addItem(item);
+            }
+        }
+        return study;
+    }
+
+    List<Object[]> collectGlobalCodings(String document, Set<String> targetTags) throws IOException, SAXException, MaeException {
+        List<Object[]> items = new ArrayList<>();
+        ParsedAnnotation[] parses = parseCache.getParses(document);
+        Set<int[]> relevantSpans = getSegmentSpansOfTagTypes(parses, targetTags);
+        if (relevantSpans.size() == 0) {
+            items.add(prepareNullCodings());
+        } else {
+            for (int[] span : relevantSpans) {
+                Object[] annotations = new String[numAnnotators];
+                for (int i = 0; i < parses.length; i++) {
+                    ParsedAnnotation parse = parses[i];
+                    List<ParsedTag> relevantTags = getTagsOfTagTypesAndSpans(span, targetTags, parse);
+                    switch (relevantTags.size()) {
+                        case 0:
+                            annotations[i] = UNMARKED_CAT;
+                            break;
+                        case 1:
+                            annotations[i] = relevantTags.get(0).getTagTypeName();
+                            break;
+                        default:
+                            throw new MaeException(
+                            String.format("Error occurred while calculating global labeling agreement:" +
+                                            " an annotator marked the same range with two or labels - \"%s\", \"%s\"",
+                                    document, fileIdx.getAnnotators().get(i)));
                     }
-                    study.addItem(annotations);
                 }
+                items.add(annotations);
             }
         }
-        return study;
+        return items;
     }
 }
-
@@ -26,23 +26,36 @@ package edu.brandeis.cs.nlp.mae.agreement.calculator;
 
 import edu.brandeis.cs.nlp.mae.MaeException;
 import edu.brandeis.cs.nlp.mae.agreement.io.AbstractAnnotationIndexer;
+import edu.brandeis.cs.nlp.mae.agreement.io.AgreementResultStore;
+import edu.brandeis.cs.nlp.mae.agreement.io.ParsedAnnotation;
 import edu.brandeis.cs.nlp.mae.agreement.io.XMLParseCache;
 import edu.brandeis.cs.nlp.mae.database.MaeDBException;
-import edu.brandeis.cs.nlp.mae.io.MaeXMLParser;
 import edu.brandeis.cs.nlp.mae.util.MappedSet;
 import org.xml.sax.SAXException;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.ToDoubleFunction;
 
 /**
  * Created by krim on 4/23/2016.
  */
-abstract class AbstractMaeAgreementCalc {
+public abstract class AbstractMaeAgreementCalc {
 
     int numAnnotators;
     AbstractAnnotationIndexer fileIdx;
     XMLParseCache parseCache;
+    ExecutorService executor;
+    AgreementResultStore resultStore;
+    String taskFileName;
 
     public AbstractMaeAgreementCalc(AbstractAnnotationIndexer fileIdx, XMLParseCache parseCache) {
         this.fileIdx = fileIdx;
@@ -62,7 +75,124 @@ abstract class AbstractMaeAgreementCalc {
         return parseCache;
     }
 
-    public MaeXMLParser[] getParses(String docName) throws IOException, SAXException, MaeDBException {
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets a thread pool to spread per-document work over. When not set (or
+     * null), everything runs sequentially on the calling thread. Tasks given
+     * to the pool never submit further tasks, so any bounded pool will do.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public AgreementResultStore getResultStore() {
+        return resultStore;
+    }
+
+    /**
+     * Sets a store to keep per-document contributions across runs. When set,
+     * documents whose annotation files have not changed since are not parsed.
+     */
+    public void setResultStore(AgreementResultStore resultStore) {
+        this.resultStore = resultStore;
+    }
+
+    public String getTaskFileName() {
+        return taskFileName;
+    }
+
+    /**
+     * Sets the task definition annotations are read with. Stored
+     * contributions are only reused for the same DTD contents, and not
+     * used at all when the DTD file is unknown or gone.
+     */
+    public void setTaskFileName(String taskFileName) {
+        this.taskFileName = taskFileName;
+    }
+
+    /**
+     * Returns the contribution of a document from the result store if there
+     * is one for the current files of the document, otherwise collects it
+     * (and stores it). Contributions need to be serializable.
+     */
+    <T> T getOrCollect(String kind, String configuration, String document, Callable<T> collector) throws Exception {
+        if (resultStore == null || taskFileName == null || !new File(taskFileName).isFile()) {
+            return collector.call();
+        }
+        String key = resultStore.keyOf(kind, configuration, taskFileName,
+                fileIdx.getAnnotators(), fileIdx.getAnnotationsOfDocument(document));
+        T contribution = resultStore.get(key);
+        if (contribution == null) {
+            contribution = collector.call();
+            resultStore.put(key, contribution);
+        }
+        return contribution;
+    }
+
+    /**
+     * Runs given tasks, on the executor if one is set, and returns their
+     * results in the same order as the tasks, regardless of which finished first.
+     */
+    <T> List<T> invokeInOrder(List<Callable<T>> tasks) throws IOException, SAXException, MaeException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (executor == null) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+            } else {
+                for (Future<T> result : executor.invokeAll(tasks)) {
+                    results.add(result.get());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MaeException("interrupted while calculating agreement", e);
+        } catch (ExecutionException e) {
+            rethrow(e.getCause());
+        } catch (Exception e) {
+            rethrow(e);
+        }
+        return results;
+    }
+
+    private static void rethrow(Throwable cause) throws IOException, SAXException, MaeException {
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof SAXException) {
+            throw (SAXException) cause;
+        } else if (cause instanceof MaeException) {
+            throw (MaeException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new MaeException("failed to calculate agreement", cause);
+    }
+
+    /**
+     * Computes agreement value of each study, one task per study.
+     */
+    <S> Map<String, Double> calculateEach(Map<String, S> studies, ToDoubleFunction<S> agreement) throws IOException, SAXException, MaeException {
+        List<String> names = new ArrayList<>(studies.keySet());
+        List<Callable<Double>> tasks = new ArrayList<>(names.size());
+        for (String name : names) {
+            S study = studies.get(name);
+            tasks.add(() -> agreement.applyAsDouble(study));
+        }
+        List<Double> values = invokeInOrder(tasks);
+        Map<String, Double> agreements = new TreeMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            agreements.put(names.get(i), values.get(i));
+        }
+        return agreements;
+    }
+
+    public ParsedAnnotation[] getParses(String docName) throws IOException, SAXException, MaeDBException {
         return this.parseCache.getParses(docName);
     }
 
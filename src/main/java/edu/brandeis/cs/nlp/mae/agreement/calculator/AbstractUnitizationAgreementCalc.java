@@ -24,10 +24,10 @@
 
 package edu.brandeis.cs.nlp.mae.agreement.calculator;
 
+import edu.brandeis.cs.nlp.mae.MaeException;
 import edu.brandeis.cs.nlp.mae.agreement.io.AbstractAnnotationIndexer;
+import edu.brandeis.cs.nlp.mae.agreement.io.ParsedAnnotation;
 import edu.brandeis.cs.nlp.mae.agreement.io.XMLParseCache;
-import edu.brandeis.cs.nlp.mae.database.MaeDBException;
-import edu.brandeis.cs.nlp.mae.io.MaeXMLParser;
 import edu.brandeis.cs.nlp.mae.io.ParsedAtt;
 import edu.brandeis.cs.nlp.mae.io.ParsedTag;
 import edu.brandeis.cs.nlp.mae.util.MappedSet;
@@ -36,34 +36,46 @@ import org.dkpro.statistics.agreement.unitizing.UnitizingAnnotationStudy;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
-import java.util.Map;
+import java.io.Serializable;
+import java.util.*;
 import java.util.stream.IntStream;
 
+import static edu.brandeis.cs.nlp.mae.agreement.MaeAgreementStrings.SPAN_ATT;
+
 /**
  * Created by krim on 4/23/2016.
  */
 
 public abstract class AbstractUnitizationAgreementCalc extends AbstractMaeAgreementCalc {
 
+    // units used to be joined to attributes without tids, do not reuse those
+    static final String LOCAL_UNITS = "local-units-by-tid";
+    static final String GLOBAL_UNITS = "global-units";
+
     int totalDocumentsLength;
     int[] documentLength;
+    int[] documentOffset;
 
     public AbstractUnitizationAgreementCalc(AbstractAnnotationIndexer fileIdx, XMLParseCache parseCache, int[] documentLength) {
         super(fileIdx, parseCache);
         this.documentLength = documentLength;
         this.totalDocumentsLength = IntStream.of(documentLength).reduce( 0,(a, b) -> a + b);
+        this.documentOffset = new int[documentLength.length];
+        for (int i = 1; i < documentLength.length; i++) {
+            documentOffset[i] = documentOffset[i - 1] + documentLength[i - 1];
+        }
 
     }
 
-    void addTagAsUnits(String tagTypeName, MaeXMLParser[] annotations, int textOffset, UnitizingAnnotationStudy study) {
+    void addTagAsUnits(String tagTypeName, ParsedAnnotation[] annotations, List<Unit> units) {
 
         int annotator = 0;
-        for (MaeXMLParser parse : annotations) {
+        for (ParsedAnnotation parse : annotations) {
             if (parse != null) {
-                for (ParsedTag tag : parse.getParsedTags()) {
-                    if (tag.getTagTypeName().equals(tagTypeName) && tag.getSpans().length > 0) {
+                for (ParsedTag tag : parse.getTagsOfType(tagTypeName)) {
+                    if (tag.getSpans().length > 0) {
                         for (int[] pair : SpanHandler.convertArrayToPairs(tag.getSpans())) {
-                            study.addUnit(pair[0] + textOffset, pair[1] - pair[0], annotator, tagTypeName);
+                            units.add(new Unit(pair[0], pair[1] - pair[0], annotator, tagTypeName));
                         }
                     }
                 }
@@ -73,19 +85,42 @@ public abstract class AbstractUnitizationAgreementCalc extends AbstractMaeAgreem
 
     }
 
-    void addAttAsUnits(String tagTypeName, String attTypeName, MaeXMLParser[] annotations, int textOffset, UnitizingAnnotationStudy study) {
+    /**
+     * Collects units of a tag type for the span and all given attributes in a
+     * single pass over tags of the type. Attributes are joined to their tags
+     * by tid, and span pairs of a tag are computed once and shared by all
+     * attribute targets. Attribute names are matched ignoring case.
+     *
+     * @return units keyed by attribute type names, SPAN_ATT for the spans
+     */
+    Map<String, List<Unit>> collectUnitsOfTagType(String tagTypeName, List<String> attTypeNames, ParsedAnnotation[] annotations) {
+        Map<String, List<Unit>> unitsPerAtt = new LinkedHashMap<>();
+        Map<String, List<Unit>> unitsPerLoweredAtt = new HashMap<>();
+        for (String attTypeName : attTypeNames) {
+            List<Unit> units = new ArrayList<>();
+            unitsPerAtt.put(attTypeName, units);
+            if (!attTypeName.equals(SPAN_ATT)) {
+                unitsPerLoweredAtt.put(attTypeName.toLowerCase(), units);
+            }
+        }
+        List<Unit> spanUnits = unitsPerAtt.get(SPAN_ATT);
 
         int annotator = 0;
-        for (MaeXMLParser parse : annotations) {
+        for (ParsedAnnotation parse : annotations) {
             if (parse != null) {
-                for (ParsedTag tag : parse.getParsedTags()) {
-                    if (tag.getTagTypeName().equalsIgnoreCase(tagTypeName) && tag.getSpans().length > 0) {
-                        for (ParsedAtt att : parse.getParsedAtts()) {
-                            if (att.getTagTypeName().equalsIgnoreCase(tag.getTagTypeName()) &&
-                                    att.getAttTypeName().equalsIgnoreCase(attTypeName)) {
-                                for (int[] pair : SpanHandler.convertArrayToPairs(tag.getSpans())) {
-                                    study.addUnit(pair[0] + textOffset, pair[1] - pair[0], annotator, att.getAttValue());
-                                }
+                for (ParsedTag tag : parse.getTagsOfType(tagTypeName)) {
+                    if (tag.getSpans().length == 0) {
+                        continue;
+                    }
+                    List<int[]> pairs = SpanHandler.convertArrayToPairs(tag.getSpans());
+                    if (spanUnits != null) {
+                        addUnits(pairs, annotator, tagTypeName, spanUnits);
+                    }
+                    if (unitsPerLoweredAtt.size() > 0) {
+                        for (ParsedAtt att : parse.getAttsOfTid(tag.getTid())) {
+                            List<Unit> attUnits = unitsPerLoweredAtt.get(att.getAttTypeName().toLowerCase());
+                            if (attUnits != null) {
+                                addUnits(pairs, annotator, att.getAttValue(), attUnits);
                             }
                         }
                     }
@@ -93,9 +128,46 @@ public abstract class AbstractUnitizationAgreementCalc extends AbstractMaeAgreem
             }
             annotator++;
         }
+        return unitsPerAtt;
     }
 
+    private static void addUnits(List<int[]> pairs, int annotator, String category, List<Unit> units) {
+        for (int[] pair : pairs) {
+            units.add(new Unit(pair[0], pair[1] - pair[0], annotator, category));
+        }
+    }
+
+    /**
+     * Units are collected relative to their own document, so that they stay
+     * valid when lengths of preceding documents change, and are shifted by
+     * the document offset only when added to a study.
+     */
+    void addUnitsToStudy(List<Unit> units, int textOffset, UnitizingAnnotationStudy study) {
+        for (Unit unit : units) {
+            study.addUnit(unit.offset + textOffset, unit.length, unit.annotator, unit.category);
+        }
+    }
+
+    /**
+     * A unit collected from a document, to be added to a study later, so that
+     * documents can be read in any order but units still go in document order.
+     */
+    static class Unit implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int offset;
+        final int length;
+        final int annotator;
+        final String category;
+
+        Unit(int offset, int length, int annotator, String category) {
+            this.offset = offset;
+            this.length = length;
+            this.annotator = annotator;
+            this.category = category;
+        }
+    }
 
     @Override
-    abstract public Map<String, Double> calculateAgreement(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeDBException;
+    abstract public Map<String, Double> calculateAgreement(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeException;
 }
@@ -24,19 +24,21 @@
 
 package edu.brandeis.cs.nlp.mae.agreement.calculator;
 
+import edu.brandeis.cs.nlp.mae.MaeException;
 import edu.brandeis.cs.nlp.mae.agreement.io.AbstractAnnotationIndexer;
+import edu.brandeis.cs.nlp.mae.agreement.io.ParsedAnnotation;
 import edu.brandeis.cs.nlp.mae.agreement.io.XMLParseCache;
-import edu.brandeis.cs.nlp.mae.database.MaeDBException;
-import edu.brandeis.cs.nlp.mae.io.MaeXMLParser;
 import edu.brandeis.cs.nlp.mae.util.MappedSet;
 import org.dkpro.statistics.agreement.unitizing.KrippendorffAlphaUnitizingAgreement;
 import org.dkpro.statistics.agreement.unitizing.UnitizingAnnotationStudy;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 /**
  * Created by krim on 4/23/2016.
@@ -49,19 +51,26 @@ public class GlobalAlphaUCalc extends AbstractUnitizationAgreementCalc {
     }
 
     @Override
-    public Map<String, Double> calculateAgreement(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeDBException {
+    public Map<String, Double> calculateAgreement(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeException {
         Map<String, Double> globalAlphaU = new TreeMap<>();
 
         UnitizingAnnotationStudy study = new UnitizingAnnotationStudy(numAnnotators, totalDocumentsLength);
-        int curDocLength = 0;
         List<String> documents = fileIdx.getDocumentNames();
-        for (int i = 0; i < documents.size(); i++) {
-            String document = documents.get(i);
-            MaeXMLParser[] parses = parseCache.getParses(document);
-            for (String tagTypeName : targetTagsAndAtts.keyList()) {
-                addTagAsUnits(tagTypeName, parses, curDocLength, study);
-            }
-            curDocLength += documentLength[i];
+        List<Callable<List<Unit>>> tasks = new ArrayList<>();
+        String configuration = targetTagsAndAtts.keyList().toString();
+        for (String document : documents) {
+            tasks.add(() -> getOrCollect(GLOBAL_UNITS, configuration, document, () -> {
+                List<Unit> units = new ArrayList<>();
+                ParsedAnnotation[] parses = parseCache.getParses(document);
+                for (String tagTypeName : targetTagsAndAtts.keyList()) {
+                    addTagAsUnits(tagTypeName, parses, units);
+                }
+                return units;
+            }));
+        }
+        List<List<Unit>> collected = invokeInOrder(tasks);
+        for (int i = 0; i < collected.size(); i++) {
+            addUnitsToStudy(collected.get(i), documentOffset[i], study);
         }
         double agree = (new KrippendorffAlphaUnitizingAgreement(study)).calculateAgreement();
         globalAlphaU.put("cross-tag_alpha_u", agree);
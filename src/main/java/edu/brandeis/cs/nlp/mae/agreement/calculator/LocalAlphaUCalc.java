@@ -25,9 +25,9 @@
 package edu.brandeis.cs.nlp.mae.agreement.calculator;
 
 import edu.brandeis.cs.nlp.mae.agreement.io.AbstractAnnotationIndexer;
+import edu.brandeis.cs.nlp.mae.agreement.io.ParsedAnnotation;
 import edu.brandeis.cs.nlp.mae.agreement.io.XMLParseCache;
-import edu.brandeis.cs.nlp.mae.database.MaeDBException;
-import edu.brandeis.cs.nlp.mae.io.MaeXMLParser;
+import edu.brandeis.cs.nlp.mae.MaeException;
 import edu.brandeis.cs.nlp.mae.util.MappedSet;
 import org.dkpro.statistics.agreement.unitizing.KrippendorffAlphaUnitizingAgreement;
 import org.dkpro.statistics.agreement.unitizing.UnitizingAnnotationStudy;
@@ -35,6 +35,7 @@ import org.xml.sax.SAXException;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import static edu.brandeis.cs.nlp.mae.agreement.MaeAgreementStrings.SPAN_ATT;
 import static edu.brandeis.cs.nlp.mae.agreement.MaeAgreementStrings.TAG_ATT_DELIM;
@@ -50,38 +51,46 @@ public class LocalAlphaUCalc extends AbstractUnitizationAgreementCalc {
     }
 
     @Override
-    public Map<String, Double> calculateAgreement(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeDBException {
-        Map<String, Double> alphaUs = new TreeMap<>();
+    public Map<String, Double> calculateAgreement(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeException {
 
-        Map<String, String> attFullNameMap = new HashMap<>();
-        for (String tagTypeName : targetTagsAndAtts.keyList()) {
-            Map<String, UnitizingAnnotationStudy> studyPerAtt = new LinkedHashMap<>();
+        Map<String, UnitizingAnnotationStudy> studyPerAtt = new LinkedHashMap<>();
+        List<String> tagTypeNames = targetTagsAndAtts.keyList();
+        List<String> documents = fileIdx.getDocumentNames();
+        List<Callable<Map<String, List<Unit>>>> tasks = new ArrayList<>();
+        for (String tagTypeName : tagTypeNames) {
             List<String> attTypeNames = targetTagsAndAtts.getAsList(tagTypeName);
             attTypeNames.add(0, SPAN_ATT);
             for (String attTypeName : attTypeNames) {
                 String attFullName = tagTypeName + TAG_ATT_DELIM + attTypeName;
                 studyPerAtt.put(attFullName, new UnitizingAnnotationStudy(numAnnotators, totalDocumentsLength));
-                attFullNameMap.put(attTypeName, attFullName);
             }
-            int curDocLength = 0;
-            List<String> documents = fileIdx.getDocumentNames();
-            for (int i = 0; i < documents.size(); i++) {
-                String document = documents.get(i);
-                MaeXMLParser[] parses = getParses(document);
-
-                addTagAsUnits(tagTypeName, parses, curDocLength, studyPerAtt.get(attFullNameMap.get(SPAN_ATT)));
-                for (int j = 1; j < attTypeNames.size(); j++) {
-                    String attTypeName = attTypeNames.get(j);
-                    addAttAsUnits(tagTypeName, attTypeName, parses, curDocLength, studyPerAtt.get(attFullNameMap.get(attTypeName)));
-                }
-                curDocLength += documentLength[i];
+            String configuration = tagTypeName + attTypeNames;
+            for (String document : documents) {
+                tasks.add(() -> getOrCollect(LOCAL_UNITS, configuration, document,
+                        () -> collectUnits(document, tagTypeName, attTypeNames)));
             }
-            for (String attTypeName : attTypeNames) {
-                double agree = (new KrippendorffAlphaUnitizingAgreement(studyPerAtt.get(attFullNameMap.get(attTypeName)))).calculateAgreement();
-                alphaUs.put(attFullNameMap.get(attTypeName), agree);
+        }
+
+        // units of a study are added in document order
+        List<Map<String, List<Unit>>> collected = invokeInOrder(tasks);
+        for (int i = 0; i < collected.size(); i++) {
+            Map<String, List<Unit>> unitsPerAtt = collected.get(i);
+            int curDocOffset = documentOffset[i % documents.size()];
+            for (String attFullName : unitsPerAtt.keySet()) {
+                addUnitsToStudy(unitsPerAtt.get(attFullName), curDocOffset, studyPerAtt.get(attFullName));
             }
         }
-        return alphaUs;
+        return calculateEach(studyPerAtt,
+                study -> (new KrippendorffAlphaUnitizingAgreement(study)).calculateAgreement());
+    }
+
+    private Map<String, List<Unit>> collectUnits(String document, String tagTypeName, List<String> attTypeNames) throws IOException, SAXException, MaeException {
+        Map<String, List<Unit>> unitsPerAtt = new LinkedHashMap<>();
+        Map<String, List<Unit>> collected = collectUnitsOfTagType(tagTypeName, attTypeNames, getParses(document));
+        for (String attTypeName : attTypeNames) {
+            unitsPerAtt.put(tagTypeName + TAG_ATT_DELIM + attTypeName, collected.get(attTypeName));
+        }
+        return unitsPerAtt;
     }
 
 }
@@ -34,7 +34,6 @@ import org.xml.sax.SAXException;
 
 import java.io.IOException;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * Created by krim on 4/25/2016.
@@ -47,11 +46,7 @@ public class LocalMultiPiCalc extends AbstractCodingAgreementCalc {
 
     @Override
     public Map<String, Double> calculateAgreement(MappedSet<String, String> targetTagsAndAtts) throws IOException, SAXException, MaeException {
-        Map<String, Double> localMultiPi = new TreeMap<>();
         Map<String, CodingAnnotationStudy> studies = prepareLocalCodingStudies(targetTagsAndAtts);
-        for (String attFullName : studies.keySet()) {
-            localMultiPi.put(attFullName, (new FleissKappaAgreement(studies.get(attFullName))).calculateAgreement());
-        }
-        return localMultiPi;
+        return calculateEach(studies, study -> (new FleissKappaAgreement(study)).calculateAgreement());
     }
 }
@@ -71,15 +71,21 @@ public abstract class AbstractAnnotationIndexer {
                 annotator, XML_EXT);
     }
 
-    public abstract void indexAnnotations(File datasetDirectory) throws MaeIOException;
-
-    public abstract int listupAnnotators(File datasetDirectory) throws MaeIOException;
-
-    public void getAnnotationMatrixFromDirectories(List<File> annotationDirs) throws MaeIOException {
-        // TODO: 2016-04-13 20:41:43EDT implement this to take a set of dir names and treat each of them as an annotator
-
+    /**
+     * Puts a file into its document's slot of the given annotator.
+     */
+    void putAnnotationFile(String document, String annotatorSymbol, File annotationFile) throws MaeIOException {
+        String[] indexedFileNames = documentFileMap.computeIfAbsent(document, k -> new String[annotatorMap.size()]);
+        int annotatorIdx = annotatorMap.get(annotatorSymbol);
+        if (indexedFileNames[annotatorIdx] != null) {
+            throw new MaeIOException(String.format("Two annotations of \"%s\" by \"%s\": %s, %s",
+                    document, annotatorSymbol, indexedFileNames[annotatorIdx], annotationFile.getName()));
+        }
+        indexedFileNames[annotatorIdx] = annotationFile.getAbsolutePath();
     }
 
+    public abstract void indexAnnotations(File datasetDirectory) throws MaeIOException;
 
+    public abstract int listupAnnotators(File datasetDirectory) throws MaeIOException;
 
 }
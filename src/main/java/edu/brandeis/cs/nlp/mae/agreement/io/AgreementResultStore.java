@@ -0,0 +1,199 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.agreement.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps per-document contributions to agreement studies (coding items,
+ * unitizing units) in a directory, across runs. An entry is keyed by the
+ * kind of contribution, its target configuration, the contents of the
+ * task definition, and the contents of the annotation files of the
+ * document. So when a file changes, only its document misses the store
+ * and gets parsed again, and when the DTD changes, every document does.
+ *
+ * Created by krim on 11/14/2016.
+ */
+public class AgreementResultStore {
+    private static final Logger logger = LoggerFactory.getLogger(AgreementResultStore.class.getName());
+
+    private static final String ENTRY_EXT = ".contrib";
+
+    private File directory;
+    private ConcurrentMap<String, FileDigest> fileDigests;
+
+    public AgreementResultStore(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create a directory: " + directory.getPath());
+        }
+        this.directory = directory;
+        this.fileDigests = new ConcurrentHashMap<>();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param kind what is stored, entries of different kinds never share keys
+     * @param configuration targets (tag types, attributes, ...) the contribution is computed for
+     * @param taskFile path to the task definition (DTD) annotations are read with
+     * @param annotators annotator symbols, in the order of annotationFiles
+     * @param annotationFiles paths to annotation files of a document, null for missing ones
+     */
+    public String keyOf(String kind, String configuration, String taskFile, Iterable<String> annotators, String[] annotationFiles) throws IOException {
+        MessageDigest digest = newDigest();
+        update(digest, kind);
+        update(digest, configuration);
+        digest.update(digestOf(new File(taskFile)));
+        for (String annotator : annotators) {
+            update(digest, annotator);
+        }
+        for (String fileName : annotationFiles) {
+            if (fileName == null) {
+                update(digest, "");
+            } else {
+                digest.update(digestOf(new File(fileName)));
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return stored contribution, or null if nothing is stored for the key or
+     * the stored one cannot be read
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key) {
+        File entry = new File(directory, key + ENTRY_EXT);
+        if (!entry.exists()) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            return (T) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.warn("ignoring unreadable stored contribution: " + entry, e);
+            return null;
+        }
+    }
+
+    public void put(String key, Object contribution) throws IOException {
+        File entry = new File(directory, key + ENTRY_EXT);
+        // write to a temporary file and then move, so that other processes
+        // reading the same store never see a half-written entry
+        File temp = File.createTempFile(key, ".tmp", directory);
+        try {
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeObject(contribution);
+            }
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Deletes all stored contributions.
+     */
+    public void clear() throws IOException {
+        File[] entries = directory.listFiles((dir, name) -> name.endsWith(ENTRY_EXT));
+        if (entries != null) {
+            for (File entry : entries) {
+                Files.deleteIfExists(entry.toPath());
+            }
+        }
+        fileDigests.clear();
+    }
+
+    private byte[] digestOf(File file) throws IOException {
+        // files are hashed once per modification, not once per lookup
+        FileDigest known = fileDigests.get(file.getAbsolutePath());
+        if (known != null && known.isUpToDate(file)) {
+            return known.digest;
+        }
+        MessageDigest digest = newDigest();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        FileDigest computed = new FileDigest(file, digest.digest());
+        fileDigests.put(file.getAbsolutePath(), computed);
+        return computed.digest;
+    }
+
+    private static void update(MessageDigest digest, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        // length prefix, so that ("ab", "c") and ("a", "bc") differ
+        digest.update(new byte[]{(byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16),
+                (byte) (bytes.length >>> 8), (byte) bytes.length});
+        digest.update(bytes);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static class FileDigest {
+        final long lastModified;
+        final long length;
+        final byte[] digest;
+
+        FileDigest(File file, byte[] digest) {
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.digest = digest;
+        }
+
+        boolean isUpToDate(File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+    }
+}
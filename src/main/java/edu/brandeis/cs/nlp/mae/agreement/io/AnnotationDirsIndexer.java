@@ -0,0 +1,78 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.agreement.io;
+
+import edu.brandeis.cs.nlp.mae.io.MaeIOException;
+import edu.brandeis.cs.nlp.mae.util.FileHandler;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+import static edu.brandeis.cs.nlp.mae.util.FileHandler.*;
+
+/**
+ * Indexes a dataset directory with a sub-directory per annotator, where the
+ * name of a sub-directory is used as annotator symbol, and files in different
+ * sub-directories with the same name are annotations of the same document.
+ * Annotator suffixes in file names (doc1_a1.xml in a1/) are optional.
+ *
+ * Created by krim on 11/12/2016.
+ */
+public class AnnotationDirsIndexer extends AbstractAnnotationIndexer {
+
+    private File[] annotatorDirs;
+
+    @Override
+    public int listupAnnotators(File datasetDirectory) throws MaeIOException {
+        if (!FileHandler.containsDirsOnly(datasetDirectory)) {
+            throw new MaeIOException("Dataset should only contain directories of annotators: " + datasetDirectory.getName());
+        }
+        annotatorDirs = datasetDirectory.listFiles();
+        Arrays.sort(annotatorDirs);
+        annotatorMap = new TreeMap<>();
+        for (File annotatorDir : annotatorDirs) {
+            annotatorMap.put(annotatorDir.getName(), annotatorMap.size());
+        }
+        return annotatorMap.size();
+    }
+
+    @Override
+    public void indexAnnotations(File datasetDirectory) throws MaeIOException {
+        listupAnnotators(datasetDirectory);
+        documentFileMap = new TreeMap<>();
+        for (File annotatorDir : annotatorDirs) {
+            String annotatorSymbol = annotatorDir.getName();
+            String annotatorSuffix = ANNOTATOR_SUFFIX_DELIM + annotatorSymbol;
+            for (File annotationFile : FileHandler.getAllXMLFilesIn(annotatorDir)) {
+                String document = getFileNameWithoutExtension(getFileBaseName(annotationFile).trim());
+                if (document.endsWith(annotatorSuffix)) {
+                    document = document.substring(0, document.length() - annotatorSuffix.length());
+                }
+                putAnnotationFile(document, annotatorSymbol, annotationFile);
+            }
+        }
+    }
+}
@@ -30,10 +30,15 @@ import edu.brandeis.cs.nlp.mae.util.FileHandler;
 import java.io.File;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import static edu.brandeis.cs.nlp.mae.util.FileHandler.*;
 
 /**
+ * Indexes a flat directory of annotation files, where each file name is a
+ * document name suffixed with an annotator symbol (doc1_a1.xml, doc1_a2.xml).
+ * Files are grouped by their document names with hashing, in one pass.
+ *
  * Created by krim on 4/23/2016.
  */
 public class AnnotationFilesIndexer extends AbstractAnnotationIndexer {
@@ -49,24 +54,29 @@ public class AnnotationFilesIndexer extends AbstractAnnotationIndexer {
     }
 
     private int listupAnnotators(List<File> annotationFiles) throws MaeIOException {
-        annotatorMap = new TreeMap<>();
-        int countSeen = 0;
-
+        TreeSet<String> annotatorSymbols = new TreeSet<>();
         for (File annotationFile : annotationFiles) {
-            String annotationBaseName = getFileBaseName(annotationFile).trim();
-            if (!annotationFile.getName().endsWith(XML_EXT)) {
-                throw new MaeIOException("An annotation should be an XML file: " + annotationFile.getName());
-            }
-
-            String annotationShortName = getFileNameWithoutExtension(annotationBaseName);
-            String annotatorSymbol = splitAnnotationAnnotator(annotationShortName)[1];
-            if (!annotatorMap.containsKey(annotatorSymbol)) {
-                annotatorMap.put(annotatorSymbol, countSeen++);
-            }
+            annotatorSymbols.add(splitFileName(annotationFile)[1]);
+        }
+        annotatorMap = new TreeMap<>();
+        for (String annotatorSymbol : annotatorSymbols) {
+            annotatorMap.put(annotatorSymbol, annotatorMap.size());
         }
         return annotatorMap.size();
     }
 
+    private String[] splitFileName(File annotationFile) throws MaeIOException {
+        String annotationBaseName = getFileBaseName(annotationFile).trim();
+        if (!annotationFile.getName().endsWith(XML_EXT)) {
+            throw new MaeIOException("An annotation should be an XML file: " + annotationFile.getName());
+        }
+        String annotationShortName = getFileNameWithoutExtension(annotationBaseName);
+        if (!annotationShortName.contains(ANNOTATOR_SUFFIX_DELIM)) {
+            throw new MaeIOException("An annotation file name should end with an annotator suffix: " + annotationFile.getName());
+        }
+        return splitAnnotationAnnotator(annotationShortName);
+    }
+
     @Override
     public void indexAnnotations(File datasetDirectory) throws MaeIOException {
         if (annotationFiles == null) {
@@ -81,36 +91,10 @@ public class AnnotationFilesIndexer extends AbstractAnnotationIndexer {
         // also they should share the rest of their names
 
         listupAnnotators(annotationFiles);
-        while (annotationFiles.size() > 0) {
-            File annotationFile = annotationFiles.remove(0);
-            String[] split = splitAnnotationAnnotator(getFileNameWithoutExtension(
-                            getFileBaseName(annotationFile).trim()));
-            String annotationName = split[0];
-            String annotatorName  = split[1];
-            String[] indexedFileNames = new String[annotatorMap.size()];
-            // fill current file's slot
-            indexedFileNames[annotatorMap.get(annotatorName)] = annotationFile.getAbsolutePath();
-
-            // then iterate the rest of files, to find associated files
-            for (String symbol : annotatorMap.keySet()) {
-                if (symbol.equals(annotatorName)) {
-                    continue;
-                }
-                String secondaryAnnotationBaseName = generateAnnotationFileName(annotationName, symbol);
-
-                int i = 0;
-                while (i < annotationFiles.size()) {
-                    File rest = annotationFiles.get(i);
-                    if (rest.getName().endsWith(secondaryAnnotationBaseName)) {
-                        indexedFileNames[annotatorMap.get(symbol)] = rest.getAbsolutePath();
-                        annotationFiles.remove(i);
-                        break;
-                    } else {
-                        i++;
-                    }
-                }
-            }
-            documentFileMap.put(annotationName, indexedFileNames);
+        documentFileMap = new TreeMap<>();
+        for (File annotationFile : annotationFiles) {
+            String[] split = splitFileName(annotationFile);
+            putAnnotationFile(split[0], split[1], annotationFile);
         }
     }
 }
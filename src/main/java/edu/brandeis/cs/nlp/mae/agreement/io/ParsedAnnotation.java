@@ -0,0 +1,225 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.agreement.io;
+
+import edu.brandeis.cs.nlp.mae.io.MaeXMLParser;
+import edu.brandeis.cs.nlp.mae.io.ParsedAtt;
+import edu.brandeis.cs.nlp.mae.io.ParsedTag;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Tags and attributes of a parsed annotation file, with hash indexes for
+ * agreement calculation; tags by tag type and spans, attributes by tid.
+ * Indexes are built once at construction and never modified, so an
+ * instance can be shared between threads.
+ *
+ * Created by krim on 11/10/2016.
+ */
+public class ParsedAnnotation {
+
+    private final List<ParsedTag> tags;
+    private final List<ParsedAtt> atts;
+    private final Map<String, Map<SpanKey, List<ParsedTag>>> tagsByTypeAndSpans;
+    private final Map<String, List<ParsedTag>> tagsByType;
+    private final Map<String, List<ParsedAtt>> attsByTid;
+    private final long estimatedSize;
+
+    public ParsedAnnotation(MaeXMLParser parse) {
+        this(parse.getParsedTags(), parse.getParsedAtts());
+    }
+
+    public ParsedAnnotation(List<ParsedTag> tags, List<ParsedAtt> atts) {
+        this.tags = Collections.unmodifiableList(new ArrayList<>(tags));
+        this.atts = Collections.unmodifiableList(new ArrayList<>(atts));
+        this.tagsByTypeAndSpans = new HashMap<>();
+        this.tagsByType = new HashMap<>();
+        this.attsByTid = new HashMap<>();
+        for (ParsedTag tag : this.tags) {
+            tagsByType.computeIfAbsent(tag.getTagTypeName(), k -> new ArrayList<>()).add(tag);
+            tagsByTypeAndSpans.computeIfAbsent(tag.getTagTypeName(), k -> new HashMap<>())
+                    .computeIfAbsent(new SpanKey(tag.getSpans()), k -> new ArrayList<>(1)).add(tag);
+        }
+        for (ParsedAtt att : this.atts) {
+            attsByTid.computeIfAbsent(att.getTid(), k -> new ArrayList<>()).add(att);
+        }
+        this.estimatedSize = estimateSize();
+    }
+
+    private long estimateSize() {
+        // rough heap footprint; object headers, references and index entries
+        // are counted as fixed costs per tag and per attribute
+        long size = 64;
+        for (ParsedTag tag : tags) {
+            size += 160 + sizeOf(tag.getTid()) + sizeOf(tag.getText());
+            if (tag.getSpans() != null) {
+                size += 4L * tag.getSpans().length;
+            }
+        }
+        for (ParsedAtt att : atts) {
+            size += 96 + sizeOf(att.getTid()) + sizeOf(att.getAttTypeName()) + sizeOf(att.getAttValue());
+        }
+        return size;
+    }
+
+    private static long sizeOf(String string) {
+        return string == null ? 0 : 40 + 2L * string.length();
+    }
+
+    /**
+     * @return approximate number of bytes this parse occupies on the heap
+     */
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    public List<ParsedTag> getParsedTags() {
+        return tags;
+    }
+
+    public List<ParsedAtt> getParsedAtts() {
+        return atts;
+    }
+
+    public List<ParsedTag> getTagsOfType(String tagTypeName) {
+        return tagsByType.getOrDefault(tagTypeName, Collections.emptyList());
+    }
+
+    public List<ParsedTag> getTagsOfTypeAndSpans(String tagTypeName, int[] spans) {
+        Map<SpanKey, List<ParsedTag>> tagsBySpans = tagsByTypeAndSpans.get(tagTypeName);
+        if (tagsBySpans == null) {
+            return Collections.emptyList();
+        }
+        return tagsBySpans.getOrDefault(new SpanKey(spans), Collections.emptyList());
+    }
+
+    public List<ParsedAtt> getAttsOfTid(String tid) {
+        return attsByTid.getOrDefault(tid, Collections.emptyList());
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(tags.size());
+        for (ParsedTag tag : tags) {
+            out.writeBoolean(tag.isLink());
+            writeString(out, tag.getTid());
+            writeString(out, tag.getTagTypeName());
+            writeString(out, tag.getText());
+            // link tags do not have spans at all
+            int[] spans = tag.getSpans();
+            if (spans == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(spans.length);
+                for (int span : spans) {
+                    out.writeInt(span);
+                }
+            }
+        }
+        out.writeInt(atts.size());
+        for (ParsedAtt att : atts) {
+            writeString(out, att.getTid());
+            writeString(out, att.getTagTypeName());
+            writeString(out, att.getAttTypeName());
+            writeString(out, att.getAttValue());
+        }
+    }
+
+    public static ParsedAnnotation readFrom(DataInput in) throws IOException {
+        int numTags = in.readInt();
+        List<ParsedTag> tags = new ArrayList<>(numTags);
+        for (int i = 0; i < numTags; i++) {
+            ParsedTag tag = new ParsedTag();
+            tag.setLink(in.readBoolean());
+            tag.setTid(readString(in));
+            tag.setTagTypeName(readString(in));
+            tag.setText(readString(in));
+            int numSpans = in.readInt();
+            if (numSpans >= 0) {
+                int[] spans = new int[numSpans];
+                for (int j = 0; j < numSpans; j++) {
+                    spans[j] = in.readInt();
+                }
+                tag.setSpans(spans);
+            }
+            tags.add(tag);
+        }
+        int numAtts = in.readInt();
+        List<ParsedAtt> atts = new ArrayList<>(numAtts);
+        for (int i = 0; i < numAtts; i++) {
+            ParsedAtt att = new ParsedAtt();
+            att.setTid(readString(in));
+            att.setTagTypeName(readString(in));
+            att.setAttTypeName(readString(in));
+            att.setAttValue(readString(in));
+            atts.add(att);
+        }
+        return new ParsedAnnotation(tags, atts);
+    }
+
+    // writeUTF() can't take strings longer than 64k, and can't take nulls
+    private static void writeString(DataOutput out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class SpanKey {
+        private final int[] spans;
+        private final int hash;
+
+        SpanKey(int[] spans) {
+            this.spans = spans;
+            this.hash = Arrays.hashCode(spans);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof SpanKey && Arrays.equals(spans, ((SpanKey) obj).spans);
+        }
+    }
+}
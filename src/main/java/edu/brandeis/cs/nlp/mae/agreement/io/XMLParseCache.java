@@ -26,50 +26,159 @@ package edu.brandeis.cs.nlp.mae.agreement.io;
 
 import edu.brandeis.cs.nlp.mae.database.MaeDBException;
 import edu.brandeis.cs.nlp.mae.database.MaeDriverI;
+import edu.brandeis.cs.nlp.mae.database.TaskSchema;
 import edu.brandeis.cs.nlp.mae.io.MaeXMLParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
+ * Parses annotation files of a document on the first request and keeps the
+ * parses, indexed for lookups. Safe to use from multiple threads, a document
+ * is parsed only once even when requested concurrently.
+ *
+ * Parses are kept on memory up to a memory budget. When the budget is
+ * exceeded, least recently used documents are evicted and written to a
+ * binary file in a temporary directory, so that they can be read back
+ * without parsing XML again. Call clear() to delete those files.
+ *
  * Created by krim on 4/23/2016.
  */
 public class XMLParseCache {
-    private Map<String, MaeXMLParser[]> parseCache;
-    private MaeDriverI driver;
+    private static final Logger logger = LoggerFactory.getLogger(XMLParseCache.class.getName());
+
+    private TaskSchema schema;
     private AbstractAnnotationIndexer fileIdx;
     private Map<String, String> parseWarnings;
 
-    public XMLParseCache(MaeDriverI driver, AbstractAnnotationIndexer fileIdx) {
-        this.driver = driver;
+    // guarded by this
+    private LinkedHashMap<String, ParsedAnnotation[]> inMemory;
+    private Map<String, File> spilled;
+    private long memoryBudget;
+    private long memoryUsed;
+    private File spillDirectory;
+
+    private ConcurrentMap<String, Future<ParsedAnnotation[]>> loading;
+
+    public XMLParseCache(MaeDriverI driver, AbstractAnnotationIndexer fileIdx) throws MaeDBException {
+        this(driver.getTaskSchema(), fileIdx);
+    }
+
+    public XMLParseCache(TaskSchema schema, AbstractAnnotationIndexer fileIdx) {
+        this(schema, fileIdx, Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    public XMLParseCache(TaskSchema schema, AbstractAnnotationIndexer fileIdx, long memoryBudget) {
+        this.schema = schema;
         this.fileIdx = fileIdx;
-        this.parseCache = new HashMap<>();
-        this.parseWarnings = new HashMap<>();
+        this.memoryBudget = memoryBudget;
+        this.inMemory = new LinkedHashMap<>(16, 0.75f, true);
+        this.spilled = new HashMap<>();
+        this.loading = new ConcurrentHashMap<>();
+        this.parseWarnings = Collections.synchronizedMap(new TreeMap<String, String>());
+    }
+
+    public synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets approximate number of bytes parses can take on the heap. The most
+     * recently used document is always kept, even if it alone is over budget.
+     */
+    public void setMemoryBudget(long memoryBudget) throws IOException {
+        List<Map.Entry<String, ParsedAnnotation[]>> evicted;
+        synchronized (this) {
+            this.memoryBudget = memoryBudget;
+            evicted = evictOverBudget();
+        }
+        spill(evicted);
+    }
+
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    public synchronized boolean isInMemory(String docName) {
+        return inMemory.containsKey(docName);
+    }
+
+    public synchronized boolean isSpilled(String docName) {
+        return spilled.containsKey(docName);
     }
 
-    public MaeXMLParser[] getParses(String docName) throws IOException, SAXException, MaeDBException {
-        return getOrCacheXMLParse(docName);
+    public ParsedAnnotation[] getParses(String docName) throws IOException, SAXException, MaeDBException {
+        synchronized (this) {
+            ParsedAnnotation[] parses = inMemory.get(docName);
+            if (parses != null) {
+                return parses;
+            }
+        }
+        return getOrLoadParses(docName);
     }
 
-    private MaeXMLParser[] getOrCacheXMLParse(String docName) throws MaeDBException, IOException, SAXException {
-        if (!this.parseCache.containsKey(docName)) {
-            parseCache.put(docName, cacheXMLParse(docName));
+    private ParsedAnnotation[] getOrLoadParses(final String docName) throws MaeDBException, IOException, SAXException {
+        Future<ParsedAnnotation[]> parses = loading.get(docName);
+        if (parses == null) {
+            FutureTask<ParsedAnnotation[]> load = new FutureTask<>(() -> loadParses(docName));
+            parses = loading.putIfAbsent(docName, load);
+            if (parses == null) {
+                parses = load;
+                load.run();
+            }
         }
-        return parseCache.get(docName);
+        try {
+            return parses.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while parsing: " + docName, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            } else if (cause instanceof MaeDBException) {
+                throw (MaeDBException) cause;
+            }
+            throw new IOException("failed to parse: " + docName, cause);
+        } finally {
+            // loaded parses are in inMemory now, and failures are not kept,
+            // so next request will try again
+            loading.remove(docName, parses);
+        }
+    }
+
+    private ParsedAnnotation[] loadParses(String docName) throws MaeDBException, IOException, SAXException {
+        File spillFile;
+        synchronized (this) {
+            spillFile = spilled.get(docName);
+        }
+        ParsedAnnotation[] parses = spillFile != null ? readSpillFile(spillFile) : parseXMLFiles(docName);
+        List<Map.Entry<String, ParsedAnnotation[]>> evicted;
+        synchronized (this) {
+            inMemory.put(docName, parses);
+            memoryUsed += sizeOf(parses);
+            evicted = evictOverBudget();
+        }
+        spill(evicted);
+        return parses;
     }
 
-    private MaeXMLParser[] cacheXMLParse(String docName) throws MaeDBException, IOException, SAXException {
+    private ParsedAnnotation[] parseXMLFiles(String docName) throws MaeDBException, IOException, SAXException {
         String[] xmlFileNames = fileIdx.getAnnotationsOfDocument(docName);
-        MaeXMLParser[] parses = new MaeXMLParser[xmlFileNames.length];
+        ParsedAnnotation[] parses = new ParsedAnnotation[xmlFileNames.length];
         for (int i = 0; i < xmlFileNames.length; i++) {
             String fileName = xmlFileNames[i];
             if (fileName != null) {
-                MaeXMLParser parser = new MaeXMLParser(driver);
+                MaeXMLParser parser = new MaeXMLParser(schema);
                 parser.readAnnotationFile(new File(fileName));
-                parses[i] = parser;
+                parses[i] = new ParsedAnnotation(parser);
                 if (parser.getParseWarnings().length() > 0) {
                     this.parseWarnings.put(fileName, parser.getParseWarnings());
                 }
@@ -78,6 +187,97 @@ public class XMLParseCache {
         return parses;
     }
 
+    private static long sizeOf(ParsedAnnotation[] parses) {
+        long size = 16 + 8L * parses.length;
+        for (ParsedAnnotation parse : parses) {
+            if (parse != null) {
+                size += parse.getEstimatedSize();
+            }
+        }
+        return size;
+    }
+
+    // must be called while holding the lock, evicted ones need to be spilled after releasing it
+    private List<Map.Entry<String, ParsedAnnotation[]>> evictOverBudget() {
+        List<Map.Entry<String, ParsedAnnotation[]>> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, ParsedAnnotation[]>> eldest = inMemory.entrySet().iterator();
+        while (memoryUsed > memoryBudget && inMemory.size() > 1) {
+            Map.Entry<String, ParsedAnnotation[]> entry = eldest.next();
+            evicted.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+            memoryUsed -= sizeOf(entry.getValue());
+            eldest.remove();
+        }
+        return evicted;
+    }
+
+    private void spill(List<Map.Entry<String, ParsedAnnotation[]>> evicted) throws IOException {
+        for (Map.Entry<String, ParsedAnnotation[]> entry : evicted) {
+            String docName = entry.getKey();
+            synchronized (this) {
+                if (spilled.containsKey(docName)) {
+                    // parses never change, once written is good forever
+                    continue;
+                }
+            }
+            File spillFile = writeSpillFile(entry.getValue());
+            synchronized (this) {
+                spilled.put(docName, spillFile);
+            }
+            logger.debug(String.format("evicted parses of \"%s\" to %s", docName, spillFile));
+        }
+    }
+
+    private File writeSpillFile(ParsedAnnotation[] parses) throws IOException {
+        File spillFile;
+        synchronized (this) {
+            if (spillDirectory == null) {
+                spillDirectory = Files.createTempDirectory("mae-parse-cache").toFile();
+                spillDirectory.deleteOnExit();
+            }
+            spillFile = File.createTempFile("doc", ".parse", spillDirectory);
+        }
+        spillFile.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)))) {
+            out.writeInt(parses.length);
+            for (ParsedAnnotation parse : parses) {
+                out.writeBoolean(parse != null);
+                if (parse != null) {
+                    parse.writeTo(out);
+                }
+            }
+        }
+        return spillFile;
+    }
+
+    private ParsedAnnotation[] readSpillFile(File spillFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)))) {
+            ParsedAnnotation[] parses = new ParsedAnnotation[in.readInt()];
+            for (int i = 0; i < parses.length; i++) {
+                if (in.readBoolean()) {
+                    parses[i] = ParsedAnnotation.readFrom(in);
+                }
+            }
+            return parses;
+        }
+    }
+
+    /**
+     * Drops all cached parses, and deletes files of evicted ones.
+     */
+    public synchronized void clear() {
+        inMemory.clear();
+        memoryUsed = 0;
+        for (File spillFile : spilled.values()) {
+            if (!spillFile.delete()) {
+                logger.warn("could not delete: " + spillFile);
+            }
+        }
+        spilled.clear();
+        if (spillDirectory != null && spillDirectory.delete()) {
+            spillDirectory = null;
+        }
+    }
+
     public Map<String, String> getParseWarnings() {
         return this.parseWarnings;
     }
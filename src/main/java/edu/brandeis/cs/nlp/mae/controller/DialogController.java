@@ -115,6 +115,22 @@ class DialogController {
         return null;
     }
 
+    List<File> showFileChooseDialogAndSelectMultiple() {
+        fileChooser.setMultiSelectionEnabled(true);
+        try {
+            if (fileChooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
+                File[] selected = fileChooser.getSelectedFiles();
+                if (selected.length == 0 && fileChooser.getSelectedFile() != null) {
+                    return Collections.singletonList(fileChooser.getSelectedFile());
+                }
+                return Arrays.asList(selected);
+            }
+        } finally {
+            fileChooser.setMultiSelectionEnabled(false);
+        }
+        return Collections.emptyList();
+    }
+
     void setAsArgument(String argumentTid) throws MaeDBException {
         if (getMainController().getDriver().getAllLinkTagsOfAllTypes().size() == 0) {
             showWarning("No link tags are found.");
@@ -26,13 +26,17 @@ package edu.brandeis.cs.nlp.mae.controller;
 
 import edu.brandeis.cs.nlp.mae.MaeException;
 import edu.brandeis.cs.nlp.mae.MaeStrings;
+import edu.brandeis.cs.nlp.mae.database.AnnotationJournal;
+import edu.brandeis.cs.nlp.mae.database.InMemorySqliteDriverImpl;
 import edu.brandeis.cs.nlp.mae.database.LocalSqliteDriverImpl;
 import edu.brandeis.cs.nlp.mae.database.MaeDBException;
 import edu.brandeis.cs.nlp.mae.database.MaeDriverI;
+import edu.brandeis.cs.nlp.mae.database.TaskSchema;
 import edu.brandeis.cs.nlp.mae.io.MaeIODTDException;
 import edu.brandeis.cs.nlp.mae.io.MaeIOException;
 import edu.brandeis.cs.nlp.mae.model.*;
 import edu.brandeis.cs.nlp.mae.util.ColorHandler;
+import edu.brandeis.cs.nlp.mae.util.ForegroundStyleRuns;
 import edu.brandeis.cs.nlp.mae.util.MappedSet;
 import edu.brandeis.cs.nlp.mae.util.SpanHandler;
 import edu.brandeis.cs.nlp.mae.view.MaeMainView;
@@ -53,7 +57,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.*;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.*;
 
 /**
  * Created by krim on 12/30/2015.
@@ -82,9 +86,12 @@ public class MaeMainController extends JPanel {
     private String mFilenameSuffix = ""; // for file operation
 
     // database connectors
+    private boolean inMemoryDrivers = false;
     private List<MaeDriverI> drivers;
     private MaeDriverI currentDriver;
     private final int adjudDriverIndex = 0;
+    // task definition read once, new drivers install it instead of re-reading the DTD
+    private TaskSchema taskSchema;
 
     private ColorHandler textHighlighColors;
     private List<TagType> tagsForColor;
@@ -509,11 +516,19 @@ public class MaeMainController extends JPanel {
     }
 
     public void setupScheme(final File taskFile, final boolean fromNewTask) {
+        setupScheme(taskFile, fromNewTask, Collections.<File>emptyList());
+    }
+
+    /**
+     * Sets up a task, then opens given annotation files once the task is ready.
+     */
+    public void setupScheme(final File taskFile, final boolean fromNewTask, final List<File> documentsToOpen) {
         // this always wipes out on-going annotation works,
         // even with multi-file support, an instance of MAE requires all works share the same DB schema
         if (fromNewTask) {
             sendWaitMessage();
             wipeDrivers();
+            setTaskSchema(null);
         }
         SwingWorker<Boolean, Void> worker = new SwingWorker<Boolean, Void>() {
             @Override
@@ -535,11 +550,15 @@ public class MaeMainController extends JPanel {
             @Override
             protected void done() {
                 try {
-                    if (get() && fromNewTask) {
+                    boolean success = get();
+                    if (success && fromNewTask) {
                         adjustUIPlusTaskMinusAnnotationMinusAdjudication();
                     } else {
                         updateNotificationArea();
                     }
+                    if (success && documentsToOpen.size() > 0) {
+                        addDocuments(documentsToOpen);
+                    }
                 } catch (InterruptedException | ExecutionException e) {
                     e.printStackTrace();
                 }
@@ -550,7 +569,24 @@ public class MaeMainController extends JPanel {
 
     }
 
-    private void timeConsumingSetupScheme(File taskFile) throws MaeException {
+    public boolean isUsingInMemoryDrivers() {
+        return inMemoryDrivers;
+    }
+
+    /**
+     * Sets whether to keep annotation DBs in memory instead of temporary
+     * sqlite files. Only affects drivers created afterwards, thus meant to
+     * be called at startup. Unsaved edits of either kind of driver are
+     * recovered from the edit journal, not from DB files.
+     */
+    public void setUsingInMemoryDrivers(boolean inMemory) {
+        this.inMemoryDrivers = inMemory;
+    }
+
+    private MaeDriverI createDriver() throws MaeException {
+        if (inMemoryDrivers) {
+            return new InMemorySqliteDriverImpl();
+        }
         String dbFilename = String.format("mae-%d", System.currentTimeMillis());
         File dbFile;
         try {
@@ -558,11 +594,15 @@ public class MaeMainController extends JPanel {
         } catch (IOException e) {
             throw new MaeIOException("Could not generate DB file:", e);
         }
-        MaeDriverI driver = new LocalSqliteDriverImpl(dbFile.getAbsolutePath());
+        return new LocalSqliteDriverImpl(dbFile.getAbsolutePath());
+    }
+
+    private void timeConsumingSetupScheme(File taskFile) throws MaeException {
+        MaeDriverI driver = createDriver();
         currentDriver = driver;
         drivers.add(currentDriver);
         try {
-            getDriver().readTask(taskFile);
+            readTask(driver, taskFile);
         } catch (MaeDBException | MaeIODTDException e) {
             if (drivers.size() > 1) {
                 destroyCurrentDriver();
@@ -585,6 +625,191 @@ public class MaeMainController extends JPanel {
                 getDriver().getTaskName(), getDriver().getExtentTagTypes().size(), getDriver().getLinkTagTypes().size()));
     }
 
+    /**
+     * Populates task definition of a new driver, either by installing the
+     * shared task schema or, if there is none yet, by reading the DTD file.
+     */
+    private void readTask(MaeDriverI driver, File taskFile) throws MaeException, IOException {
+        TaskSchema schema = getTaskSchema(taskFile);
+        if (schema != null) {
+            driver.installTaskSchema(schema);
+        } else {
+            driver.readTask(taskFile);
+            setTaskSchema(driver.getTaskSchema());
+        }
+    }
+
+    private synchronized TaskSchema getTaskSchema(File taskFile) {
+        if (taskSchema != null && taskSchema.isReadFrom(taskFile)) {
+            return taskSchema;
+        }
+        return null;
+    }
+
+    private synchronized void setTaskSchema(TaskSchema schema) {
+        taskSchema = schema;
+    }
+
+    /**
+     * Opens multiple annotation files at once. Files are loaded concurrently
+     * into their own drivers on a worker pool bounded by the number of cores,
+     * then all document tabs are added to the UI together.
+     */
+    public void addDocuments(List<File> annotationFiles) {
+        final List<File> toOpen = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (File file : annotationFiles) {
+            if (seen.add(file.getAbsolutePath().replace("/./", "/")) && !checkDuplicateDocs(file)) {
+                toOpen.add(file);
+            }
+        }
+        if (toOpen.size() == 0) {
+            return;
+        } else if (toOpen.size() == 1) {
+            addDocument(toOpen.get(0));
+            return;
+        }
+
+        final boolean firstDocument = getDrivers().size() > 0 && !getDriver().isAnnotationLoaded();
+        final File taskFile;
+        try {
+            taskFile = new File(getDriver().getTaskFileName());
+        } catch (MaeDBException e) {
+            showError(e);
+            return;
+        }
+        sendWaitMessage();
+        SwingWorker<List<LoadedDocument>, Void> worker = new SwingWorker<List<LoadedDocument>, Void>() {
+            @Override
+            protected List<LoadedDocument> doInBackground() throws Exception {
+                return timeConsumingAddDocuments(toOpen, taskFile);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    publishDocuments(get(), firstDocument);
+                } catch (InterruptedException | ExecutionException e) {
+                    showError("Failed to open documents", e);
+                    updateNotificationArea();
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private List<LoadedDocument> timeConsumingAddDocuments(List<File> annotationFiles, final File taskFile)
+            throws InterruptedException, ExecutionException {
+        int poolSize = Math.min(annotationFiles.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+        try {
+            List<Future<LoadedDocument>> futures = new ArrayList<>();
+            for (final File annotationFile : annotationFiles) {
+                futures.add(pool.submit(new Callable<LoadedDocument>() {
+                    @Override
+                    public LoadedDocument call() {
+                        return loadDocument(annotationFile, taskFile);
+                    }
+                }));
+            }
+            List<LoadedDocument> documents = new ArrayList<>();
+            for (Future<LoadedDocument> future : futures) {
+                documents.add(future.get());
+            }
+            return documents;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private LoadedDocument loadDocument(File annotationFile, File taskFile) {
+        LoadedDocument document = new LoadedDocument(annotationFile);
+        MaeDriverI driver = null;
+        try {
+            driver = createDriver();
+            readTask(driver, taskFile);
+            document.warnings = driver.readAnnotation(annotationFile);
+            document.warnings += attachJournal(driver, annotationFile);
+            document.driver = driver;
+            logger.info(String.format("document \"%s\" is loaded into DB.", driver.getAnnotationFileBaseName()));
+        } catch (Exception e) {
+            document.error = e;
+            if (driver != null) {
+                try {
+                    driver.destroy();
+                } catch (MaeDBException ignored) {
+                }
+            }
+        }
+        return document;
+    }
+
+    private void publishDocuments(List<LoadedDocument> documents, boolean firstDocument) {
+        List<MaeDriverI> loaded = new ArrayList<>();
+        String xmlParseWarnings = "";
+        String loadErrors = "";
+        for (LoadedDocument document : documents) {
+            if (document.error != null) {
+                logException(document.error);
+                loadErrors += String.format("%s: %s\n", document.file.getName(), document.error.getMessage());
+            } else {
+                loaded.add(document.driver);
+                if (document.warnings.length() > 0) {
+                    xmlParseWarnings += String.format("%s:\n%s\n\n", document.file.getName(), document.warnings);
+                }
+            }
+        }
+        try {
+            if (loaded.size() > 0) {
+                if (firstDocument) {
+                    // task-only driver is no longer needed
+                    getDriver().destroy();
+                    drivers.clear();
+                }
+                // add all tabs quietly, then switch to the last one, which fills up tables
+                for (int i = 0; i < loaded.size(); i++) {
+                    currentDriver = loaded.get(i);
+                    drivers.add(currentDriver);
+                    if (i < loaded.size() - 1) {
+                        getTextPanel().addDocumentTab(getDriver().getAnnotationFileBaseName(), getDriver().getPrimaryText(), false);
+                    }
+                }
+                if (firstDocument) {
+                    if (loaded.size() == 1) {
+                        // no tab switching happens on the very first tab
+                        getTablePanel().insertAllTags();
+                    }
+                    getMenu().resetFileMenu();
+                    getMenu().resetTagsMenu();
+                    getMenu().resetModeMenu();
+                }
+                adjustUIPlusTaskAddAnnotation();
+            } else {
+                updateNotificationArea();
+            }
+        } catch (MaeException e) {
+            showError(e);
+            updateNotificationArea();
+        }
+        if (loadErrors.length() > 0) {
+            showError("Failed to open:\n" + loadErrors);
+        }
+        if (xmlParseWarnings.length() > 0) {
+            popupMessage(xmlParseWarnings);
+        }
+    }
+
+    private static class LoadedDocument {
+        private File file;
+        private MaeDriverI driver;
+        private String warnings = "";
+        private Exception error;
+
+        LoadedDocument(File file) {
+            this.file = file;
+        }
+    }
+
     public void addDocument(final File annotationFile) {
         if (checkDuplicateDocs(annotationFile)) return;
 
@@ -638,6 +863,7 @@ public class MaeMainController extends JPanel {
             }
 
             xmlParseWarnings = getDriver().readAnnotation(annotationFile);
+            xmlParseWarnings += attachJournal(getDriver(), annotationFile);
             logger.info(String.format("document \"%s\" is loaded into DB.",
                     getDriver().getAnnotationFileBaseName()));
 
@@ -666,6 +892,7 @@ public class MaeMainController extends JPanel {
                 timeConsumingSetupScheme(new File(getDriver().getTaskFileName())); // will set up a new dirver for GS
                 getDrivers().add(adjudDriverIndex, getDrivers().remove(getDrivers().size() - 1)); // move gold driver to the front
                 String xmlParseWarnings = getDriver().readAnnotation(goldstandard);
+                xmlParseWarnings += attachJournal(getDriver(), goldstandard);
                 getTextPanel().addAdjudicationTab(goldstandard.getName(), getDriver().getPrimaryText());
                 getTablePanel().prepareAllTables();
                 switchAdjudicationTag();
@@ -786,7 +1013,6 @@ public class MaeMainController extends JPanel {
     }
 
     void assignAdjudicationColors() throws MaeDBException {
-        // TODO: 2016-02-20 11:09:09EST clear coloring is extremely slow: need optimization
         getTextPanel().clearColoring();
         getTextPanel().clearSelection();
         TagType type = getAdjudicatingTagType();
@@ -796,10 +1022,9 @@ public class MaeMainController extends JPanel {
     }
 
     void paintGoldTags(Collection<Integer> goldAnchors) {
-        for (Integer goldAnchor : goldAnchors) {
-            getTextPanel().assignOverlappingColorAt(goldAnchor, ColorHandler.getVividForeground(), false);
-        }
-//        getTextPanel().assignOverlappingColorOver(new LinkedList<>(goldAnchors), ColorHandler.getVividForeground(), false);
+        List<Integer> sortedAnchors = new ArrayList<>(goldAnchors);
+        Collections.sort(sortedAnchors);
+        getTextPanel().assignOverlappingColorOver(sortedAnchors, ColorHandler.getVividForeground(), false);
     }
 
     void paintOverlappingStat(TagType type, Set<Integer> goldAnchors) throws MaeDBException {
@@ -814,17 +1039,19 @@ public class MaeMainController extends JPanel {
                 }
             }
         }
+        ForegroundStyleRuns runs = new ForegroundStyleRuns();
         for (Integer anchor : anchorToDriverIndex.keySet()) {
             Set<Integer> drivers = (Set<Integer>) anchorToDriverIndex.get(anchor);
             if (drivers.size() == 1) {
                 Integer driverIndex = drivers.iterator().next();
-                getTextPanel().assignOverlappingColorAt(anchor, documentTabColors.getColor(driverIndex), false);
+                runs.add(anchor, documentTabColors.getColor(driverIndex), false, false);
             } else if (drivers.size() == getDrivers().size() - 1) { // full overlap
-                getTextPanel().assignOverlappingColorAt(anchor, ColorHandler.getFadingForeground(), true);
+                runs.add(anchor, ColorHandler.getFadingForeground(), true, false);
             } else { // partial overlap
-                getTextPanel().assignOverlappingColorAt(anchor, ColorHandler.getFadingForeground(), false);
+                runs.add(anchor, ColorHandler.getFadingForeground(), false, false);
             }
         }
+        getTextPanel().applyFGStyleRuns(runs);
     }
 
     public void switchAnnotationDocument(int tabId) {
@@ -839,7 +1066,7 @@ public class MaeMainController extends JPanel {
                 }
                 currentDriver = getDrivers().get(tabId);
                 getTablePanel().insertAllTags();
-                assignTextColorsOver(getAnchorsToRepaint());
+                assignTextColorsOf(getTypesToRepaint());
                 storePaintedStates();
                 logger.info(String.format("switched to document \"%s\", using DB file at \"%s\"",
                         getDriver().getAnnotationFileName(), getDriver().getDBSourceName()));
@@ -979,6 +1206,26 @@ public class MaeMainController extends JPanel {
         return getDialogs().showFileChooseDialogAndSelect(defautName, saveFile);
     }
 
+    public List<File> selectMultipleFiles() {
+        return getDialogs().showFileChooseDialogAndSelectMultiple();
+    }
+
+    /**
+     * Repaints all anchors of given tag types, whose bitmaps are OR'ed into
+     * one set of locations to repaint.
+     */
+    public void assignTextColorsOf(Collection<TagType> types) {
+        try {
+            BitSet anchors = new BitSet();
+            for (TagType type : types) {
+                anchors.or(getDriver().getAnchorBitsOfTagType(type));
+            }
+            getTextPanel().massivelyAssignFGColors(anchors);
+        } catch (Exception e) {
+            showError(e);
+        }
+    }
+
     public void assignTextColorsOver(List<Integer> anchors) {
         try {
             if (anchors.size() > 100) {
@@ -1015,20 +1262,65 @@ public class MaeMainController extends JPanel {
         }
     }
 
-    List<Integer> getAnchorsToRepaint() {
-        Set<Integer> toRepaint = new HashSet<>();
+    Set<TagType> getTypesToRepaint() {
+        Set<TagType> toRepaint = new HashSet<>();
         Set<TagType> currentlyActivated = getTablePanel().getActiveTags();
         for (TagType type : coloredTagsInLastDocument.keySet()) {
             if ((currentlyActivated.contains(type) && !coloredTagsInLastDocument.get(type))
                     || (!currentlyActivated.contains(type) && coloredTagsInLastDocument.get(type))) {
-                try {
-                    toRepaint.addAll(getDriver().getAllAnchorsOfTagType(type));
-                } catch (MaeDBException e) {
-                    showError(e);
+                toRepaint.add(type);
+            }
+        }
+        return toRepaint;
+    }
+
+    private File getJournalFile(File annotationFile) {
+        String path = annotationFile.getAbsolutePath();
+        return new File(MaeStrings.JOURNAL_DIR,
+                String.format("%s-%08x.journal", annotationFile.getName(), path.hashCode()));
+    }
+
+    /**
+     * Replays edits left in the journal of a newly loaded annotation by a
+     * previous session that ended without saving, then starts journaling
+     * further edits. Problems with the journal are reported as warnings
+     * and never keep the annotation from being opened.
+     *
+     * @return a message about recovered edits, or an empty string
+     */
+    private String attachJournal(MaeDriverI driver, File annotationFile) {
+        File journalFile = getJournalFile(annotationFile);
+        String message = AnnotationJournal.recover(journalFile, driver);
+        try {
+            driver.setJournal(new AnnotationJournal(journalFile));
+        } catch (IOException e) {
+            logger.error("could not open the edit journal: " + journalFile.getAbsolutePath(), e);
+            message += String.format("Could not open the edit journal at %s, " +
+                    "unsaved edits will not be recoverable after a crash: %s\n",
+                    journalFile.getAbsolutePath(), e.getMessage());
+        }
+        return message;
+    }
+
+    /**
+     * Empties the journal once the annotation is saved, or moves on to
+     * the journal of the new file if saved under a different name.
+     */
+    public void resetJournal(MaeDriverI driver) throws MaeException {
+        File journalFile = getJournalFile(new File(driver.getAnnotationFileName()));
+        AnnotationJournal journal = driver.getJournal();
+        try {
+            if (journal == null || !journal.getFile().equals(journalFile)) {
+                if (journal != null) {
+                    journal.delete();
                 }
+                journal = new AnnotationJournal(journalFile);
+                driver.setJournal(journal);
             }
+            journal.truncate();
+        } catch (IOException e) {
+            throw new MaeIOException("Could not reset the edit journal: " + journalFile.getAbsolutePath(), e);
         }
-        return new ArrayList<>(toRepaint);
     }
 
     private void wipeDrivers() {
@@ -1080,11 +1372,7 @@ public class MaeMainController extends JPanel {
     public void setFGColor(TagType tagType, Color newColor) {
         getTextHighlightColors().setColor(newColor, tagsForColor.indexOf(tagType));
         if (getTablePanel().getActiveExtentTags().contains(tagType)) {
-            try {
-                assignTextColorsOver(getDriver().getAllAnchorsOfTagType(tagType));
-            } catch (MaeDBException e) {
-                showError(e);
-            }
+            assignTextColorsOf(Collections.singleton(tagType));
         }
     }
 
@@ -1269,6 +1557,48 @@ public class MaeMainController extends JPanel {
         }
     }
 
+    /**
+     * Deletes tags in one go, along with links anchored on them, then
+     * updates tables and repaints affected text at once.
+     */
+    public void deleteTags(Collection<String> tids) {
+        try {
+            List<Integer> toRepaint = new ArrayList<>();
+            if (!isAdjudicating()) {
+                for (String tid : tids) {
+                    Tag tag = getDriver().getTagByTid(tid);
+                    if (tag == null) {
+                        continue;
+                    }
+                    if (tag.getTagtype().isExtent()) {
+                        toRepaint.addAll(((ExtentTag) tag).getSpansAsList());
+                        for (LinkTag link : getDriver().getLinksHasArgumentTag((ExtentTag) tag)) {
+                            for (ExtentTag arg : link.getArgumentTags()) {
+                                toRepaint.addAll(arg.getSpansAsList());
+                            }
+                        }
+                    } else {
+                        for (ExtentTag arg : ((LinkTag) tag).getArgumentTags()) {
+                            toRepaint.addAll(arg.getSpansAsList());
+                        }
+                    }
+                }
+            }
+            logger.debug(String.format("removing DB rows: %d tags", tids.size()));
+            Set<String> deleted = getDriver().deleteTags(tids);
+            if (!isAdjudicating()) {
+                getTablePanel().removeTagsFromTables(deleted);
+                Collections.sort(toRepaint);
+                getTextPanel().assignFGColorOver(toRepaint);
+            } else {
+                adjudicationStatUpdate();
+            }
+            updateSavedStatusInTextPanel();
+        } catch (MaeDBException e) {
+            showError(e);
+        }
+    }
+
     public Tag createTagFromMenu(TagType tagType) {
 
         boolean nc = getSelectedTextSpans() == null || getSelectedTextSpans().length == 0;
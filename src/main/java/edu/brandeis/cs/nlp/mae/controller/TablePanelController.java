@@ -380,6 +380,17 @@ class TablePanelController extends MaeControllerI {
 
     }
 
+    void removeTagsFromTables(Set<String> tids) {
+        for (JTable table : tableMap.values()) {
+            TagTableModel tableModel = (TagTableModel) table.getModel();
+            for (int row = tableModel.getRowCount() - 1; row >= 0; row--) {
+                if (tids.contains(tableModel.getValueAt(row, ID_COL))) {
+                    tableModel.removeRow(row);
+                }
+            }
+        }
+    }
+
     private void removeTagFromAllTagsTable(String tid) {
         UneditableTableModel tableModel = (UneditableTableModel) tableMap.get(MaeStrings.ALL_TABLE_TAB_BACK_NAME).getModel();
         tableModel.removeRow(tableModel.searchForRowByTid(tid));
@@ -1276,7 +1287,7 @@ class TablePanelController extends MaeControllerI {
                         deactivateTag();
                     }
                     checkAllTab();
-                    getMainController().assignTextColorsOver(getRelevantAnchors());
+                    getMainController().assignTextColorsOf(Collections.singleton(tagType));
 
                 }
                 getMainController().updateNotificationArea();
@@ -1287,11 +1298,6 @@ class TablePanelController extends MaeControllerI {
 
         }
 
-        private List<Integer> getRelevantAnchors() throws MaeDBException {
-            return getDriver().getAllAnchorsOfTagType(tagType);
-
-        }
-
         private void checkAllTab() throws MaeDBException {
             TablePanelView.TogglingTabTitle allTab = getTagTabTitle(0);
             if (getActiveExtentTags().size() == getMainController().paintableTagTypes()) {
@@ -33,8 +33,10 @@ import edu.brandeis.cs.nlp.mae.model.Tag;
 import edu.brandeis.cs.nlp.mae.model.TagType;
 import edu.brandeis.cs.nlp.mae.util.ColorHandler;
 import edu.brandeis.cs.nlp.mae.util.FontHandler;
+import edu.brandeis.cs.nlp.mae.util.ForegroundStyleRuns;
 import edu.brandeis.cs.nlp.mae.util.MappedSet;
 import edu.brandeis.cs.nlp.mae.util.SpanHandler;
+import edu.brandeis.cs.nlp.mae.view.IntervalHighlighter;
 import edu.brandeis.cs.nlp.mae.view.TextPanelView;
 
 import javax.swing.*;
@@ -63,6 +65,10 @@ class TextPanelController extends MaeControllerI {
     public static final int DEFAULT_FONT_SIZE = 14;
     public static final Color DEFAULT_FONT_COLOR = Color.BLACK;
     private int currentFontSize = DEFAULT_FONT_SIZE;
+    // chars around the caret to paint when the viewport is not laid out yet
+    static final int UNLAID_PAINT_MARGIN = 5000;
+    // anchors of each open document whose colors are not yet painted because they were out of sight
+    private final Map<Document, BitSet> unpaintedAnchors = new WeakHashMap<>();
 
 
     TextPanelController(MaeMainController mainController) throws MaeDBException {
@@ -121,6 +127,7 @@ class TextPanelController extends MaeControllerI {
     void addListeners() {
         getView().getDocumentPane().addCaretListener(new TextPanelCaretListener());
         getView().getDocumentPane().addMouseListener(new TextPanelMouseListener());
+        getView().getDocumentViewport().addChangeListener(new TextPanelViewportListener(getView().getDocumentPane()));
     }
 
     void disableTabSwitchListener() {
@@ -204,13 +211,17 @@ class TextPanelController extends MaeControllerI {
     }
 
     void addDocumentTab(String documentTitle, String documentText) throws MaeDBException {
+        addDocumentTab(documentTitle, documentText, true);
+    }
+
+    void addDocumentTab(String documentTitle, String documentText, boolean switchToNewTab) throws MaeDBException {
         if (!getView().isAnyDocumentOpen()) {
             getView().initTabs();
         }
         JTabbedPane tabs = getView().getTabs();
         TextPanelView.DocumentTabTitle title = new TextPanelView.DocumentTabTitle(documentTitle, tabs);
         title.addCloseListener(new DocumentCloseListener());
-        getView().addTextTab(title, documentText, currentFontSize, !getMainController().isAdjudicating());
+        getView().addTextTab(title, documentText, currentFontSize, switchToNewTab && !getMainController().isAdjudicating());
         addListeners();
         if (!getView().isAnyDocumentOpen()) {
             getView().getTabs().addChangeListener(new TextPanelTabSwitchListener());
@@ -424,11 +435,12 @@ class TextPanelController extends MaeControllerI {
     }
 
     void unassignAnchoredFGColors() throws MaeDBException {
-        List<Integer> anchorLocations = getDriver().getAllAnchors();
-        int anchorIndex = 0;
-        while (anchorIndex < anchorLocations.size()) {
-            anchorIndex += setFGColorAtLocation(DEFAULT_FONT_COLOR, anchorLocations.get(anchorIndex), false, false);
+        ForegroundStyleRuns runs = new ForegroundStyleRuns();
+        for (Integer location : getDriver().getAllAnchors()) {
+            runs.add(location, DEFAULT_FONT_COLOR, false, false);
         }
+        unpaintedAnchors.remove(getDocument());
+        applyFGStyleRuns(runs);
     }
 
     void unassignAllFGColor() throws MaeDBException {
@@ -449,36 +461,16 @@ class TextPanelController extends MaeControllerI {
 
     }
 
-    private int setFGColorAtLocation(Color color, int location, boolean underline, boolean italic) {
-        DefaultStyledDocument styleDoc = getDocument();
-        SimpleAttributeSet attributeSet = new SimpleAttributeSet();
-        StyleConstants.setForeground(attributeSet, color);
-        StyleConstants.setUnderline(attributeSet, underline);
-        StyleConstants.setItalic(attributeSet, italic);
-        try {
-            int length = Character.isHighSurrogate(styleDoc.getText(location, 1).charAt(0)) ? 2 : 1;
-            styleDoc.setCharacterAttributes(location, length, attributeSet, false);
-            return length;
-        } catch (BadLocationException ignored) {
-        }
-        return 0;
+    void applyFGStyleRuns(ForegroundStyleRuns runs) {
+        runs.applyTo(getDocument());
     }
 
     void assignOverlappingColorOver(List<Integer> locations, Color srcColor, boolean fullOverlap) {
-        int locIndex = 0;
-        while (locIndex < locations.size()) {
-            locIndex += setFGColorAtLocation(srcColor, locations.get(locIndex), fullOverlap, false);
-        }
-    }
-
-    void assignOverlappingColorAt(Integer location, Color srcColor, boolean fullOverlap) {
-        DefaultStyledDocument styleDoc = getDocument();
-        try {
-            if (location == 0 || !Character.isHighSurrogate(styleDoc.getText(location - 1, 1).charAt(0))) {
-                setFGColorAtLocation(srcColor, location, fullOverlap, false);
-            }
-        } catch (BadLocationException ignored) {
+        ForegroundStyleRuns runs = new ForegroundStyleRuns();
+        for (Integer location : locations) {
+            runs.add(location, srcColor, fullOverlap, false);
         }
+        applyFGStyleRuns(runs);
     }
 
     void assignAllFGColor() throws MaeDBException {
@@ -487,60 +479,117 @@ class TextPanelController extends MaeControllerI {
     }
 
     void assignFGColorOf(TagType type) throws MaeDBException {
-        massivelyAssignFGColors(getDriver().getAllAnchorsOfTagType(type));
+        massivelyAssignFGColors(getDriver().getAnchorBitsOfTagType(type));
     }
 
+    /**
+     * Marks given locations to be repainted, and paints those in the visible
+     * region of the document right away. Remaining ones are painted as they
+     * are scrolled into sight.
+     */
     void massivelyAssignFGColors(List<Integer> largeSpan) throws MaeDBException {
-        int locIndex = 0;
-        Set<TagType> activeTags = getMainController().getActiveExtentTags();
-        Set<TagType> activeLinks = getMainController().getActiveLinkTags();
+        BitSet anchors = new BitSet();
+        for (Integer location : largeSpan) {
+            anchors.set(location);
+        }
+        massivelyAssignFGColors(anchors);
+    }
 
-        MappedSet<Integer, TagType> existingAnchors = new MappedSet<>();
-        for (TagType tagType : activeTags) {
-            for (Integer anchor : getDriver().getAllAnchorsOfTagType(tagType)) {
-                existingAnchors.putItem(anchor, tagType);
-            }
+    void massivelyAssignFGColors(BitSet anchors) throws MaeDBException {
+        Document document = getDocument();
+        BitSet unpainted = unpaintedAnchors.get(document);
+        if (unpainted == null) {
+            unpaintedAnchors.put(document, (BitSet) anchors.clone());
+        } else {
+            unpainted.or(anchors);
         }
+        paintVisibleFGColors();
+    }
+
+    void paintVisibleFGColors() throws MaeDBException {
+        JTextPane pane = getView().getDocumentPane();
+        BitSet unpainted = unpaintedAnchors.get(pane.getDocument());
+        if (unpainted == null || unpainted.isEmpty()) {
+            return;
+        }
+        int[] region = getPaintRegion(pane);
+        List<Integer> locations = new ArrayList<>();
+        for (int i = unpainted.nextSetBit(region[0]); i >= 0 && i < region[1]; i = unpainted.nextSetBit(i + 1)) {
+            locations.add(i);
+        }
+        if (locations.size() > 0) {
+            unpainted.clear(region[0], region[1]);
+            paintFGColors(locations);
+        }
+    }
 
-        MappedSet<Integer, TagType> existingArgumentAnchors = new MappedSet<>();
-        for (TagType tagType : activeLinks) {
-            for (Integer anchor : getDriver().getAllAnchorsOfTagType(tagType)) {
-                existingArgumentAnchors.putItem(anchor, tagType);
+    /**
+     * Computes the character region to paint: what is visible in the
+     * viewport plus a screenful above and below it.
+     */
+    private int[] getPaintRegion(JTextPane pane) {
+        int length = pane.getDocument().getLength();
+        Rectangle visible = pane.getVisibleRect();
+        int start;
+        int end;
+        if (visible.height == 0) {
+            int caret = pane.getCaretPosition();
+            start = caret - UNLAID_PAINT_MARGIN;
+            end = caret + UNLAID_PAINT_MARGIN;
+        } else {
+            start = pane.viewToModel(new Point(0, Math.max(0, visible.y - visible.height)));
+            end = pane.viewToModel(new Point(pane.getWidth(), visible.y + visible.height * 2)) + 1;
+            if (start < 0 || end <= 0) {
+                start = 0;
+                end = length;
             }
         }
+        return new int[]{Math.max(0, start), Math.min(length, end)};
+    }
+
+    private void paintFGColors(List<Integer> locations) throws MaeDBException {
+        // bitmaps of active types, extent types in their natural order so that the first one decides the color
+        List<TagType> activeTags = new ArrayList<>(new TreeSet<>(getMainController().getActiveExtentTags()));
+        List<BitSet> activeTagAnchors = new ArrayList<>(activeTags.size());
+        for (TagType tagType : activeTags) {
+            activeTagAnchors.add(getDriver().getAnchorBitsOfTagType(tagType));
+        }
+        BitSet argumentAnchors = new BitSet();
+        for (TagType tagType : getMainController().getActiveLinkTags()) {
+            argumentAnchors.or(getDriver().getAnchorBitsOfTagType(tagType));
+        }
 
-        while (locIndex < largeSpan.size()) {
-            Integer location = largeSpan.get(locIndex);
+        ForegroundStyleRuns runs = new ForegroundStyleRuns();
+        for (Integer location : locations) {
+            boolean singular = false;
             boolean plural = false;
-            boolean argument = false;
             Color c = DEFAULT_FONT_COLOR;
-
-            if (existingAnchors.containsKey(location)) {
-                List<TagType> types = new ArrayList<>(existingAnchors.get(location));
-                if (types.size() > 0) {
-                    c = getMainController().getFGColor(types.get(0));
-                }
-                if (types.size() > 1) {
-                    plural = true;
+            for (int i = 0; i < activeTags.size(); i++) {
+                if (activeTagAnchors.get(i).get(location)) {
+                    if (!singular) {
+                        c = getMainController().getFGColor(activeTags.get(i));
+                        singular = true;
+                    } else {
+                        plural = true;
+                        break;
+                    }
                 }
             }
-            if (existingArgumentAnchors.containsKey(location)) {
-                argument = true;
-            }
-
-            locIndex += setFGColorAtLocation(c, location, plural, argument);
+            runs.add(location, c, plural, argumentAnchors.get(location));
         }
+        applyFGStyleRuns(runs);
     }
 
 
     void assignFGColorOver(List<Integer> locations) throws MaeDBException {
-        int locIndex = 0;
-        while (locIndex < locations.size()) {
-            locIndex += assignFGColorAt(locations.get(locIndex));
+        ForegroundStyleRuns runs = new ForegroundStyleRuns();
+        for (Integer location : locations) {
+            addFGColorAt(runs, location);
         }
+        applyFGStyleRuns(runs);
     }
 
-    private int assignFGColorAt(int location) throws MaeDBException {
+    private void addFGColorAt(ForegroundStyleRuns runs, int location) throws MaeDBException {
         boolean singular = false;
         boolean plural = false;
         boolean argument = false;
@@ -571,7 +620,7 @@ class TextPanelController extends MaeControllerI {
                 }
             }
         }
-        return setFGColorAtLocation(c, location, plural, argument);
+        runs.add(location, c, plural, argument);
     }
 
     void addBGColorOver(int[] spans, Highlighter.HighlightPainter painter) throws MaeControlException {
@@ -580,8 +629,12 @@ class TextPanelController extends MaeControllerI {
         }
         Highlighter hl = getView().getHighlighter();
         try {
-            for (int anchor : spans) {
-                hl.addHighlight(anchor, anchor+1, painter);
+            if (hl instanceof IntervalHighlighter) {
+                ((IntervalHighlighter) hl).addHighlights(SpanHandler.convertArrayToPairs(spans.clone()), painter);
+            } else {
+                for (int anchor : spans) {
+                    hl.addHighlight(anchor, anchor + 1, painter);
+                }
             }
             getView().getDocumentPane().scrollRectToVisible(getView().getDocumentPane().modelToView(spans[0]));
         } catch (BadLocationException e) {
@@ -675,6 +728,26 @@ class TextPanelController extends MaeControllerI {
         }
     }
 
+    private class TextPanelViewportListener implements ChangeListener {
+        private final JTextPane pane;
+
+        TextPanelViewportListener(JTextPane pane) {
+            this.pane = pane;
+        }
+
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            // colors are looked up from the current driver, only paint when its document is showing
+            if (getView().isAnyDocumentOpen() && pane == getView().getDocumentPane()) {
+                try {
+                    paintVisibleFGColors();
+                } catch (MaeDBException ex) {
+                    getMainController().showError(ex);
+                }
+            }
+        }
+    }
+
     private class TextPanelTabSwitchListener implements ChangeListener {
         @Override
         public void stateChanged(ChangeEvent e) {
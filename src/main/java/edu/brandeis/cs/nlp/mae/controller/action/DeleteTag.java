@@ -30,6 +30,7 @@ import edu.brandeis.cs.nlp.mae.model.Tag;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
+import java.util.Arrays;
 
 /**
  * Called when the user selects the option to delete the highlighted rows from
@@ -45,8 +46,10 @@ public class DeleteTag extends MenuActionI {
     public void actionPerformed(ActionEvent event) {
         if (getMainController().showBatchDeletionWarning()) {
             String[] tids = event.getActionCommand().split(MaeStrings.SEP);
-            for (String tid : tids) {
-                deleteTag(tid);
+            if (tids.length == 1) {
+                deleteTag(tids[0]);
+            } else {
+                getMainController().deleteTags(Arrays.asList(tids));
             }
         }
     }
@@ -29,6 +29,7 @@ import edu.brandeis.cs.nlp.mae.controller.MaeMainController;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.io.File;
+import java.util.List;
 
 /**
  * Listener for the File menu; determines what action to take for loading/saving
@@ -43,9 +44,9 @@ public class OpenFile extends MenuActionI {
     @Override
     public void actionPerformed(ActionEvent event) {
         try {
-            File file = getMainController().selectSingleFile("", false);
-            if (file != null) {
-                getMainController().addDocument(file);
+            List<File> files = getMainController().selectMultipleFiles();
+            if (files.size() > 0) {
+                getMainController().addDocuments(files);
             }
 
         } catch (Exception e) {
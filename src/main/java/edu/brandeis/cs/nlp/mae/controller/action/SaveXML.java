@@ -24,6 +24,7 @@
 
 package edu.brandeis.cs.nlp.mae.controller.action;
 
+import edu.brandeis.cs.nlp.mae.MaeException;
 import edu.brandeis.cs.nlp.mae.controller.MaeMainController;
 import edu.brandeis.cs.nlp.mae.database.MaeDBException;
 import edu.brandeis.cs.nlp.mae.database.MaeDriverI;
@@ -34,9 +35,14 @@ import edu.brandeis.cs.nlp.mae.model.TagType;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
 
 /**
  * Listener for the File menu; determines what action to take for loading/saving
@@ -49,8 +55,10 @@ public class SaveXML extends MenuActionI {
     // <!DOCTYPE root_element SYSTEM "DTD_filename">\
     // <!DOCTYPE root_element PUBLIC "DTD_name" "DTD_location">
     // see https://xmlwriter.net/xml_guide/doctype_declaration.shtml
-    private static String xmlText = "<TEXT><![CDATA[%s]]></TEXT>\n<TAGS>\n";
+    private static String xmlTextOpen = "<TEXT><![CDATA[";
+    private static String xmlTextClose = "]]></TEXT>\n<TAGS>\n";
     private static String xmlTail = "</TAGS>\n</%s>";
+    private static final long TAG_PAGE_SIZE = 1000;
 
     public SaveXML(String text, ImageIcon icon, KeyStroke hotkey, Integer mnemonic, MaeMainController controller) {
         super(text, icon, hotkey, mnemonic, controller);
@@ -77,29 +85,86 @@ public class SaveXML extends MenuActionI {
     void exportXML(File file) throws MaeDBException, IOException {
         getMainController().getDriver().setAnnotationChanged(false);
         getMainController().getDriver().setAnnotationFileName(file.getAbsolutePath());
-        OutputStreamWriter fw = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
-        fw.write(generateXMLString());
-        fw.close();
+        writeXML(getMainController().getDriver(), file);
+        try {
+            getMainController().resetJournal(getMainController().getDriver());
+        } catch (MaeException e) {
+            // the file is saved anyway, journal will be reset by the next save
+            getMainController().showError(e);
+        }
     }
 
     String generateXMLString() throws MaeDBException {
-        MaeDriverI driver = getMainController().getDriver();
+        return generateXMLString(getMainController().getDriver());
+    }
+
+    /**
+     * Serializes the annotation in the driver, without any UI involved.
+     */
+    public static String generateXMLString(MaeDriverI driver) throws MaeDBException {
+        StringWriter out = new StringWriter();
+        try {
+            writeXML(driver, out);
+        } catch (IOException e) {
+            // StringWriter never throws
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Streams the annotation into a file. XML is written to a temporary file
+     * next to the target first, so a failure halfway does not clobber an
+     * existing annotation.
+     */
+    public static void writeXML(MaeDriverI driver, File file) throws MaeDBException, IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writeXML(driver, out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Writes tags page by page, so that neither the tag list of a type nor
+     * the whole document is held in memory at once.
+     */
+    public static void writeXML(MaeDriverI driver, Writer out) throws MaeDBException, IOException {
 //        String head = String.format(xmlHeader, driver.getTaskFileName(), driver.getTaskName());
-        String head = String.format(xmlHeader, driver.getTaskName());
-        String text = String.format(xmlText, driver.getPrimaryText());
-        String tail = String.format(xmlTail, driver.getTaskName());
-        String tags = "";
+        out.write(String.format(xmlHeader, driver.getTaskName()));
+        out.write(xmlTextOpen);
+        out.write(driver.getPrimaryText());
+        out.write(xmlTextClose);
         for (TagType eType : driver.getExtentTagTypes()) {
-            for (ExtentTag tag : driver.getAllExtentTagsOfType(eType)) {
-                tags += tag.toXmlString() + "\n";
-            }
+            List<ExtentTag> page;
+            long offset = 0;
+            do {
+                page = driver.getExtentTagsOfType(eType, offset, TAG_PAGE_SIZE);
+                for (ExtentTag tag : page) {
+                    tag.writeXml(out);
+                    out.write('\n');
+                }
+                offset += page.size();
+            } while (page.size() == TAG_PAGE_SIZE);
         }
         for (TagType lType : driver.getLinkTagTypes()) {
-            for (LinkTag tag : driver.getAllLinkTagsOfType(lType)) {
-                tags += tag.toXmlString() + "\n";
-            }
+            List<LinkTag> page;
+            long offset = 0;
+            do {
+                page = driver.getLinkTagsOfType(lType, offset, TAG_PAGE_SIZE);
+                for (LinkTag tag : page) {
+                    tag.writeXml(out);
+                    out.write('\n');
+                }
+                offset += page.size();
+            } while (page.size() == TAG_PAGE_SIZE);
         }
-        return head + text + tags + tail;
+        out.write(String.format(xmlTail, driver.getTaskName()));
     }
 
     String getXMLFileName() throws MaeDBException {
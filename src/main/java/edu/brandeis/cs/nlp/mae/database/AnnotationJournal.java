@@ -0,0 +1,422 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.database;
+
+import edu.brandeis.cs.nlp.mae.model.*;
+import edu.brandeis.cs.nlp.mae.util.SpanHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * An append-only journal of annotation edits made through a driver since
+ * the annotation was last loaded or saved. Replaying the journal over the
+ * last saved XML recovers unsaved work after a crash.
+ *
+ * Records are serialized on the calling thread (typically the EDT) and
+ * handed to a single writer thread, which writes whatever has queued up
+ * and forces it to disk once per batch (group commit). Each record is
+ * length-prefixed, so a record torn by a crash is detected and skipped
+ * on replay.
+ *
+ * Created by krim on 11/16/2016.
+ */
+public class AnnotationJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnnotationJournal.class.getName());
+
+    static final byte EXTENT_CREATED = 1;
+    static final byte LINK_CREATED = 2;
+    static final byte TAG_DELETED = 3;
+    static final byte SPANS_UPDATED = 4;
+    static final byte TEXT_UPDATED = 5;
+    static final byte ATTRIBUTE_UPDATED = 6;
+    static final byte ARGUMENT_UPDATED = 7;
+    static final byte TAG_RETYPED = 8;
+
+    // sentinels for the writer thread, compared by identity
+    private static final byte[] TRUNCATE = new byte[0];
+    private static final byte[] STOP = new byte[0];
+
+    private final File file;
+    private final FileChannel channel;
+    private final BlockingQueue<byte[]> queue;
+    private final Thread writer;
+    private long enqueued;
+    private long committed;
+    private IOException failure;
+
+    public AnnotationJournal(File file) throws IOException {
+        this.file = file;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        queue = new LinkedBlockingQueue<>();
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "mae-journal-" + file.getName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void extentTagCreated(String tid, TagType tagType, String text, int[] spans) {
+        append(EXTENT_CREATED, tid, tagType.getName(), text, SpanHandler.convertArrayToString(spans));
+    }
+
+    public void linkTagCreated(LinkTag tag) {
+        append(LINK_CREATED, tag.getId(), tag.getTagTypeName());
+    }
+
+    public void tagDeleted(String tid) {
+        append(TAG_DELETED, tid);
+    }
+
+    public void tagRetyped(String tid, TagType newType, String newTid) {
+        append(TAG_RETYPED, tid, newType.getName(), newTid);
+    }
+
+    public void spansUpdated(ExtentTag tag, int[] spans) {
+        append(SPANS_UPDATED, tag.getId(), SpanHandler.convertArrayToString(spans));
+    }
+
+    public void textUpdated(ExtentTag tag, String text) {
+        append(TEXT_UPDATED, tag.getId(), text);
+    }
+
+    /**
+     * @param value null when the attribute is removed
+     */
+    public void attributeUpdated(Tag tag, AttributeType attType, String value) {
+        append(ATTRIBUTE_UPDATED, tag.getId(), attType.getName(), value);
+    }
+
+    /**
+     * @param argument null when the argument is removed
+     */
+    public void argumentUpdated(LinkTag linker, ArgumentType argType, ExtentTag argument) {
+        append(ARGUMENT_UPDATED, linker.getId(), argType.getName(), argument == null ? null : argument.getId());
+    }
+
+    private void append(byte op, String... fields) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0); // placeholder for the payload length
+            out.writeByte(op);
+            out.writeByte(fields.length);
+            for (String field : fields) {
+                writeString(out, field);
+            }
+            byte[] record = bytes.toByteArray();
+            ByteBuffer.wrap(record).putInt(0, record.length - 4);
+            enqueue(record);
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("corrupted journal record: string runs past the record");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private synchronized void enqueue(byte[] record) {
+        if (!writer.isAlive()) {
+            logger.error("journal is closed, an edit is not recorded: " + file.getAbsolutePath());
+            return;
+        }
+        enqueued++;
+        queue.add(record);
+    }
+
+    private void writeLoop() {
+        List<byte[]> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            boolean stop = false;
+            try {
+                List<ByteBuffer> buffers = new ArrayList<>(batch.size());
+                for (byte[] record : batch) {
+                    if (record == STOP) {
+                        stop = true;
+                    } else if (record == TRUNCATE) {
+                        write(buffers);
+                        buffers.clear();
+                        channel.truncate(0);
+                    } else {
+                        buffers.add(ByteBuffer.wrap(record));
+                    }
+                }
+                write(buffers);
+                channel.force(false);
+            } catch (IOException e) {
+                logger.error("failed to write the journal: " + e.getMessage());
+                synchronized (this) {
+                    failure = e;
+                }
+            }
+            synchronized (this) {
+                committed += batch.size();
+                notifyAll();
+            }
+            batch.clear();
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    private void write(List<ByteBuffer> buffers) throws IOException {
+        if (buffers.size() > 0) {
+            ByteBuffer[] array = buffers.toArray(new ByteBuffer[buffers.size()]);
+            while (array[array.length - 1].hasRemaining()) {
+                channel.write(array);
+            }
+        }
+    }
+
+    /**
+     * Blocks until all edits recorded so far are on disk.
+     */
+    public synchronized void sync() throws IOException {
+        long target = enqueued;
+        while (committed < target && writer.isAlive()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while syncing the journal");
+            }
+        }
+        if (failure != null) {
+            IOException e = failure;
+            failure = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Drops all recorded edits, e.g. once the annotation is saved.
+     */
+    public void truncate() throws IOException {
+        enqueue(TRUNCATE);
+        sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (writer.isAlive()) {
+                enqueue(STOP);
+                sync();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Closes the journal and removes its file.
+     */
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * Applies edits recorded in a journal file to a driver, which should hold
+     * the annotation as it was last saved. A torn record at the end of the
+     * file is ignored.
+     *
+     * @return number of edits replayed
+     */
+    public static int replay(File journalFile, MaeDriverI driver) throws IOException, MaeDBException {
+        int replayed = 0;
+        long remaining = journalFile.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (remaining >= 4) {
+                int length = in.readInt();
+                remaining -= 4;
+                if (length < 2 || length > remaining) {
+                    // a garbage length also runs past the end of file, never allocate it
+                    logger.warn("found a torn or corrupted journal record, stopped replaying: " + journalFile);
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                remaining -= length;
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                byte op = record.readByte();
+                apply(op, readFields(record), driver);
+                replayed++;
+            }
+        } finally {
+            if (replayed > 0) {
+                driver.setAnnotationChanged(true);
+            }
+        }
+        return replayed;
+    }
+
+    private static String[] readFields(DataInputStream record) throws IOException {
+        int fieldCount = record.readByte();
+        if (fieldCount < 1) {
+            throw new IOException("corrupted journal record: no tag id");
+        }
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = readString(record);
+        }
+        return fields;
+    }
+
+    /**
+     * Replays a journal left by a previous session. Whatever goes wrong
+     * with a journal must not keep the annotation from being opened, so a
+     * journal that fails to replay is moved aside to a ".failed" file.
+     *
+     * @return a message about recovered edits or the failure, or an empty
+     * string if there was nothing to recover
+     */
+    public static String recover(File journalFile, MaeDriverI driver) {
+        if (journalFile.length() == 0) {
+            return "";
+        }
+        try {
+            int recovered = replay(journalFile, driver);
+            return String.format("Recovered %d unsaved edits from a previous session.\n", recovered);
+        } catch (Exception | OutOfMemoryError | StackOverflowError e) {
+            logger.error("failed to replay journal: " + journalFile.getAbsolutePath(), e);
+            File failed = new File(journalFile.getPath() + ".failed");
+            try {
+                Files.move(journalFile.toPath(), failed.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException moveFailure) {
+                logger.error("failed to move aside journal: " + journalFile.getAbsolutePath(), moveFailure);
+                return String.format("Failed to recover unsaved edits from a previous session, " +
+                        "and the journal at %s could not be moved aside: %s\n", journalFile.getAbsolutePath(), e);
+            }
+            return String.format("Failed to recover unsaved edits from a previous session, " +
+                    "journal is moved to %s: %s\n", failed.getAbsolutePath(), e);
+        }
+    }
+
+    private static int[] spansOf(String spansString) {
+        return SpanHandler.convertPairsToArray(SpanHandler.convertStringToPairs(spansString));
+    }
+
+    private static void apply(byte op, String[] fields, MaeDriverI driver) throws MaeDBException {
+        String tid = fields[0];
+        switch (op) {
+            case EXTENT_CREATED:
+                driver.createExtentTag(tid, driver.getTagTypeByName(fields[1]), fields[2],
+                        spansOf(fields[3]));
+                return;
+            case LINK_CREATED:
+                driver.createLinkTag(tid, driver.getTagTypeByName(fields[1]));
+                return;
+        }
+        Tag tag = driver.getTagByTid(tid);
+        if (tag == null) {
+            throw new MaeDBException("journal refers to a tag not in DB: " + tid);
+        }
+        switch (op) {
+            case TAG_DELETED:
+                driver.deleteTag(tag);
+                break;
+            case SPANS_UPDATED:
+                driver.updateTagSpans((ExtentTag) tag,
+                        spansOf(fields[1]));
+                break;
+            case TEXT_UPDATED:
+                driver.updateTagText((ExtentTag) tag, fields[1]);
+                break;
+            case ATTRIBUTE_UPDATED:
+                AttributeType attType = driver.getAttributeTypeOfTagTypeByName(tag.getTagtype(), fields[1]);
+                driver.updateAttribute(tag, attType, fields[2]);
+                break;
+            case ARGUMENT_UPDATED:
+                ArgumentType argType = driver.getArgumentTypeOfTagTypeByName(tag.getTagtype(), fields[1]);
+                ExtentTag argument = fields[2] == null ? null : (ExtentTag) driver.getTagByTid(fields[2]);
+                driver.UpdateArgument((LinkTag) tag, argType, argument);
+                break;
+            case TAG_RETYPED:
+                if (!(driver instanceof LocalSqliteDriverImpl)) {
+                    throw new MaeDBException("cannot replay retyping on this driver");
+                }
+                ((LocalSqliteDriverImpl) driver).retypeTags(
+                        Collections.singletonMap(tid, fields[2]), driver.getTagTypeByName(fields[1]));
+                break;
+            default:
+                throw new MaeDBException("unknown journal record type: " + op);
+        }
+    }
+
+}
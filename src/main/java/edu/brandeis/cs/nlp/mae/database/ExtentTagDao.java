@@ -30,7 +30,7 @@ import com.j256.ormlite.dao.DaoManager;
 import com.j256.ormlite.support.ConnectionSource;
 import com.j256.ormlite.table.DatabaseTableConfig;
 import edu.brandeis.cs.nlp.mae.model.Attribute;
-import edu.brandeis.cs.nlp.mae.model.CharIndex;
+import edu.brandeis.cs.nlp.mae.model.CharSpan;
 import edu.brandeis.cs.nlp.mae.model.ExtentTag;
 
 import java.sql.SQLException;
@@ -41,7 +41,7 @@ import java.sql.SQLException;
 public class ExtentTagDao extends BaseDaoImpl<ExtentTag, String> {
 
     Dao<Attribute, Integer> attDao;
-    Dao<CharIndex, Integer> charIndexDao;
+    Dao<CharSpan, Integer> charSpanDao;
 
     public ExtentTagDao(Class dataClass) throws SQLException {
         super(dataClass);
@@ -62,7 +62,7 @@ public class ExtentTagDao extends BaseDaoImpl<ExtentTag, String> {
 
     private void setDaos() throws SQLException {
         attDao = DaoManager.createDao(getConnectionSource(), Attribute.class);
-        charIndexDao = DaoManager.createDao(getConnectionSource(), CharIndex.class);
+        charSpanDao = DaoManager.createDao(getConnectionSource(), CharSpan.class);
 
     }
 
@@ -72,8 +72,8 @@ public class ExtentTagDao extends BaseDaoImpl<ExtentTag, String> {
         for (Attribute att : tag.getAttributes()) {
             attDao.createOrUpdate(att);
         }
-        for (CharIndex ci : tag.getSpans()) {
-            charIndexDao.createOrUpdate(ci);
+        for (CharSpan span : tag.getSpans()) {
+            charSpanDao.createOrUpdate(span);
         }
         return super.update(tag);
     }
@@ -84,8 +84,8 @@ public class ExtentTagDao extends BaseDaoImpl<ExtentTag, String> {
         for (Attribute att : tag.getAttributes()) {
             attDao.delete(att);
         }
-        for (CharIndex ci : tag.getSpans()) {
-            charIndexDao.delete(ci);
+        for (CharSpan span : tag.getSpans()) {
+            charSpanDao.delete(span);
         }
         return super.delete(tag);
     }
@@ -0,0 +1,52 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A driver that keeps the whole annotation DB in memory (sqlite in-memory
+ * mode), so that edits never hit the disk. Nothing is left behind when the
+ * driver is destroyed; crash recovery of unsaved edits is left to the edit
+ * journal.
+ *
+ * Created by krim on 11/4/2016.
+ */
+public class InMemorySqliteDriverImpl extends LocalSqliteDriverImpl {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemorySqliteDriverImpl.class.getName());
+
+    static final String IN_MEMORY_DB = ":memory:";
+
+    public InMemorySqliteDriverImpl() throws MaeDBException {
+        super(IN_MEMORY_DB);
+    }
+
+    @Override
+    protected void deleteDBFile() {
+        logger.info("in-memory driver is completely destroyed");
+    }
+}
@@ -28,6 +28,8 @@ package edu.brandeis.cs.nlp.mae.database;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
 import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.stmt.DeleteBuilder;
 import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.stmt.UpdateBuilder;
 import com.j256.ormlite.support.ConnectionSource;
@@ -45,6 +47,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.Callable;
@@ -57,16 +60,27 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
     private Logger logger;
 
     static final String JDBC_DRIVER = "jdbc:sqlite:";
+    static final int MAX_QUERY_PARAMS = 500;
 
     private String SQLITE_FILENAME;
     private ConnectionSource cs;
     private IdHandler idHandler;
+    private SpanIndex spanIndex;
+    // anchors of argument extent tags by link tag type, rebuilt lazily after argument or span changes
+    private Map<String, BitSet> argumentAnchorsByLinkType;
+    // when installed, type lookups are answered from this instead of DB
+    private TaskSchema taskSchema;
     // this should be distinguishable over diff tasks and diff versions
     private Task workingTask;
     private boolean workChanged;
+    private AnnotationJournal journal;
+
+    private static final String BULK_TIDS = "bulk_tids";
+    private static final String BULK_OLD = "old_tid";
+    private static final String BULK_NEW = "new_tid";
 
     private Dao<Task, Integer> taskDao;
-    private Dao<CharIndex, Integer> charIndexDao;
+    private Dao<CharSpan, Integer> charSpanDao;
     private Dao<TagType, Integer> tagTypeDao;
     private Dao<ExtentTag, String> eTagDao;
     private Dao<LinkTag, String> lTagDao;
@@ -75,7 +89,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
     private Dao<ArgumentType, Integer> argTypeDao;
     private Dao<Argument, Integer> argDao;
 
-    private QueryBuilder<CharIndex, Integer> charIndexQuery;
+    private QueryBuilder<CharSpan, Integer> charSpanQuery;
     private QueryBuilder<TagType, Integer> tagTypeQuery;
     private QueryBuilder<ExtentTag, String> eTagQuery;
     private QueryBuilder<LinkTag, String> lTagQuery;
@@ -93,6 +107,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
         try {
             cs = new JdbcConnectionSource(JDBC_DRIVER + SQLITE_FILENAME);
             idHandler = new IdHandler();
+            spanIndex = new SpanIndex();
             this.setupDatabase(cs);
             // put a placeholder for task metadata in DB
             workingTask = new Task(SQLITE_FILENAME);
@@ -110,7 +125,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
         try {
             taskDao = DaoManager.createDao(source, Task.class);
-            charIndexDao = DaoManager.createDao(source, CharIndex.class);
+            charSpanDao = DaoManager.createDao(source, CharSpan.class);
             tagTypeDao = DaoManager.createDao(source, TagType.class);
             eTagDao = DaoManager.createDao(source, ExtentTag.class);
             lTagDao = DaoManager.createDao(source, LinkTag.class);
@@ -122,7 +137,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
             throw catchSQLException(e);
         }
 
-        charIndexQuery = charIndexDao.queryBuilder();
+        charSpanQuery = charSpanDao.queryBuilder();
         tagTypeQuery = tagTypeDao.queryBuilder();
         eTagQuery = eTagDao.queryBuilder();
         lTagQuery = lTagDao.queryBuilder();
@@ -131,8 +146,8 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
         argTypeQuery = argTypeDao.queryBuilder();
         argQuery = argDao.queryBuilder();
 
-        allDaos = new Dao[]{ taskDao, charIndexDao, tagTypeDao, eTagDao, lTagDao, attTypeDao, attDao, argTypeDao, argDao};
-        allQueryBuilders = new QueryBuilder[]{ charIndexQuery, tagTypeQuery, eTagQuery, lTagQuery, attTypeQuery, attQuery, argTypeQuery, argQuery};
+        allDaos = new Dao[]{ taskDao, charSpanDao, tagTypeDao, eTagDao, lTagDao, attTypeDao, attDao, argTypeDao, argDao};
+        allQueryBuilders = new QueryBuilder[]{ charSpanQuery, tagTypeQuery, eTagQuery, lTagQuery, attTypeQuery, attQuery, argTypeQuery, argQuery};
 
         dropAllTables(source);
         createAllTables(source);
@@ -164,18 +179,99 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
     @Override
     public void readTask(File file) throws MaeIODTDException, MaeDBException, FileNotFoundException {
         DTDLoader dtdl = new DTDLoader(this);
+        taskSchema = null;
         dropAllTables(cs);
         createAllTables(cs);
+        spanIndex.clear();
+        invalidateArgumentAnchors();
         if (!dtdl.read(file)) {
             throw new MaeIODTDException("DTD does not contain any definition, maybe not a DTD file? " + file.getAbsolutePath());
         }
 
     }
 
+    @Override
+    public void installTaskSchema(final TaskSchema schema) throws MaeDBException {
+        dropAllTables(cs);
+        createAllTables(cs);
+        spanIndex.clear();
+        invalidateArgumentAnchors();
+        try {
+            // shared type objects are never written, copies go into DB with the same ids
+            tagTypeDao.callBatchTasks(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (TagType type : schema.getTagTypes()) {
+                        tagTypeDao.create(copyTagType(type));
+                        for (AttributeType attType : schema.getAttributeTypes(type)) {
+                            attTypeDao.create(copyAttributeType(attType));
+                        }
+                        for (ArgumentType argType : schema.getArgumentTypes(type)) {
+                            argTypeDao.create(copyArgumentType(argType));
+                        }
+                    }
+                    workingTask.setTaskFileName(schema.getTaskFileName());
+                    if (schema.getTaskName() != null) {
+                        workingTask.setName(schema.getTaskName());
+                    }
+                    taskDao.create(workingTask);
+                    return null;
+                }
+            });
+        } catch (SQLException e) {
+            throw catchSQLException(e);
+        } catch (Exception e) {
+            throw new MaeDBException("failed to install a task schema: " + e.getMessage(), e);
+        }
+        taskSchema = schema;
+        logger.info(String.format("task schema \"%s\" is installed", schema.getTaskName()));
+    }
+
+    private static TagType copyTagType(TagType type) {
+        TagType copy = new TagType(type.getName(), type.getPrefix(), type.isLink());
+        if (type.isNonConsuming()) {
+            copy.setNonConsuming(true);
+        }
+        return copy;
+    }
+
+    private static AttributeType copyAttributeType(AttributeType attType) {
+        AttributeType copy = new AttributeType(attType.getTagType(), attType.getName());
+        copy.setId(Integer.parseInt(attType.getId()));
+        copy.setValueset(attType.getValueset());
+        copy.setDefaultValue(attType.getDefaultValue());
+        copy.setRequired(attType.isRequired());
+        copy.setIdRef(attType.isIdRef());
+        return copy;
+    }
+
+    private static ArgumentType copyArgumentType(ArgumentType argType) {
+        ArgumentType copy = new ArgumentType(argType.getTagType(), argType.getName());
+        copy.setId(Integer.parseInt(argType.getId()));
+        copy.setRequired(argType.isRequired());
+        copy.setIdRef(argType.isIdRef());
+        return copy;
+    }
+
+    @Override
+    public TaskSchema getTaskSchema() throws MaeDBException {
+        if (taskSchema == null) {
+            taskSchema = TaskSchema.fromDriver(this);
+        }
+        return taskSchema;
+    }
+
     @Override
     public String readAnnotation(File file) throws MaeException {
         AnnotationLoader xmll = new AnnotationLoader(this);
         String xmlParseWarnings =  xmll.loadFile(file);
+        if (journal != null) {
+            try {
+                journal.truncate();
+            } catch (IOException e) {
+                throw new MaeDBException("failed to reset the journal: " + e.getMessage(), e);
+            }
+        }
         setAnnotationChanged(false);
         return xmlParseWarnings;
 
@@ -234,6 +330,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public void setTaskName(String name) throws MaeDBException {
+        taskSchema = null;
         try {
             // need to clear task table before updating id column of it
             TableUtils.clearTable(cs, taskDao.getDataClass());
@@ -251,6 +348,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public void setTaskFileName(String fileName) throws MaeDBException {
+        taskSchema = null;
         try {
             this.workingTask.setTaskFileName(fileName);
             taskDao.update(workingTask);
@@ -269,6 +367,16 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
         return workingTask.isAnnotationLoaded();
     }
 
+    @Override
+    public AnnotationJournal getJournal() {
+        return journal;
+    }
+
+    @Override
+    public void setJournal(AnnotationJournal journal) {
+        this.journal = journal;
+    }
+
     @Override
     public void setAnnotationChanged(boolean b) {
         workChanged = b;
@@ -286,108 +394,133 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public List<ExtentTag> getTagsAt(int location) throws MaeDBException {
-
-        try {
-            List<ExtentTag> results;
-            charIndexQuery.where().eq(TAB_CI_COL_LOCATION, location);
-            results = eTagQuery.join(charIndexQuery).query();
-            resetQueryBuilders();
-            return results;
-        } catch (SQLException e) {
-            throw catchSQLException(e);
-        }
+        return getTagsOverlapping(null, location, location + 1);
     }
 
     @Override
     public List<ExtentTag> getTagsIn(int[] locations) throws MaeDBException {
         Set<ExtentTag> tags = new TreeSet<>();
-        for (int location : locations) {
-            tags.addAll(getTagsAt(location));
+        for (int[] pair : SpanHandler.convertArrayToPairs(locations)) {
+            tags.addAll(getTagsOverlapping(null, pair[0], pair[1]));
         }
         return new ArrayList<>(tags);
     }
 
-    public List<String> getTagIdsAt(int loc) throws MaeDBException {
-        List<String> tids = new ArrayList<>();
-        for (ExtentTag tag : getTagsAt(loc)) {
-            tids.add(tag.getId());
+    /**
+     * Retrieves extent tags that have at least one span overlapping
+     * [begin, end), optionally restricted to a single tag type.
+     * Tag ids are looked up from the in-memory span index, then tags are
+     * read from DB at once.
+     */
+    private List<ExtentTag> getTagsOverlapping(TagType type, int begin, int end) throws MaeDBException {
+        if (begin >= end) {
+            return new ArrayList<>();
+        }
+        if (type == null) {
+            return getExtentTagsByTids(spanIndex.getTidsBetween(begin, end));
+        } else {
+            return getExtentTagsByTids(spanIndex.getTidsOfTypeBetween(type.getName(), begin, end));
         }
-        return tids;
     }
 
-    @Override
-    public List<ExtentTag> getTagsOfTypeAt(TagType type, int location) throws MaeDBException {
+    private List<ExtentTag> getExtentTagsByTids(Collection<String> tids) throws MaeDBException {
+        List<ExtentTag> results = new ArrayList<>();
+        if (tids.size() == 0) {
+            return results;
+        }
+        // sqlite has a limit on the number of host parameters in a statement
+        List<String> tidList = new ArrayList<>(tids);
         try {
-            List<ExtentTag> results;
-            charIndexQuery.where().eq(TAB_CI_COL_LOCATION, location);
-            results = eTagQuery.join(charIndexQuery).where().eq(TAB_TAG_FCOL_TT, type).query();
-            resetQueryBuilders();
+            for (int i = 0; i < tidList.size(); i += MAX_QUERY_PARAMS) {
+                List<String> chunk = tidList.subList(i, Math.min(i + MAX_QUERY_PARAMS, tidList.size()));
+                results.addAll(eTagQuery.where().in(TAB_TAG_COL_TID, chunk).query());
+                resetQueryBuilders();
+            }
             return results;
         } catch (SQLException e) {
             throw catchSQLException(e);
         }
     }
 
+    public List<String> getTagIdsAt(int loc) throws MaeDBException {
+        return new ArrayList<>(spanIndex.getTidsAt(loc));
+    }
+
+    @Override
+    public List<ExtentTag> getTagsOfTypeAt(TagType type, int location) throws MaeDBException {
+        return getTagsOverlapping(type, location, location + 1);
+    }
+
     @Override
     public List<ExtentTag> getTagsOfTypeIn(TagType type, int[] locations) throws MaeDBException {
         Set<ExtentTag> tags = new HashSet<>();
-        for (int location : locations) {
-            tags.addAll(getTagsOfTypeAt(type, location));
+        for (int[] pair : SpanHandler.convertArrayToPairs(locations)) {
+            tags.addAll(getTagsOverlapping(type, pair[0], pair[1]));
         }
         return new ArrayList<>(tags);
     }
 
     @Override
     public List<ExtentTag> getTagsOfTypeBetween(TagType type, int begin, int end) throws MaeDBException {
-        Set<ExtentTag> tags = new HashSet<>();
-        for (int i = begin; i < end; i++) {
-            tags.addAll(getTagsOfTypeAt(type, i));
-        }
-        return new ArrayList<>(tags);
+        return getTagsOverlapping(type, begin, end);
     }
 
     @Override
     public List<Integer> getAllAnchors() throws MaeDBException{
-        List<Integer> anchors = new ArrayList<>();
-        try {
-            for (CharIndex location : charIndexDao.queryForAll()) {
-                anchors.add(location.getLocation());
-            }
-            return anchors;
-        } catch (SQLException e) {
-            throw catchSQLException(e);
-        }
+        return bitSetToList(spanIndex.getAnchors());
 
     }
 
     @Override
     public List<Integer> getAllAnchorsOfTagType(TagType type) throws MaeDBException{
+        return bitSetToList(getAnchorBitsOfTagType(type));
 
-        try {
-            List<CharIndex> locations;
-
-            if (type.isExtent()) {
-                eTagQuery.where().eq(TAB_TAG_FCOL_TT, type);
-                locations = charIndexQuery.join(eTagQuery).query();
-
-            } else {
-                lTagQuery.where().eq(TAB_TAG_FCOL_TT, type);
-                argQuery.join(lTagQuery).selectColumns(TAB_ARG_FCOL_ETAG).distinct();
-                eTagQuery.join(argQuery);
-                locations = charIndexQuery.join(eTagQuery).query();
+    }
 
-            }
+    @Override
+    public BitSet getAnchorBitsOfTagType(TagType type) throws MaeDBException {
+        if (type.isExtent()) {
+            return spanIndex.getAnchorsOfType(type.getName());
+        }
+        if (argumentAnchorsByLinkType == null) {
+            argumentAnchorsByLinkType = collectArgumentAnchors();
+        }
+        BitSet anchors = argumentAnchorsByLinkType.get(type.getName());
+        return anchors == null ? new BitSet() : (BitSet) anchors.clone();
+    }
 
-            ArrayList<Integer> locationList = new ArrayList<>();
-            for (CharIndex ci : locations) {
-                locationList.add(ci.getLocation());
+    private Map<String, BitSet> collectArgumentAnchors() throws MaeDBException {
+        Map<String, BitSet> anchorsByType = new HashMap<>();
+        // raw results to avoid auto-refreshing argument tags, only tids are needed
+        String query = String.format("SELECT DISTINCT l.%s, a.%s FROM %s a JOIN %s l ON a.%s = l.%s",
+                TAB_TAG_FCOL_TT, TAB_ARG_FCOL_ETAG, TAB_ARG, TAB_LTAG, TAB_ARG_FCOL_LTAG, TAB_TAG_COL_TID);
+        try {
+            for (String[] row : eTagDao.queryRaw(query)) {
+                BitSet anchors = anchorsByType.get(row[0]);
+                if (anchors == null) {
+                    anchors = new BitSet();
+                    anchorsByType.put(row[0], anchors);
+                }
+                for (int[] span : spanIndex.getSpansOf(row[1])) {
+                    anchors.set(span[0], span[1]);
+                }
             }
-            resetQueryBuilders();
-            return locationList;
         } catch (SQLException e) {
             throw catchSQLException(e);
         }
+        return anchorsByType;
+    }
 
+    private void invalidateArgumentAnchors() {
+        argumentAnchorsByLinkType = null;
+    }
+
+    private List<Integer> bitSetToList(BitSet anchors) {
+        List<Integer> anchorList = new ArrayList<>(anchors.cardinality());
+        for (int i = anchors.nextSetBit(0); i >= 0; i = anchors.nextSetBit(i + 1)) {
+            anchorList.add(i);
+        }
+        return anchorList;
     }
 
     @Override
@@ -448,16 +581,256 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
         try {
             if (tag instanceof ExtentTag) {
                 eTagDao.delete((ExtentTag) tag);
+                spanIndex.remove(tag.getId());
+                invalidateArgumentAnchors();
             } else {
                 lTagDao.delete((LinkTag) tag);
+                invalidateArgumentAnchors();
             }
             logger.debug("a tag is deleted: " + tag.getId());
+            if (journal != null) {
+                journal.tagDeleted(tag.getId());
+            }
             setAnnotationChanged(true);
         } catch (SQLException e) {
             throw catchSQLException(e);
         }
     }
 
+    /**
+     * Creates (once per connection) and fills a scratch table of tids, which
+     * set-based statements of bulk operations join against. For retyping,
+     * each old tid is paired with its new tid.
+     */
+    private void fillBulkTids(Map<String, String> tids) throws SQLException {
+        eTagDao.executeRaw(String.format(
+                "CREATE TEMP TABLE IF NOT EXISTS %s (%s VARCHAR PRIMARY KEY, %s VARCHAR)", BULK_TIDS, BULK_OLD, BULK_NEW));
+        eTagDao.executeRaw("DELETE FROM " + BULK_TIDS);
+        String insert = String.format("INSERT OR IGNORE INTO %s VALUES (?, ?)", BULK_TIDS);
+        for (Map.Entry<String, String> tid : tids.entrySet()) {
+            eTagDao.updateRaw(insert, tid.getKey(), tid.getValue());
+        }
+    }
+
+    private List<String> queryBulkTids(String tableName) throws SQLException {
+        List<String> tids = new ArrayList<>();
+        for (String[] row : eTagDao.queryRaw(String.format("SELECT %s FROM %s WHERE %s IN (SELECT %s FROM %s)",
+                TAB_TAG_COL_TID, tableName, TAB_TAG_COL_TID, BULK_OLD, BULK_TIDS))) {
+            tids.add(row[0]);
+        }
+        return tids;
+    }
+
+    private void deleteWhereInBulk(String tableName, String... columns) throws SQLException {
+        for (String column : columns) {
+            eTagDao.executeRaw(String.format("DELETE FROM %s WHERE %s IN (SELECT %s FROM %s)",
+                    tableName, column, BULK_OLD, BULK_TIDS));
+        }
+    }
+
+    private void renameWhereInBulk(String tableName, String... columns) throws SQLException {
+        String newOf = "(SELECT %s FROM %s WHERE %s = %s)";
+        for (String column : columns) {
+            eTagDao.executeRaw(String.format("UPDATE %s SET %s = %s WHERE %s IN (SELECT %s FROM %s)",
+                    tableName, column, String.format(newOf, BULK_NEW, BULK_TIDS, BULK_OLD, column),
+                    column, BULK_OLD, BULK_TIDS));
+        }
+    }
+
+    @Override
+    public Set<String> deleteTags(Collection<String> tids) throws MaeDBException {
+        final Map<String, String> bulk = new LinkedHashMap<>();
+        for (String tid : tids) {
+            bulk.put(tid, null);
+        }
+        final List<String> deletedExtents = new ArrayList<>();
+        final List<String> deletedLinks = new ArrayList<>();
+        try {
+            TransactionManager.callInTransaction(cs, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    fillBulkTids(bulk);
+                    // links anchored on deleted extent tags are deleted together
+                    eTagDao.executeRaw(String.format(
+                            "INSERT OR IGNORE INTO %s (%s) SELECT DISTINCT %s FROM %s WHERE %s IN (SELECT %s FROM %s)",
+                            BULK_TIDS, BULK_OLD, TAB_ARG_FCOL_LTAG, TAB_ARG, TAB_ARG_FCOL_ETAG, BULK_OLD, BULK_TIDS));
+                    deletedExtents.addAll(queryBulkTids(TAB_ETAG));
+                    deletedLinks.addAll(queryBulkTids(TAB_LTAG));
+                    deleteWhereInBulk(TAB_ATT, TAB_ATT_FCOL_ETAG, TAB_ATT_FCOL_LTAG);
+                    deleteWhereInBulk(TAB_ARG, TAB_ARG_FCOL_LTAG, TAB_ARG_FCOL_ETAG);
+                    deleteWhereInBulk(TAB_CS, TAB_CS_FCOL_ETAG);
+                    deleteWhereInBulk(TAB_ETAG, TAB_TAG_COL_TID);
+                    deleteWhereInBulk(TAB_LTAG, TAB_TAG_COL_TID);
+                    return null;
+                }
+            });
+        } catch (SQLException e) {
+            throw catchSQLException(e);
+        }
+        resetQueryBuilders();
+        Set<String> deleted = new LinkedHashSet<>(deletedLinks);
+        deleted.addAll(deletedExtents);
+        for (String tid : deletedExtents) {
+            spanIndex.remove(tid);
+        }
+        invalidateArgumentAnchors();
+        if (journal != null) {
+            // links first, so that replaying one by one never leaves dangling arguments
+            for (String tid : deleted) {
+                journal.tagDeleted(tid);
+            }
+        }
+        logger.debug(String.format("%d tags are deleted", deleted.size()));
+        if (deleted.size() > 0) {
+            setAnnotationChanged(true);
+        }
+        return deleted;
+    }
+
+    @Override
+    public Set<String> deleteTagsOfType(TagType type) throws MaeDBException {
+        try {
+            QueryBuilder<?, String> query = type.isExtent() ? eTagDao.queryBuilder() : lTagDao.queryBuilder();
+            List<String> tids = new ArrayList<>();
+            for (String[] row : query.selectColumns(TAB_TAG_COL_TID).where().eq(TAB_TAG_FCOL_TT, type).queryRaw()) {
+                tids.add(row[0]);
+            }
+            return deleteTags(tids);
+        } catch (SQLException e) {
+            throw catchSQLException(e);
+        }
+    }
+
+    @Override
+    public Set<String> deleteTagsBetween(int begin, int end) throws MaeDBException {
+        return deleteTags(spanIndex.getTidsBetween(begin, end));
+    }
+
+    @Override
+    public Map<String, String> retypeTags(Collection<String> tids, TagType newType) throws MaeDBException {
+        Map<String, String> renames = new LinkedHashMap<>();
+        for (String tid : tids) {
+            Tag tag = getTagByTid(tid);
+            if (tag == null) {
+                throw new MaeDBException("no such a tag is in DB: " + tid);
+            }
+            if (tag.getTagtype().isLink() != newType.isLink()) {
+                throw new MaeDBException("cannot retype between extent and link tags: " + tid);
+            }
+            if (!tag.getTagTypeName().equals(newType.getName()) && !renames.containsKey(tid)) {
+                String newTid = idHandler.getNextID(newType);
+                idHandler.addId(newType, newTid);
+                renames.put(tid, newTid);
+            }
+        }
+        applyRetype(renames, newType);
+        return renames;
+    }
+
+    /**
+     * Retypes tags into given new tids, used when replaying a journal.
+     */
+    void retypeTags(Map<String, String> renames, TagType newType) throws MaeDBException {
+        for (String newTid : renames.values()) {
+            idHandler.addId(newType, newTid);
+        }
+        applyRetype(renames, newType);
+    }
+
+    private void applyRetype(final Map<String, String> renames, final TagType newType) throws MaeDBException {
+        if (renames.isEmpty()) {
+            return;
+        }
+        final String tagTable = newType.isExtent() ? TAB_ETAG : TAB_LTAG;
+        final String attFkey = newType.isExtent() ? TAB_ATT_FCOL_ETAG : TAB_ATT_FCOL_LTAG;
+        try {
+            TransactionManager.callInTransaction(cs, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    fillBulkTids(renames);
+                    List<TagType> oldTypes = new ArrayList<>();
+                    for (String[] row : eTagDao.queryRaw(String.format(
+                            "SELECT DISTINCT %s FROM %s WHERE %s IN (SELECT %s FROM %s)",
+                            TAB_TAG_FCOL_TT, tagTable, TAB_TAG_COL_TID, BULK_OLD, BULK_TIDS))) {
+                        oldTypes.add(getTagTypeByName(row[0]));
+                    }
+
+                    eTagDao.updateRaw(String.format("UPDATE %s SET %s = ? WHERE %s IN (SELECT %s FROM %s)",
+                            tagTable, TAB_TAG_FCOL_TT, TAB_TAG_COL_TID, BULK_OLD, BULK_TIDS), newType.getName());
+                    renameWhereInBulk(tagTable, TAB_TAG_COL_TID);
+                    renameWhereInBulk(TAB_ATT, TAB_ATT_COL_TID, attFkey);
+                    if (newType.isExtent()) {
+                        renameWhereInBulk(TAB_CS, TAB_CS_FCOL_ETAG);
+                        renameWhereInBulk(TAB_ARG, TAB_ARG_FCOL_ETAG);
+                    } else {
+                        renameWhereInBulk(TAB_ARG, TAB_ARG_FCOL_LTAG);
+                    }
+                    renameIdRefValuesInBulk();
+
+                    // attributes and arguments move to the same-named ones of the new type, or are dropped
+                    String inRenamed = String.format("%%s = ? AND %s IN (SELECT %s FROM %s)", TAB_ATT_COL_TID, BULK_NEW, BULK_TIDS);
+                    String argInRenamed = String.format("%%s = ? AND %s IN (SELECT %s FROM %s)", TAB_ARG_FCOL_LTAG, BULK_NEW, BULK_TIDS);
+                    for (TagType oldType : oldTypes) {
+                        for (AttributeType oldAtt : getAttributeTypesOfTagType(oldType)) {
+                            AttributeType newAtt = getAttributeTypeOfTagTypeByName(newType, oldAtt.getName());
+                            retypeProperty(TAB_ATT, TAB_ATT_FCOL_AT, inRenamed, oldAtt.getId(), newAtt == null ? null : newAtt.getId());
+                        }
+                        if (oldType.isLink()) {
+                            for (ArgumentType oldArg : getArgumentTypesOfLinkTagType(oldType)) {
+                                ArgumentType newArg = getArgumentTypeOfTagTypeByName(newType, oldArg.getName());
+                                retypeProperty(TAB_ARG, TAB_ARG_FCOL_ART, argInRenamed, oldArg.getId(), newArg == null ? null : newArg.getId());
+                            }
+                        }
+                    }
+                    return null;
+                }
+            });
+        } catch (SQLException e) {
+            throw catchSQLException(e);
+        }
+        resetQueryBuilders();
+        for (Map.Entry<String, String> rename : renames.entrySet()) {
+            if (newType.isExtent()) {
+                List<int[]> spans = spanIndex.getSpansOf(rename.getKey());
+                spanIndex.remove(rename.getKey());
+                spanIndex.addAll(newType.getName(), rename.getValue(), spans);
+            }
+            if (journal != null) {
+                journal.tagRetyped(rename.getKey(), newType, rename.getValue());
+            }
+        }
+        invalidateArgumentAnchors();
+        logger.debug(String.format("%d tags are retyped to %s", renames.size(), newType.getName()));
+        setAnnotationChanged(true);
+    }
+
+    /**
+     * Points values of IDREF attributes (of any tag) at the new tids in the bulk table.
+     */
+    private void renameIdRefValuesInBulk() throws SQLException {
+        List<String> idRefTypeIds = new ArrayList<>();
+        for (AttributeType attType : attTypeDao.queryForEq(TAB_AT_COL_IDREF, true)) {
+            idRefTypeIds.add(attType.getId());
+        }
+        if (idRefTypeIds.isEmpty()) {
+            return;
+        }
+        eTagDao.executeRaw(String.format(
+                "UPDATE %s SET %s = (SELECT %s FROM %s WHERE %s = %s) WHERE %s IN (%s) AND %s IN (SELECT %s FROM %s)",
+                TAB_ATT, TAB_ATT_COL_VALUE, BULK_NEW, BULK_TIDS, BULK_OLD, TAB_ATT_COL_VALUE,
+                TAB_ATT_FCOL_AT, String.join(", ", idRefTypeIds),
+                TAB_ATT_COL_VALUE, BULK_OLD, BULK_TIDS));
+    }
+
+    private void retypeProperty(String tableName, String typeColumn, String condition, String oldTypeId, String newTypeId) throws SQLException {
+        String where = String.format(condition, typeColumn);
+        if (newTypeId == null) {
+            eTagDao.updateRaw(String.format("DELETE FROM %s WHERE %s", tableName, where), oldTypeId);
+        } else {
+            eTagDao.updateRaw(String.format("UPDATE %s SET %s = ? WHERE %s", tableName, typeColumn, where), newTypeId, oldTypeId);
+        }
+    }
+
     @Override
     public Set<LinkTag> getLinksHasArgumentTag(ExtentTag argument) throws MaeDBException{
         try {
@@ -494,9 +867,9 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     public MappedSet<TagType, ExtentTag> getAllExtentTagsByTypes(boolean consumingOnly) throws MaeDBException {
         MappedSet<TagType, ExtentTag> tagsByTypes = new MappedSet<>();
-        for (TagType type : getAllTagTypes()) {
-            if (type.isExtent()) {
-                tagsByTypes.putCollection(type, type.getExtentTagsAsList(consumingOnly));
+        for (ExtentTag tag : getAllExtentTagsOfAllTypes(consumingOnly)) {
+            if (tag.isConsuming() || !consumingOnly) {
+                tagsByTypes.putItem(tag.getTagtype(), tag);
             }
         }
         return tagsByTypes;
@@ -514,11 +887,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public MappedSet<TagType,ExtentTag> getTagsByTypesIn(int... locations) throws MaeDBException{
-        MappedSet<TagType, ExtentTag> tags = new MappedSet<>();
-        for (int location : locations) {
-            tags.merge(getTagsByTypesAt(location));
-        }
-        return tags;
+        return getTagsByTypesIn(SpanHandler.convertArrayToPairs(locations));
     }
 
     public MappedSet<TagType,ExtentTag> getTagsByTypesIn(String spansString) throws MaeDBException {
@@ -536,16 +905,59 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
     @Override
     public MappedSet<TagType,ExtentTag> getTagsByTypesBetween(int begin, int end) throws MaeDBException{
         MappedSet<TagType, ExtentTag> tags = new MappedSet<>();
-        for (int i=begin; i<end; i++) {
-            tags.merge(getTagsByTypesAt(i));
+        for (ExtentTag tag : getTagsOverlapping(null, begin, end)) {
+            tags.putItem(tag.getTagtype(), tag);
         }
         return tags;
     }
 
     public List<? extends Tag> getAllTagsOfType(TagType type) throws MaeDBException {
         try {
-            tagTypeDao.refresh(type);
-            return new ArrayList<>(type.getTags());
+            if (type.isExtent()) {
+                return new ArrayList<>(eTagDao.queryForEq(TAB_TAG_FCOL_TT, type));
+            } else {
+                return new ArrayList<>(lTagDao.queryForEq(TAB_TAG_FCOL_TT, type));
+            }
+        } catch (SQLException e) {
+            throw catchSQLException(e);
+        }
+    }
+
+    @Override
+    public List<ExtentTag> getExtentTagsOfType(TagType type, long offset, long limit) throws MaeDBException {
+        try {
+            List<ExtentTag> page = eTagQuery.orderBy(TAB_TAG_COL_TID, true).offset(offset).limit(limit)
+                    .where().eq(TAB_TAG_FCOL_TT, type).query();
+            resetQueryBuilders();
+            return page;
+        } catch (SQLException e) {
+            throw catchSQLException(e);
+        }
+    }
+
+    @Override
+    public List<LinkTag> getLinkTagsOfType(TagType type, long offset, long limit) throws MaeDBException {
+        try {
+            List<LinkTag> page = lTagQuery.orderBy(TAB_TAG_COL_TID, true).offset(offset).limit(limit)
+                    .where().eq(TAB_TAG_FCOL_TT, type).query();
+            resetQueryBuilders();
+            return page;
+        } catch (SQLException e) {
+            throw catchSQLException(e);
+        }
+    }
+
+    @Override
+    public long countTagsOfType(TagType type) throws MaeDBException {
+        try {
+            long count;
+            if (type.isExtent()) {
+                count = eTagQuery.where().eq(TAB_TAG_FCOL_TT, type).countOf();
+            } else {
+                count = lTagQuery.where().eq(TAB_TAG_FCOL_TT, type).countOf();
+            }
+            resetQueryBuilders();
+            return count;
         } catch (SQLException e) {
             throw catchSQLException(e);
         }
@@ -560,8 +972,8 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
     @Override
     public List<ExtentTag> getAllNCTagsOfType(TagType type) throws MaeDBException, IllegalArgumentException {
         try {
-            charIndexQuery.selectColumns(DBSchema.TAB_CI_FCOL_ETAG);
-            List<ExtentTag> nctags = eTagQuery.where().eq(TAB_TAG_FCOL_TT, type).and().notIn(TAB_TAG_COL_TID, charIndexQuery).query();
+            charSpanQuery.selectColumns(DBSchema.TAB_CS_FCOL_ETAG);
+            List<ExtentTag> nctags = eTagQuery.where().eq(TAB_TAG_FCOL_TT, type).and().notIn(TAB_TAG_COL_TID, charSpanQuery).query();
             resetQueryBuilders();
             return nctags;
         } catch (SQLException e) {
@@ -578,6 +990,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public TagType createTagType(String typeName, String prefix, boolean isLink) throws MaeDBException {
+        taskSchema = null;
         try {
             TagType type  = new TagType(typeName, prefix, isLink);
             tagTypeDao.create(type);
@@ -591,6 +1004,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public AttributeType createAttributeType(TagType tagType, String attTypeName) throws  MaeDBException {
+        taskSchema = null;
         try {
             AttributeType attType = new AttributeType(tagType, attTypeName);
             attTypeDao.create(attType);
@@ -604,6 +1018,9 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public AttributeType getAttributeTypeOfTagTypeByName(TagType type, String name) throws MaeDBException {
+        if (taskSchema != null) {
+            return taskSchema.getAttributeType(type, name);
+        }
         try {
             AttributeType result
                     = attTypeQuery.where().eq(TAB_AT_FCOL_TT, type).
@@ -617,6 +1034,9 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public ArgumentType getArgumentTypeOfTagTypeByName(TagType type, String name) throws MaeDBException {
+        if (taskSchema != null) {
+            return taskSchema.getArgumentType(type, name);
+        }
         try {
             ArgumentType result
                     = argTypeQuery.where().eq(TAB_ART_FCOL_TT, type).
@@ -630,6 +1050,9 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public List<AttributeType> getAttributeTypesOfTagType(TagType type) throws MaeDBException {
+        if (taskSchema != null) {
+            return new ArrayList<>(taskSchema.getAttributeTypes(type));
+        }
         try {
             return new ArrayList<>(attTypeDao.queryForEq(TAB_AT_FCOL_TT, type));
         } catch (SQLException e) {
@@ -657,6 +1080,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public ArgumentType createArgumentType(TagType tagType, String argTypeName) throws MaeDBException {
+        taskSchema = null;
         try {
             ArgumentType argType = new ArgumentType(tagType, argTypeName);
             argTypeDao.create(argType);
@@ -673,8 +1097,9 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
         try {
             ExtentTag tag = new ExtentTag(tid, tagType, getAnnotationFileName());
             tag.setText(text);
-            for (CharIndex ci: tag.setSpans(spans)) {
-                charIndexDao.create(ci);
+            List<CharSpan> charSpans = tag.setSpans(spans);
+            for (CharSpan span : charSpans) {
+                charSpanDao.create(span);
             }
             eTagDao.create(tag);
             eTagDao.update(tag); //only after update(), all properties are saved
@@ -682,7 +1107,13 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
             if (!added) {
                 throw new MaeDBException("tag id is already in DB!: " + tid);
             }
+            for (CharSpan span : charSpans) {
+                spanIndex.add(tagType.getName(), tid, span.getStart(), span.getEnd());
+            }
             logger.debug("a new extent tag is created: " + tid);
+            if (journal != null) {
+                journal.extentTagCreated(tid, tagType, text, spans);
+            }
             setAnnotationChanged(true);
             return tag;
         } catch (SQLException e) {
@@ -705,6 +1136,9 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
                 throw new MaeDBException("tag id is already in DB!: " + tid);
             }
             logger.debug("a new link tag is created: " + tid);
+            if (journal != null) {
+                journal.linkTagCreated(link);
+            }
             setAnnotationChanged(true);
             return link;
         } catch (SQLException e) {
@@ -749,6 +1183,9 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
                 return addAttribute(tag, attType, attValue);
             } else {
                 logger.debug("no new value is provided. leaving the attribute deleted");
+                if (journal != null) {
+                    journal.attributeUpdated(tag, attType, null);
+                }
                 setAnnotationChanged(true);
                 return null;
             }
@@ -766,6 +1203,9 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
             refreshTag(tag);
             resetQueryBuilders();
             logger.debug(String.format("an attribute \"%s\" is attached to \"%s\"", att.toString(), tag.toString()));
+            if (journal != null) {
+                journal.attributeUpdated(tag, attType, attValue);
+            }
             setAnnotationChanged(true);
             return att;
         } catch (SQLException e) {
@@ -810,17 +1250,21 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
     }
 
     @Override
-    public void batchCreateAnchors(final Collection<CharIndex> anchors) throws MaeDBException {
+    public void batchCreateAnchors(final Collection<CharSpan> anchors) throws MaeDBException {
         try {
-            charIndexDao.callBatchTasks(new Callable<Void>() {
+            charSpanDao.callBatchTasks(new Callable<Void>() {
                 public Void call() throws Exception {
-                    for (CharIndex anchor : anchors) {
-                        charIndexDao.create(anchor);
+                    for (CharSpan anchor : anchors) {
+                        charSpanDao.create(anchor);
                     }
                     return null;
                 }
             });
-            logger.debug(String.format("%d anchors are inserted",anchors.size()));
+            for (CharSpan anchor : anchors) {
+                spanIndex.add(anchor.getTag().getTagTypeName(), anchor.getTag().getId(), anchor.getStart(), anchor.getEnd());
+            }
+            invalidateArgumentAnchors();
+            logger.debug(String.format("%d spans are inserted",anchors.size()));
         } catch (SQLException e) {
             throw catchSQLException(e);
         } catch (MaeModelException e) {
@@ -888,6 +1332,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
                     return null;
                 }
             });
+            invalidateArgumentAnchors();
             logger.debug(String.format("%d arguments are inserted", args.size()));
         } catch (SQLException e) {
             throw catchSQLException(e);
@@ -917,6 +1362,11 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
             refreshTag(tag);
             resetQueryBuilders();
             logger.debug(String.format("attributes \"%s\" are attached to \"%s\"", toBeAdded.toString(), tag.toString()));
+            if (journal != null) {
+                for (AttributeType attType : attributes.keySet()) {
+                    journal.attributeUpdated(tag, attType, attributes.get(attType));
+                }
+            }
             setAnnotationChanged(true);
             return toBeAdded;
         } catch (SQLException e) {
@@ -937,7 +1387,11 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
                 Argument arg = new Argument(linker, argType, argument);
                 argDao.create(arg);
                 lTagDao.update(linker);
+                invalidateArgumentAnchors();
                 logger.debug(String.format("an argument \"%s\" is attached to \"%s\"", argument.toString(), linker.toString()));
+                if (journal != null) {
+                    journal.argumentUpdated(linker, argType, argument);
+                }
                 setAnnotationChanged(true);
                 return arg;
 
@@ -958,6 +1412,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
                         and().eq(TAB_ARG_FCOL_ART, argType).queryForFirst();
                 if (oldArg != null) {
                     argDao.delete(oldArg);
+                    invalidateArgumentAnchors();
                     setAnnotationChanged(true);
                 }
                 resetQueryBuilders();
@@ -965,6 +1420,9 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
                     return addArgument(linker, argType, argument);
                 } else {
                     logger.debug("no new argument is provided. leaving the argument deleted");
+                    if (journal != null && oldArg != null) {
+                        journal.argumentUpdated(linker, argType, null);
+                    }
                     return null;
                 }
 
@@ -979,13 +1437,20 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
     @Override
     public boolean updateTagSpans(ExtentTag tag, int[] spans) throws MaeDBException {
         try {
-            List<CharIndex> olds = charIndexQuery.where().eq(TAB_CI_FCOL_ETAG, tag).query();
-            charIndexDao.delete(olds);
-            for (CharIndex anchor : tag.setSpans(spans)) {
-                charIndexDao.create(anchor);
+            DeleteBuilder<CharSpan, Integer> deleteBuilder = charSpanDao.deleteBuilder();
+            deleteBuilder.where().eq(TAB_CS_FCOL_ETAG, tag);
+            deleteBuilder.delete();
+            spanIndex.remove(tag.getId());
+            for (CharSpan span : tag.setSpans(spans)) {
+                charSpanDao.create(span);
+                spanIndex.add(tag.getTagTypeName(), tag.getId(), span.getStart(), span.getEnd());
             }
+            invalidateArgumentAnchors();
             resetQueryBuilders();
             if (eTagDao.update(tag) == 1) {
+                if (journal != null) {
+                    journal.spansUpdated(tag, spans);
+                }
                 setAnnotationChanged(true);
                 resetQueryBuilders();
                 return true;
@@ -1004,6 +1469,9 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
             updateBuilder.where().eq(TAB_TAG_COL_TID, tag.getId());
             updateBuilder.updateColumnValue(TAB_ETAG_COL_TEXT,  text);
             if (updateBuilder.update() == 1) {
+                if (journal != null) {
+                    journal.textUpdated(tag, text);
+                }
                 setAnnotationChanged(true);
                 eTagDao.refresh(tag);
                 return true;
@@ -1018,16 +1486,21 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
     @Override
     public void emptyAnnotations() throws MaeDBException {
         try {
-            for (ExtentTag tag : eTagDao.queryForAll()) {
-                eTagDao.delete(tag);
-            }
-            for (LinkTag tag : lTagDao.queryForAll()) {
-                lTagDao.delete(tag);
-            }
+            TransactionManager.callInTransaction(cs, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (String table : new String[]{TAB_ATT, TAB_ARG, TAB_CS, TAB_ETAG, TAB_LTAG}) {
+                        eTagDao.executeRaw("DELETE FROM " + table);
+                    }
+                    return null;
+                }
+            });
         } catch (SQLException e) {
             throw catchSQLException(e);
         }
         idHandler = new IdHandler();
+        spanIndex.clear();
+        invalidateArgumentAnchors();
 
     }
 
@@ -1036,6 +1509,14 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
      */
     @Override
     public void destroy() throws MaeDBException {
+        if (journal != null) {
+            try {
+                journal.delete();
+            } catch (IOException e) {
+                logger.error("failed to delete the journal: " + e.getMessage());
+            }
+            journal = null;
+        }
         if (cs != null){
             dropAllTables(cs);
             try {
@@ -1043,21 +1524,25 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
             } catch (SQLException e) {
                 throw catchSQLException(e);
             }
-            logger.info("closing JDBC datasource and deleting DB file: " + SQLITE_FILENAME);
-            File dbFile = new File(SQLITE_FILENAME);
-            if (dbFile.delete()) {
-                logger.info("driver is completely destroyed");
-            } else {
-                logger.error("DB file is not deleted: " + SQLITE_FILENAME);
+            deleteDBFile();
+        }
+    }
+
+    protected void deleteDBFile() {
+        logger.info("closing JDBC datasource and deleting DB file: " + SQLITE_FILENAME);
+        File dbFile = new File(SQLITE_FILENAME);
+        if (dbFile.delete()) {
+            logger.info("driver is completely destroyed");
+        } else {
+            logger.error("DB file is not deleted: " + SQLITE_FILENAME);
 
-            }
         }
     }
 
     public List<TagType> getTagTypes(boolean includeExtent, boolean includeLink) throws MaeDBException {
         try {
             ArrayList<TagType> types = new ArrayList<>();
-            for (TagType type : tagTypeDao.queryForAll()) {
+            for (TagType type : taskSchema != null ? taskSchema.getTagTypes() : tagTypeDao.queryForAll()) {
                 if (type.isLink() && includeLink) {
                     types.add(type);
                 } else if (type.isExtent() && includeExtent) {
@@ -1088,7 +1573,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
     public List<TagType> getNonConsumingTagTypes() throws MaeDBException {
         try {
             ArrayList<TagType> types = new ArrayList<>();
-            for (TagType type : tagTypeDao.queryForAll()) {
+            for (TagType type : taskSchema != null ? taskSchema.getTagTypes() : tagTypeDao.queryForAll()) {
                 if (type.isNonConsuming()) {
                     types.add(type);
                 }
@@ -1110,6 +1595,9 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public TagType getTagTypeByName(String typeName) throws MaeDBException {
+        if (taskSchema != null && taskSchema.hasTagType(typeName)) {
+            return taskSchema.getTagType(typeName);
+        }
         try {
             return tagTypeDao.queryForEq(TAB_TT_COL_NAME, typeName).get(0);
         } catch (SQLException e) {
@@ -1119,6 +1607,9 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public List<ArgumentType> getArgumentTypesOfLinkTagType(TagType link) throws MaeDBException {
+        if (taskSchema != null) {
+            return new ArrayList<>(taskSchema.getArgumentTypes(link));
+        }
         try {
             return new ArrayList<>(argTypeDao.queryForEq(TAB_ART_FCOL_TT, link));
         } catch (SQLException e) {
@@ -1128,6 +1619,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public boolean setTagTypePrefix(TagType tagType, String prefix) throws MaeDBException {
+        taskSchema = null;
         try {
             tagType.setPrefix(prefix);
             boolean success = tagTypeDao.update(tagType) == 1;
@@ -1144,6 +1636,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public boolean setTagTypeNonConsuming(TagType tagType, boolean b) throws MaeDBException {
+        taskSchema = null;
         try {
             tagType.setNonConsuming(b);
             boolean success = tagTypeDao.update(tagType) == 1;
@@ -1160,6 +1653,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public void setAttributeTypeValueSet(AttributeType attType, List<String> validValues) throws MaeDBException {
+        taskSchema = null;
         attType.setValuesetFromList(validValues);
         try {
             attTypeDao.update(attType);
@@ -1175,6 +1669,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public void setAttributeTypeDefaultValue(AttributeType attType, String defaultValue) throws MaeDBException {
+        taskSchema = null;
         try {
             attType.setDefaultValue(defaultValue);
             attTypeDao.update(attType);
@@ -1186,6 +1681,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public void setAttributeTypeIDRef(AttributeType attType, boolean b) throws MaeDBException {
+        taskSchema = null;
         try {
             attType.setIdRef(b);
             attTypeDao.update(attType);
@@ -1197,6 +1693,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public void setAttributeTypeRequired(AttributeType attType, boolean b) throws MaeDBException {
+        taskSchema = null;
         try {
             attType.setRequired(true);
             attTypeDao.update(attType);
@@ -1209,6 +1706,7 @@ public class LocalSqliteDriverImpl implements MaeDriverI {
 
     @Override
     public void setArgumentTypeRequired(ArgumentType argType, boolean b) throws MaeDBException {
+        taskSchema = null;
         try {
             argType.setRequired(true);
             argTypeDao.update(argType);
@@ -32,6 +32,7 @@ import edu.brandeis.cs.nlp.mae.util.MappedSet;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +52,10 @@ public interface MaeDriverI {
     // task
     void readTask(File file) throws MaeDBException, MaeIODTDException, FileNotFoundException;
 
+    void installTaskSchema(TaskSchema schema) throws MaeDBException;
+
+    TaskSchema getTaskSchema() throws MaeDBException;
+
     String getTaskName() throws MaeDBException;
 
     void setTaskName(String value) throws MaeDBException;
@@ -79,17 +84,31 @@ public interface MaeDriverI {
 
     void setAnnotationChanged(boolean b);
 
+    AnnotationJournal getJournal();
+
+    /**
+     * Attaches a journal that records subsequent edits, can be null to stop journaling.
+     * Loading tags in batches is not journaled.
+     */
+    void setJournal(AnnotationJournal journal);
+
     boolean isAnnotationChanged();
 
     boolean isPrimaryTextLoaded();
 
-    // character index (anchor)
-    void batchCreateAnchors(Collection<CharIndex> anchors) throws MaeDBException;
+    // character spans (anchors)
+    void batchCreateAnchors(Collection<CharSpan> anchors) throws MaeDBException;
 
     List<Integer> getAllAnchors() throws MaeDBException;
 
     List<Integer> getAllAnchorsOfTagType(TagType type) throws MaeDBException;
 
+    /**
+     * Returns offsets anchored by tags of a type, or by argument tags of
+     * links of a type, as a bitmap owned by the caller.
+     */
+    BitSet getAnchorBitsOfTagType(TagType type) throws MaeDBException;
+
     List<Integer> getAllAnchorsOfTagType(TagType type, List<TagType> exculdes) throws MaeDBException;
 
     List<Integer> getAnchorsByTid(String tid) throws MaeDBException;
@@ -149,6 +168,14 @@ public interface MaeDriverI {
 
     List<ExtentTag> getAllExtentTagsOfType(TagType type) throws MaeDBException;
 
+    /**
+     * Paged retrieval of tags of a type, ordered by tid.
+     *
+     * @param offset number of tags (not pages) to skip
+     * @param limit maximum number of tags to return
+     */
+    List<ExtentTag> getExtentTagsOfType(TagType type, long offset, long limit) throws MaeDBException;
+
     List<ExtentTag> getAllNCTagsOfType(TagType type) throws MaeDBException;
 
     // link tags
@@ -162,8 +189,42 @@ public interface MaeDriverI {
 
     List<LinkTag> getAllLinkTagsOfType(TagType type) throws MaeDBException;
 
+    /**
+     * Paged retrieval of tags of a type, ordered by tid.
+     *
+     * @param offset number of tags (not pages) to skip
+     * @param limit maximum number of tags to return
+     */
+    List<LinkTag> getLinkTagsOfType(TagType type, long offset, long limit) throws MaeDBException;
+
+    long countTagsOfType(TagType type) throws MaeDBException;
+
     void deleteTag(Tag tag) throws MaeDBException;
 
+    // bulk operations below run in a single transaction each, and
+    // also delete link tags that have a deleted extent tag as an argument
+
+    /**
+     * @return tids of all deleted tags, including links anchored on deleted extent tags
+     */
+    Set<String> deleteTags(Collection<String> tids) throws MaeDBException;
+
+    Set<String> deleteTagsOfType(TagType type) throws MaeDBException;
+
+    /**
+     * Deletes extent tags that overlap with the given range, with links on them.
+     */
+    Set<String> deleteTagsBetween(int begin, int end) throws MaeDBException;
+
+    /**
+     * Changes the type of tags, giving new tids with the prefix of the new type.
+     * Attributes and arguments carry over to the same-named ones of the new type,
+     * or are dropped if the new type has none.
+     *
+     * @return new tids keyed by old tids
+     */
+    Map<String, String> retypeTags(Collection<String> tids, TagType newType) throws MaeDBException;
+
     Set<LinkTag> getLinksHasArgumentTag(ExtentTag argument) throws MaeDBException;
 
     // att types
@@ -0,0 +1,160 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.database;
+
+import edu.brandeis.cs.nlp.mae.util.IntervalTree;
+
+import java.util.*;
+
+/**
+ * In-memory index from character offsets to extent tag ids, kept in sync
+ * with the span table by the driver. Intervals are kept in one interval
+ * tree per tag type, so that location queries, with or without a type
+ * filter, never need to hit the database. Anchored offsets of each tag
+ * type are also kept as a bitmap, updated on every add and remove.
+ *
+ * Created by krim on 11/2/2016.
+ */
+class SpanIndex {
+
+    private Map<String, IntervalTree<String>> treesByType;
+    private Map<String, String> typeOfTid;
+    private Map<String, List<int[]>> spansOfTid;
+    private Map<String, BitSet> anchorsByType;
+
+    SpanIndex() {
+        treesByType = new TreeMap<>();
+        typeOfTid = new HashMap<>();
+        spansOfTid = new HashMap<>();
+        anchorsByType = new HashMap<>();
+    }
+
+    void add(String tagTypeName, String tid, int start, int end) {
+        IntervalTree<String> tree = treesByType.get(tagTypeName);
+        if (tree == null) {
+            tree = new IntervalTree<>();
+            treesByType.put(tagTypeName, tree);
+        }
+        if (tree.add(start, end, tid)) {
+            typeOfTid.put(tid, tagTypeName);
+            List<int[]> spans = spansOfTid.get(tid);
+            if (spans == null) {
+                spans = new ArrayList<>();
+                spansOfTid.put(tid, spans);
+            }
+            spans.add(new int[]{start, end});
+            BitSet anchors = anchorsByType.get(tagTypeName);
+            if (anchors == null) {
+                anchors = new BitSet();
+                anchorsByType.put(tagTypeName, anchors);
+            }
+            anchors.set(start, end);
+        }
+    }
+
+    void addAll(String tagTypeName, String tid, List<int[]> spans) {
+        for (int[] span : spans) {
+            add(tagTypeName, tid, span[0], span[1]);
+        }
+    }
+
+    void remove(String tid) {
+        String tagTypeName = typeOfTid.remove(tid);
+        List<int[]> spans = spansOfTid.remove(tid);
+        if (tagTypeName == null || spans == null) {
+            return;
+        }
+        IntervalTree<String> tree = treesByType.get(tagTypeName);
+        BitSet anchors = anchorsByType.get(tagTypeName);
+        for (int[] span : spans) {
+            tree.remove(span[0], span[1], tid);
+            // other tags of the same type may still cover a part of the removed span
+            anchors.clear(span[0], span[1]);
+            for (int[] remaining : tree.getIntervalsBetween(span[0], span[1])) {
+                anchors.set(Math.max(span[0], remaining[0]), Math.min(span[1], remaining[1]));
+            }
+        }
+    }
+
+    void clear() {
+        treesByType.clear();
+        typeOfTid.clear();
+        spansOfTid.clear();
+        anchorsByType.clear();
+    }
+
+    boolean contains(String tid) {
+        return typeOfTid.containsKey(tid);
+    }
+
+    List<int[]> getSpansOf(String tid) {
+        List<int[]> spans = spansOfTid.get(tid);
+        return spans == null ? new ArrayList<int[]>() : new ArrayList<>(spans);
+    }
+
+    Set<String> getTidsAt(int location) {
+        return getTidsBetween(location, location + 1);
+    }
+
+    Set<String> getTidsBetween(int begin, int end) {
+        Set<String> tids = new LinkedHashSet<>();
+        for (IntervalTree<String> tree : treesByType.values()) {
+            tids.addAll(tree.getValuesBetween(begin, end));
+        }
+        return tids;
+    }
+
+    Set<String> getTidsOfTypeAt(String tagTypeName, int location) {
+        return getTidsOfTypeBetween(tagTypeName, location, location + 1);
+    }
+
+    Set<String> getTidsOfTypeBetween(String tagTypeName, int begin, int end) {
+        IntervalTree<String> tree = treesByType.get(tagTypeName);
+        if (tree == null) {
+            return new LinkedHashSet<>();
+        }
+        return new LinkedHashSet<>(tree.getValuesBetween(begin, end));
+    }
+
+    /**
+     * Returns all anchored offsets, sorted and without duplicates.
+     */
+    BitSet getAnchors() {
+        BitSet anchors = new BitSet();
+        for (BitSet anchorsOfType : anchorsByType.values()) {
+            anchors.or(anchorsOfType);
+        }
+        return anchors;
+    }
+
+    /**
+     * Returns a copy of the bitmap of offsets anchored by tags of a type.
+     */
+    BitSet getAnchorsOfType(String tagTypeName) {
+        BitSet anchors = anchorsByType.get(tagTypeName);
+        return anchors == null ? new BitSet() : (BitSet) anchors.clone();
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.database;
+
+import edu.brandeis.cs.nlp.mae.model.ArgumentType;
+import edu.brandeis.cs.nlp.mae.model.AttributeType;
+import edu.brandeis.cs.nlp.mae.model.TagType;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Tag, attribute and argument types of a task, read once from a DTD and
+ * shared by all drivers working on the task. A driver with an installed
+ * schema answers type lookups from here instead of querying its DB, so
+ * opening another document only costs inserting a few rows.
+ *
+ * Collections are unmodifiable, and type objects in a schema are shared
+ * across drivers (and threads), thus should never be modified.
+ *
+ * Created by krim on 11/8/2016.
+ */
+public final class TaskSchema {
+
+    private final String taskName;
+    private final String taskFileName;
+    private final List<TagType> tagTypes;
+    private final List<TagType> extentTagTypes;
+    private final List<TagType> linkTagTypes;
+    private final Map<String, TagType> tagTypesByName;
+    private final Map<String, List<AttributeType>> attTypesByTagType;
+    private final Map<String, List<ArgumentType>> argTypesByTagType;
+
+    private TaskSchema(String taskName, String taskFileName, List<TagType> tagTypes,
+                       Map<String, List<AttributeType>> attTypes, Map<String, List<ArgumentType>> argTypes) {
+        this.taskName = taskName;
+        this.taskFileName = taskFileName;
+        List<TagType> extents = new ArrayList<>();
+        List<TagType> links = new ArrayList<>();
+        Map<String, TagType> byName = new HashMap<>();
+        for (TagType type : tagTypes) {
+            (type.isLink() ? links : extents).add(type);
+            byName.put(type.getName(), type);
+        }
+        this.tagTypes = Collections.unmodifiableList(new ArrayList<>(tagTypes));
+        this.extentTagTypes = Collections.unmodifiableList(extents);
+        this.linkTagTypes = Collections.unmodifiableList(links);
+        this.tagTypesByName = Collections.unmodifiableMap(byName);
+        this.attTypesByTagType = unmodifiableCopy(attTypes);
+        this.argTypesByTagType = unmodifiableCopy(argTypes);
+    }
+
+    private static <T> Map<String, List<T>> unmodifiableCopy(Map<String, List<T>> map) {
+        Map<String, List<T>> copy = new HashMap<>();
+        for (Map.Entry<String, List<T>> entry : map.entrySet()) {
+            copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Takes a snapshot of the task definition currently in a driver.
+     */
+    public static TaskSchema fromDriver(MaeDriverI driver) throws MaeDBException {
+        List<TagType> tagTypes = driver.getAllTagTypes();
+        Map<String, List<AttributeType>> attTypes = new HashMap<>();
+        Map<String, List<ArgumentType>> argTypes = new HashMap<>();
+        for (TagType type : tagTypes) {
+            attTypes.put(type.getName(), driver.getAttributeTypesOfTagType(type));
+            if (type.isLink()) {
+                argTypes.put(type.getName(), driver.getArgumentTypesOfLinkTagType(type));
+            }
+        }
+        return new TaskSchema(driver.getTaskName(), driver.getTaskFileName(), tagTypes, attTypes, argTypes);
+    }
+
+    public String getTaskName() {
+        return taskName;
+    }
+
+    public String getTaskFileName() {
+        return taskFileName;
+    }
+
+    public boolean isReadFrom(File taskFile) {
+        return taskFileName != null && taskFileName.equals(taskFile.getAbsolutePath());
+    }
+
+    public List<TagType> getTagTypes() {
+        return tagTypes;
+    }
+
+    public List<TagType> getExtentTagTypes() {
+        return extentTagTypes;
+    }
+
+    public List<TagType> getLinkTagTypes() {
+        return linkTagTypes;
+    }
+
+    public boolean hasTagType(String name) {
+        return tagTypesByName.containsKey(name);
+    }
+
+    public TagType getTagType(String name) {
+        return tagTypesByName.get(name);
+    }
+
+    public List<AttributeType> getAttributeTypes(TagType type) {
+        List<AttributeType> attTypes = attTypesByTagType.get(type.getName());
+        return attTypes == null ? Collections.<AttributeType>emptyList() : attTypes;
+    }
+
+    public AttributeType getAttributeType(TagType type, String name) {
+        for (AttributeType attType : getAttributeTypes(type)) {
+            if (attType.getName().equals(name)) {
+                return attType;
+            }
+        }
+        return null;
+    }
+
+    public List<ArgumentType> getArgumentTypes(TagType type) {
+        List<ArgumentType> argTypes = argTypesByTagType.get(type.getName());
+        return argTypes == null ? Collections.<ArgumentType>emptyList() : argTypes;
+    }
+
+    public ArgumentType getArgumentType(TagType type, String name) {
+        for (ArgumentType argType : getArgumentTypes(type)) {
+            if (argType.getName().equals(name)) {
+                return argType;
+            }
+        }
+        return null;
+    }
+}
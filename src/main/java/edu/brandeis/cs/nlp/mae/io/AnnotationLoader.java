@@ -42,6 +42,7 @@ import java.util.*;
 public class AnnotationLoader {
 
     private static final Logger logger = LoggerFactory.getLogger(AnnotationLoader.class.getName());
+    public static final int DEFAULT_BATCH_SIZE = 1000;
 
     private MaeDriverI driver;
     private String taskName;
@@ -51,8 +52,12 @@ public class AnnotationLoader {
     private Map<String, ArgumentType> argTypeMap = new HashMap<>();
     private Map<String, ExtentTag> extTagMap = new HashMap<>();
     private Map<String, LinkTag> linkTagMap = new HashMap<>();
-    private List<String> extTidOrder = new LinkedList<>();
-    private List<String> linkTidOrder = new LinkedList<>();
+    private List<String> extTidOrder = new ArrayList<>();
+    private List<String> linkTidOrder = new ArrayList<>();
+    // extent tags already in DB, and arguments waiting for their extent tags to come
+    private Set<String> insertedExtTids = new HashSet<>();
+    private Map<String, List<Argument>> unresolvedArgs = new HashMap<>();
+    private int batchSize = DEFAULT_BATCH_SIZE;
 
     public AnnotationLoader(MaeDriverI driver) throws MaeDBException {
         this.driver = driver;
@@ -64,6 +69,14 @@ public class AnnotationLoader {
 
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
     private void cacheTagTypeMap() throws MaeDBException {
         List<TagType> types = driver.getAllTagTypes();
         for (TagType type : types) {
@@ -152,8 +165,7 @@ public class AnnotationLoader {
             MaeXMLParser loader = new MaeXMLParser();
             String currentTaskName = driver.getTaskName();
             String currentPrimaryText = driver.getPrimaryText();
-            return loader.isTaskNameMatching(file, currentTaskName) &&
-                    loader.isPrimaryTextMatching(file, currentPrimaryText);
+            return loader.isTaskNameAndPrimaryTextMatching(file, currentTaskName, currentPrimaryText);
 
         } catch (MaeDBException e) {
             throw e;
@@ -171,16 +183,17 @@ public class AnnotationLoader {
     public String loadFile(File file) throws MaeException {
         String fileParseWarning = "";
         if (fileName == null) fileName = file.getAbsolutePath();
-        if (isXml(file)) {
-            if (isTaskNameMatching(file, taskName)) {
-                logger.info("reading annotations from file: " + file.getAbsolutePath());
-                fileParseWarning = readAsXml(file);
-            } else {
-                readAsTxt(file);
-                String notXmlWarning = "file does not match working DTD, read as the primary text and a new XML file is generated:\n" + fileName;
-                logger.info(notXmlWarning);
-                fileParseWarning += notXmlWarning;
-           }
+        logger.info("reading annotations from file: " + file.getAbsolutePath());
+        // a single pass: the parser gives up at the root element if the task does not match
+        MaeXMLParser parser = streamXml(file, taskName);
+        if (parser.isXmlDocument() && parser.getParsedTaskName() != null
+                && parser.getParsedTaskName().equals(taskName)) {
+            fileParseWarning = parser.getParseWarnings();
+        } else if (parser.isXmlDocument()) {
+            readAsTxt(file);
+            String notXmlWarning = "file does not match working DTD, read as the primary text and a new XML file is generated:\n" + fileName;
+            logger.info(notXmlWarning);
+            fileParseWarning += notXmlWarning;
         } else {
             readAsTxt(file);
             String notXmlWarning = "file is not an XML, read as the primary text and a new XML file generated:\n" + fileName;
@@ -193,15 +206,20 @@ public class AnnotationLoader {
     }
 
     public String readAsXml(File file) throws MaeDBException, MaeIOException {
+        if (fileName == null) fileName = file.getAbsolutePath();
+        return streamXml(file, null).getParseWarnings();
+    }
+
+    /**
+     * Parses the file and inserts tags into DB as they are parsed, batchSize
+     * tags at a time.
+     */
+    private MaeXMLParser streamXml(File file, String expectedTaskName) throws MaeDBException, MaeIOException {
+        MaeXMLParser parser = new MaeXMLParser(driver);
         try {
-            if (fileName == null) fileName = file.getAbsolutePath();
-            MaeXMLParser parser = new MaeXMLParser(driver);
-            parser.readAnnotationFile(file);
-            driver.setPrimaryText(parser.getParsedPrimaryText());
-            insertTagsToDB(parser.getParsedTags());
-            insertAttsToDB(parser.getParsedAtts());
-            insertArgsToDB(parser.getParsedArgs());
-            return parser.getParseWarnings();
+            if (parser.streamAnnotationFile(file, expectedTaskName, batchSize, new DriverBatchInserter())) {
+                insertUnresolvedArgsToDB();
+            }
         } catch (MaeDBException e) {
             throw e;
         } catch (IOException e) {
@@ -211,7 +229,27 @@ public class AnnotationLoader {
         } catch (SAXException e) {
             catchSAXError(file, e);
         }
-        return "";
+        return parser;
+    }
+
+    private class DriverBatchInserter implements MaeXMLParser.ParsedBatchConsumer {
+
+        @Override
+        public void consumePrimaryText(String primaryText) throws MaeDBException {
+            insertTextToDB(primaryText);
+        }
+
+        @Override
+        public void consumeBatch(List<ParsedTag> tags, List<ParsedAtt> atts, List<ParsedArg> args) throws MaeDBException {
+            insertTagsToDB(tags);
+            insertAttsToDB(atts);
+            insertArgsToDB(args);
+            // let go of the tags of this batch
+            extTagMap.clear();
+            linkTagMap.clear();
+            extTidOrder.clear();
+            linkTidOrder.clear();
+        }
     }
 
     private void readAsTxt(File file) throws MaeException {
@@ -273,28 +311,29 @@ public class AnnotationLoader {
     }
 
     private void insertTagsToDB(List<ParsedTag> parsedTags) throws MaeDBException {
-        List<CharIndex> anchors = new ArrayList<>();
+        List<CharSpan> anchors = new ArrayList<>();
         for (ParsedTag parsedTag : parsedTags) {
             if (!parsedTag.isLink()) {
                 ExtentTag tag = new ExtentTag(parsedTag.getTid(), tagTypeMap.get(parsedTag.getTagTypeName()), fileName);
                 tag.setText(parsedTag.getText());
-                for (CharIndex ci : tag.setSpans(parsedTag.getSpans())) {
-                    anchors.add(ci);
+                for (CharSpan span : tag.setSpans(parsedTag.getSpans())) {
+                    anchors.add(span);
                 }
                 String tid = parsedTag.getTid();
                 extTagMap.put(tid, tag);
                 extTidOrder.add(tid);
+                insertedExtTids.add(tid);
             } else {
                 LinkTag tag = new LinkTag(parsedTag.getTid(), tagTypeMap.get(parsedTag.getTagTypeName()), fileName);
                 linkTagMap.put(parsedTag.getTid(), tag);
                 linkTidOrder.add(parsedTag.getTid());
             }
         }
-        List<ExtentTag> extTagsOrderOfAppearance = new LinkedList<>();
+        List<ExtentTag> extTagsOrderOfAppearance = new ArrayList<>(extTidOrder.size());
         for (String tid : extTidOrder) {
             extTagsOrderOfAppearance.add(extTagMap.get(tid));
         }
-        List<LinkTag> linkTagsOrderOfAppearance = new LinkedList<>();
+        List<LinkTag> linkTagsOrderOfAppearance = new ArrayList<>(linkTidOrder.size());
         for (String tid : linkTidOrder) {
             linkTagsOrderOfAppearance.add(linkTagMap.get(tid));
         }
@@ -328,11 +367,52 @@ public class AnnotationLoader {
         for (ParsedArg arg : parsedArgs) {
             LinkTag tag = linkTagMap.get(arg.getTid());
             String argTypeKey = String.format("%s-%s", arg.getTagTypeName(), arg.getArgTypeName());
-            arguments.add(new Argument(tag, argTypeMap.get(argTypeKey), extTagMap.get(arg.getArgTid())));
+            Argument argument = new Argument(tag, argTypeMap.get(argTypeKey), null);
+            String argTid = arg.getArgTid();
+            if (insertedExtTids.contains(argTid)) {
+                argument.setArgument(getInsertedExtentTag(argTid));
+                arguments.add(argument);
+            } else {
+                // the extent tag might be in a later batch
+                if (!unresolvedArgs.containsKey(argTid)) {
+                    unresolvedArgs.put(argTid, new ArrayList<Argument>());
+                }
+                unresolvedArgs.get(argTid).add(argument);
+            }
+        }
+        for (String tid : extTidOrder) {
+            List<Argument> waiting = unresolvedArgs.remove(tid);
+            if (waiting != null) {
+                for (Argument argument : waiting) {
+                    argument.setArgument(extTagMap.get(tid));
+                }
+                arguments.addAll(waiting);
+            }
         }
         driver.batchCreateArguments(arguments);
     }
 
+    private ExtentTag getInsertedExtentTag(String tid) {
+        ExtentTag tag = extTagMap.get(tid);
+        if (tag == null) {
+            // inserted in an earlier batch, only the tid is needed as a foreign key
+            tag = new ExtentTag(tid, null, fileName);
+        }
+        return tag;
+    }
+
+    private void insertUnresolvedArgsToDB() throws MaeDBException {
+        // args pointing to extent tags that never appeared
+        List<Argument> arguments = new ArrayList<>();
+        for (List<Argument> waiting : unresolvedArgs.values()) {
+            arguments.addAll(waiting);
+        }
+        unresolvedArgs.clear();
+        if (arguments.size() > 0) {
+            driver.batchCreateArguments(arguments);
+        }
+    }
+
     private static void catchFileNotFoundError(File file, FileNotFoundException e) throws MaeIOException {
         String message = "file not found: " + file.getAbsolutePath();
         logger.error(message);
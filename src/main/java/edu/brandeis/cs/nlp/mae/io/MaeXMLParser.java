@@ -28,6 +28,7 @@ import edu.brandeis.cs.nlp.mae.MaeException;
 import edu.brandeis.cs.nlp.mae.MaeStrings;
 import edu.brandeis.cs.nlp.mae.database.MaeDBException;
 import edu.brandeis.cs.nlp.mae.database.MaeDriverI;
+import edu.brandeis.cs.nlp.mae.database.TaskSchema;
 import edu.brandeis.cs.nlp.mae.model.ArgumentType;
 import edu.brandeis.cs.nlp.mae.model.AttributeType;
 import edu.brandeis.cs.nlp.mae.model.TagType;
@@ -37,13 +38,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
 import org.xml.sax.helpers.DefaultHandler;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
-import java.io.File;
-import java.io.IOException;
+import javax.xml.stream.*;
+import java.io.*;
 import java.util.*;
 
 /**
@@ -52,36 +55,154 @@ import java.util.*;
 public class MaeXMLParser {
     private static final Logger logger = LoggerFactory.getLogger(MaeXMLParser.class.getName());
 
-    private MaeDriverI driver;
+    private TaskSchema schema;
     private MaeSAXHandler xmlHandler;
     private String parseWarnings = "";
+    private boolean xmlDocument = true;
 
     public MaeXMLParser() {
 
     }
 
     public MaeXMLParser(MaeDriverI driver) throws MaeDBException {
-        this.driver = driver;
+        this(driver.getTaskSchema());
+    }
+
+    /**
+     * Parsers made from a schema never touch DB, so can run concurrently.
+     */
+    public MaeXMLParser(TaskSchema schema) {
+        this.schema = schema;
     }
 
     public void readAnnotationFile(File file) throws SAXException, IOException, MaeDBException {
-        try {
-            List<String> extTagTypeNames = new ArrayList<>();
-            for (TagType type : driver.getExtentTagTypes()) {
-                extTagTypeNames.add(type.getName());
+        readAnnotationFile(file, null);
+    }
+
+    /**
+     * Reads tags, attributes and arguments from an annotation file in a
+     * single pass. When a task name is given, the root element is checked
+     * as soon as it is read, and parsing is aborted if it does not match.
+     * If the file turns out not to be an XML at all (fails before the root),
+     * it is also aborted, and isXmlDocument() will return false.
+     *
+     * @return true if the file is fully read, false if aborted
+     */
+    public boolean readAnnotationFile(File file, String taskName) throws SAXException, IOException, MaeDBException {
+        this.xmlHandler = createAnnotationHandler(taskName);
+        return parseUntilAborted(file);
+    }
+
+    /**
+     * Pull-parses an annotation file with StAX, and hands parsed tags over to
+     * the consumer every batchSize tags instead of keeping all of them. Only
+     * one batch of parsed objects is on memory at a time. Validation and
+     * aborting on a task name mismatch work the same as readAnnotationFile().
+     *
+     * @return true if the file is fully read, false if aborted
+     */
+    public boolean streamAnnotationFile(File file, String taskName, int batchSize, ParsedBatchConsumer consumer)
+            throws SAXException, IOException, MaeDBException {
+        this.xmlHandler = createAnnotationHandler(taskName);
+        xmlDocument = true;
+        XMLStreamReader reader = null;
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+            reader = XMLInputFactory.newInstance().createXMLStreamReader(stream);
+            boolean textConsumed = false;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        xmlHandler.startElement(reader.getNamespaceURI(), reader.getLocalName(),
+                                getQName(reader), getAttributes(reader));
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        xmlHandler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        xmlHandler.endElement(reader.getNamespaceURI(), reader.getLocalName(), getQName(reader));
+                        if (!textConsumed && xmlHandler.getPrimaryText() != null) {
+                            consumer.consumePrimaryText(xmlHandler.getPrimaryText());
+                            textConsumed = true;
+                        }
+                        if (xmlHandler.getParsedTags().size() >= batchSize) {
+                            flushParsedBatch(consumer);
+                        }
+                        break;
+                }
             }
-            List<String> linkTagTypeNames = new ArrayList<>();
-            for (TagType type : driver.getLinkTagTypes()) {
-                linkTagTypeNames.add(type.getName());
+            flushParsedBatch(consumer);
+            return true;
+        } catch (ParseAbortedException e) {
+            logger.debug(String.format("stopped reading %s: %s", file.getName(), e.getMessage()));
+            return false;
+        } catch (XMLStreamException e) {
+            if (!xmlHandler.hasRootElem) {
+                xmlDocument = false;
+                return false;
+            }
+            Location location = e.getLocation();
+            throw new SAXParseException(e.getMessage(), null, file.getPath(),
+                    location == null ? -1 : location.getLineNumber(),
+                    location == null ? -1 : location.getColumnNumber(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                }
             }
+        }
+    }
 
-            this.xmlHandler = new MaeSAXHandler(extTagTypeNames, linkTagTypeNames);
-            parse(file);
-        } catch (MaeDBException e) {
-            throw e;
+    private void flushParsedBatch(ParsedBatchConsumer consumer) throws MaeDBException {
+        List<ParsedTag> tags = xmlHandler.getParsedTags();
+        if (tags.size() > 0 || xmlHandler.getParsedAtts().size() > 0 || xmlHandler.getParsedArgs().size() > 0) {
+            consumer.consumeBatch(tags, xmlHandler.getParsedAtts(), xmlHandler.getParsedArgs());
+            xmlHandler.initParsedLists();
         }
     }
 
+    private static String getQName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        if (prefix == null || prefix.length() == 0) {
+            return reader.getLocalName();
+        }
+        return prefix + ":" + reader.getLocalName();
+    }
+
+    private static Attributes getAttributes(XMLStreamReader reader) {
+        AttributesImpl attributes = new AttributesImpl();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = reader.getAttributePrefix(i);
+            String localName = reader.getAttributeLocalName(i);
+            String qName = prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+            attributes.addAttribute(reader.getAttributeNamespace(i), localName, qName,
+                    reader.getAttributeType(i), reader.getAttributeValue(i));
+        }
+        return attributes;
+    }
+
+    private MaeSAXHandler createAnnotationHandler(String taskName) {
+        List<String> extTagTypeNames = new ArrayList<>();
+        for (TagType type : schema.getExtentTagTypes()) {
+            extTagTypeNames.add(type.getName());
+        }
+        List<String> linkTagTypeNames = new ArrayList<>();
+        for (TagType type : schema.getLinkTagTypes()) {
+            linkTagTypeNames.add(type.getName());
+        }
+
+        MaeSAXHandler handler = new MaeSAXHandler(extTagTypeNames, linkTagTypeNames);
+        handler.setExpectedTaskName(taskName);
+        return handler;
+    }
+
+    public boolean isXmlDocument() {
+        return xmlDocument;
+    }
+
     public boolean hasParWarnings() {
         return parseWarnings.length() > 0;
     }
@@ -93,9 +214,30 @@ public class MaeXMLParser {
         return parseWarnings;
     }
 
+    /**
+     * Reads only the task name (root) and the primary text, stops right after
+     * the TEXT element.
+     */
     public void readAnnotationPreamble(File file) throws IOException, SAXException {
-        this.xmlHandler = new MaeSAXSimpleHandler();
-        parse(file);
+        this.xmlHandler = new MaeSAXSimpleHandler(false);
+        parseUntilAborted(file);
+    }
+
+    private boolean parseUntilAborted(File file) throws IOException, SAXException {
+        xmlDocument = true;
+        try {
+            parse(file);
+            return true;
+        } catch (ParseAbortedException e) {
+            logger.debug(String.format("stopped reading %s: %s", file.getName(), e.getMessage()));
+            return false;
+        } catch (SAXParseException e) {
+            if (!xmlHandler.hasRootElem) {
+                xmlDocument = false;
+                return false;
+            }
+            throw e;
+        }
     }
 
     private void parse(File file) throws IOException, SAXException  {
@@ -109,15 +251,20 @@ public class MaeXMLParser {
     }
 
     public boolean isTaskNameMatching(File file, String taskName) throws IOException, SAXException  {
-        this.xmlHandler = new MaeSAXSimpleHandler();
-        parse(file);
-        return xmlHandler.getTaskName().equals(taskName);
+        this.xmlHandler = new MaeSAXSimpleHandler(true);
+        parseUntilAborted(file);
+        return taskName != null && taskName.equals(xmlHandler.getTaskName());
     }
 
     public boolean isPrimaryTextMatching(File file, String primaryText) throws SAXException, IOException {
-        this.xmlHandler = new MaeSAXSimpleHandler();
-        parse(file);
-        return xmlHandler.getPrimaryText().equals(primaryText);
+        readAnnotationPreamble(file);
+        return primaryText != null && primaryText.equals(xmlHandler.getPrimaryText());
+    }
+
+    public boolean isTaskNameAndPrimaryTextMatching(File file, String taskName, String primaryText) throws SAXException, IOException {
+        readAnnotationPreamble(file);
+        return taskName != null && taskName.equals(xmlHandler.getTaskName())
+                && primaryText != null && primaryText.equals(xmlHandler.getPrimaryText());
     }
 
     public List<ParsedTag> getParsedTags() {
@@ -136,6 +283,10 @@ public class MaeXMLParser {
         return xmlHandler.getPrimaryText();
     }
 
+    public String getParsedTaskName() {
+        return xmlHandler.getTaskName();
+    }
+
     public MaeSAXHandler getParsed() {
         return this.xmlHandler;
     }
@@ -146,8 +297,10 @@ public class MaeXMLParser {
         private List<ParsedArg> args;
         private boolean hasTextElem = false;
         private boolean hasRootElem = false;
+        private StringBuilder textBuffer;
         private String primaryText;
         private String taskName;
+        private String expectedTaskName;
         private List<String> extTagTypeNames;
         private List<String> linkTagTypeNames;
         private MappedSet<String, String> attTypeMap;
@@ -159,7 +312,7 @@ public class MaeXMLParser {
             initParsedLists();
         }
 
-        public MaeSAXHandler(List<String> extTagTypeNames, List<String> linkTagTypeNames) throws MaeDBException {
+        public MaeSAXHandler(List<String> extTagTypeNames, List<String> linkTagTypeNames) {
             this.extTagTypeNames = extTagTypeNames;
             this.linkTagTypeNames = linkTagTypeNames;
             cacheAttMaps();
@@ -168,16 +321,16 @@ public class MaeXMLParser {
 
         }
 
-        private void cacheArgMap() throws MaeDBException {
+        private void cacheArgMap() {
             this.argTypeMap = new MappedSet<>();
             for (String linkTypeName : linkTagTypeNames) {
-                for (ArgumentType argType : driver.getArgumentTypesOfLinkTagType(driver.getTagTypeByName(linkTypeName))) {
+                for (ArgumentType argType : schema.getArgumentTypes(schema.getTagType(linkTypeName))) {
                     argTypeMap.putItem(linkTypeName, argType.getName());
                 }
             }
         }
 
-        private void cacheAttMaps() throws MaeDBException {
+        private void cacheAttMaps() {
             this.attTypeMap = new MappedSet<>();
             this.attValueMap = new HashMap<>();
             this.attDefValueMap = new HashMap<>();
@@ -185,9 +338,9 @@ public class MaeXMLParser {
             cacheAttMapsFromTagTypes(linkTagTypeNames);
         }
 
-        private void cacheAttMapsFromTagTypes(List<String> tagTypeNames) throws MaeDBException {
+        private void cacheAttMapsFromTagTypes(List<String> tagTypeNames) {
             for (String tagTypeName : tagTypeNames) {
-                for (AttributeType attType : driver.getAttributeTypesOfTagType(driver.getTagTypeByName(tagTypeName))) {
+                for (AttributeType attType : schema.getAttributeTypes(schema.getTagType(tagTypeName))) {
                     String attTypeName = attType.getName();
                     attTypeMap.putItem(tagTypeName, attTypeName);
                     if (attType.isFiniteValueset()) {
@@ -211,21 +364,41 @@ public class MaeXMLParser {
 
             if (!hasRootElem) {
                 logger.debug("found root node: " + qName);
-                if (qName.equalsIgnoreCase("text") || attributes.getLength() > 0) {
-                    throw new SAXException("Root node should be the task name");
-                } else {
-                    setTaskName(qName);
-                    hasRootElem = true;
-                }
+                readRootElement(qName, attributes);
             } else if (qName.equalsIgnoreCase("text")) {
                 logger.debug("found text node: " + qName);
-                hasTextElem = true;
+                startTextElement();
             } else if (qName.equalsIgnoreCase("tags")) {
             } else {
                 parseTag(qName, attributes);
             }
         }
 
+        void readRootElement(String qName, Attributes attributes) throws SAXException {
+            if (qName.equalsIgnoreCase("text") || attributes.getLength() > 0) {
+                throw new SAXException("Root node should be the task name");
+            }
+            setTaskName(qName);
+            hasRootElem = true;
+            if (expectedTaskName != null && !expectedTaskName.equals(qName)) {
+                throw new ParseAbortedException("task name does not match: " + qName);
+            }
+        }
+
+        void startTextElement() {
+            hasTextElem = true;
+            textBuffer = new StringBuilder();
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (hasTextElem && qName.equalsIgnoreCase("text")) {
+                setPrimaryText(textBuffer.toString());
+                textBuffer = null;
+                hasTextElem = false;
+            }
+        }
+
         private void parseTag(String tagTypeName, Attributes attributes) throws SAXException {
             ParsedTag tag = new ParsedTag();
             if (extTagTypeNames.contains(tagTypeName)) {
@@ -381,12 +554,16 @@ public class MaeXMLParser {
 
         @Override
         public void characters(char[] ch, int start, int length) {
+            // parser can split contents of an element into multiple chunks
             if (hasTextElem) {
-                setPrimaryText(new String(ch, start, length));
-                hasTextElem = false;
+                textBuffer.append(ch, start, length);
             }
         }
 
+        public void setExpectedTaskName(String expectedTaskName) {
+            this.expectedTaskName = expectedTaskName;
+        }
+
         public List<ParsedAtt> getParsedAtts() {
             return atts;
         }
@@ -419,7 +596,10 @@ public class MaeXMLParser {
 
     public class MaeSAXSimpleHandler extends MaeSAXHandler {
 
-        public MaeSAXSimpleHandler() {
+        private boolean rootOnly;
+
+        public MaeSAXSimpleHandler(boolean rootOnly) {
+            this.rootOnly = rootOnly;
         }
 
         @Override
@@ -427,27 +607,45 @@ public class MaeXMLParser {
                                  Attributes attributes) throws SAXException {
 
             if (!super.hasRootElem) {
-                if (qName.equalsIgnoreCase("text") || attributes.getLength() > 0) {
-                    throw new SAXException("Root node should be the task name");
-                } else {
-                    setTaskName(qName);
-                    super.hasRootElem = true;
+                readRootElement(qName, attributes);
+                if (rootOnly) {
+                    throw new ParseAbortedException("root is read");
                 }
-            }
-
-            if (qName.equalsIgnoreCase("text")) {
-                super.hasTextElem = true;
+            } else if (qName.equalsIgnoreCase("text")) {
+                startTextElement();
             }
         }
 
         @Override
-        public void characters(char[] ch, int start, int length) {
-            if (super.hasTextElem) {
-                setPrimaryText(new String(ch, start, length));
-                super.hasTextElem = false;
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            super.endElement(uri, localName, qName);
+            if (qName.equalsIgnoreCase("text")) {
+                // nothing to read after the primary text
+                throw new ParseAbortedException("preamble is read");
             }
         }
 
     }
 
+    /**
+     * Receives parsed objects from streamAnnotationFile(), batch by batch.
+     */
+    public interface ParsedBatchConsumer {
+
+        void consumePrimaryText(String primaryText) throws MaeDBException;
+
+        void consumeBatch(List<ParsedTag> tags, List<ParsedAtt> atts, List<ParsedArg> args) throws MaeDBException;
+    }
+
+    /**
+     * Thrown from handlers to stop parsing once everything needed is read.
+     */
+    private static class ParseAbortedException extends SAXException {
+        private static final long serialVersionUID = 1L;
+
+        ParseAbortedException(String message) {
+            super(message);
+        }
+    }
+
 }
@@ -35,7 +35,7 @@ import com.j256.ormlite.table.DatabaseTable;
 @DatabaseTable(tableName = DBSchema.TAB_ART)
 public class ArgumentType extends TagProperty implements ModelI {
 
-    @ForeignCollectionField(eager = true)
+    @ForeignCollectionField(eager = false)
     private ForeignCollection<Argument> arguments;
 
     public ArgumentType() {
@@ -31,24 +31,29 @@ import com.j256.ormlite.table.DatabaseTable;
  * Created by krim on 11/19/15.
  */
 
-@DatabaseTable(tableName = DBSchema.TAB_CI)
-public class CharIndex implements ModelI {
+@DatabaseTable(tableName = DBSchema.TAB_CS)
+public class CharSpan implements ModelI {
 
-    @DatabaseField(generatedId = true, columnName = DBSchema.TAB_CI_COL_ID)
+    @DatabaseField(generatedId = true, columnName = DBSchema.TAB_CS_COL_ID)
     private int id;
 
-    @DatabaseField(index = true, canBeNull = false, columnName = DBSchema.TAB_CI_COL_LOCATION)
-    private int location;
+    @DatabaseField(index = true, canBeNull = false, columnName = DBSchema.TAB_CS_COL_START)
+    private int start;
 
-    @DatabaseField(foreign = true, canBeNull = false, foreignAutoRefresh = true, columnName = DBSchema.TAB_CI_FCOL_ETAG)
+    // exclusive
+    @DatabaseField(index = true, canBeNull = false, columnName = DBSchema.TAB_CS_COL_END)
+    private int end;
+
+    @DatabaseField(foreign = true, canBeNull = false, foreignAutoRefresh = true, index = true, columnName = DBSchema.TAB_CS_FCOL_ETAG)
     private ExtentTag tag;
 
-    public CharIndex() {
+    public CharSpan() {
 
     }
 
-    public CharIndex(int location, ExtentTag tag) {
-        this.setLocation(location);
+    public CharSpan(int start, int end, ExtentTag tag) {
+        this.setStart(start);
+        this.setEnd(end);
         this.setTag(tag);
     }
 
@@ -56,12 +61,32 @@ public class CharIndex implements ModelI {
         return Integer.toString(id);
     }
 
-    public int getLocation() {
-        return location;
+    public int getStart() {
+        return start;
+    }
+
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public void setEnd(int end) {
+        this.end = end;
+    }
+
+    public int getLength() {
+        return end - start;
+    }
+
+    public boolean contains(int location) {
+        return start <= location && location < end;
     }
 
-    public void setLocation(int location) {
-        this.location = location;
+    public int[] toPair() {
+        return new int[]{start, end};
     }
 
     public ExtentTag getTag() {
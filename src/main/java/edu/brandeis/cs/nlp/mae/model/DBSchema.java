@@ -35,10 +35,11 @@ public class DBSchema {
     public final static String TAB_TASK_COL_TASKFILE = "task_file";
     public final static String TAB_TASK_COL_ANNFILE = "ann_file";
 
-    public final static String TAB_CI = "char_index";
-    public final static String TAB_CI_COL_ID = "id";
-    public final static String TAB_CI_COL_LOCATION = "location";
-    public final static String TAB_CI_FCOL_ETAG = "tag_fid";
+    public final static String TAB_CS = "char_span";
+    public final static String TAB_CS_COL_ID = "id";
+    public final static String TAB_CS_COL_START = "span_start";
+    public final static String TAB_CS_COL_END = "span_end";
+    public final static String TAB_CS_FCOL_ETAG = "tag_fid";
 
     public final static String TAB_TT = "tag_type";
     public final static String TAB_TT_COL_NAME = "name";
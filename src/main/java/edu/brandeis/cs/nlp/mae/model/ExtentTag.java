@@ -31,12 +31,9 @@ import com.j256.ormlite.table.DatabaseTable;
 import edu.brandeis.cs.nlp.mae.MaeStrings;
 import edu.brandeis.cs.nlp.mae.database.ExtentTagDao;
 import edu.brandeis.cs.nlp.mae.util.SpanHandler;
-import org.apache.commons.lang3.StringUtils;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
+import java.io.IOException;
+import java.util.*;
 
 /**
  * Created by krim on 11/19/15.
@@ -49,7 +46,7 @@ public class ExtentTag extends Tag implements ModelI {
     private String text;
 
     @ForeignCollectionField(eager = true)
-    private ForeignCollection<CharIndex> spans;
+    private ForeignCollection<CharSpan> spans;
 
     public ExtentTag() {
 
@@ -62,23 +59,22 @@ public class ExtentTag extends Tag implements ModelI {
 
     }
 
-    public List<CharIndex> setSpans(int...locations) {
-        List<CharIndex> indices = new LinkedList<>();
-        if (locations != null) {
-            for (int location : locations) {
-                indices.add(new CharIndex(location, this));
-
+    public List<CharSpan> setSpans(int...locations) {
+        List<CharSpan> spans = new LinkedList<>();
+        if (locations != null && locations.length > 0) {
+            for (int[] pair : SpanHandler.convertArrayToPairs(locations)) {
+                spans.add(new CharSpan(pair[0], pair[1], this));
             }
         }
         // cannot call DAO inside ETag class, so we return list to save these afterwards
-        return indices;
+        return spans;
     }
 
-    public List<CharIndex> setSpans(ArrayList<int[]> spans) {
+    public List<CharSpan> setSpans(ArrayList<int[]> spans) {
         return this.setSpans(SpanHandler.convertPairsToArray(spans));
     }
 
-    public List<CharIndex> setSpans(String spansString) {
+    public List<CharSpan> setSpans(String spansString) {
         return this.setSpans(SpanHandler.convertStringToPairs(spansString));
     }
 
@@ -91,30 +87,53 @@ public class ExtentTag extends Tag implements ModelI {
         return getSpans() != null && getSpans().size() > 0;
     }
 
-    public ForeignCollection<CharIndex> getSpans() {
+    public ForeignCollection<CharSpan> getSpans() {
         return spans;
     }
 
+    public ArrayList<int[]> getSpansAsPairs() {
+        ArrayList<int[]> pairs = new ArrayList<>();
+        if (getSpans() != null) {
+            for (CharSpan span : getSpans()) {
+                pairs.add(span.toPair());
+            }
+        }
+        Collections.sort(pairs, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a1, int[] a2) {
+                return a1[0] - a2[0];
+            }
+        });
+        return pairs;
+    }
+
     public List<Integer> getSpansAsList() {
         List<Integer> spans = new ArrayList<>();
-        for (CharIndex anchor : getSpans()) {
-            spans.add(anchor.getLocation());
+        for (int location : getSpansAsArray()) {
+            spans.add(location);
         }
         return spans;
 
     }
 
     public int[] getSpansAsArray() {
-        int[] spans = new int[this.getSpans().size()];
+        ArrayList<int[]> pairs = getSpansAsPairs();
+        int size = 0;
+        for (int[] pair : pairs) {
+            size += pair[1] - pair[0];
+        }
+        int[] spans = new int[size];
         int i = 0;
-        for (CharIndex ci : getSpans()) {
-            spans[i++] = ci.getLocation();
+        for (int[] pair : pairs) {
+            for (int location = pair[0]; location < pair[1]; location++) {
+                spans[i++] = location;
+            }
         }
         return spans;
     }
 
     public String getSpansAsString() {
-        return SpanHandler.convertPairsToString(SpanHandler.convertArrayToPairs(this.getSpansAsArray()));
+        return SpanHandler.convertPairsToString(getSpansAsPairs());
     }
 
     public String getText() {
@@ -135,13 +154,15 @@ public class ExtentTag extends Tag implements ModelI {
     }
 
     @Override
-    public String toXmlString() {
-        String tagTypeName = getTagTypeName();
-        String idAtt = String.format("id=\"%s\"", tid);
-        String spansAtt = String.format("spans=\"%s\"", getSpansAsString());
-        String textAtt = String.format("text=\"%s\"", escapeXmlString(text));
-        String attributes = getAttributesXmlString();
-        return String.format("<%s />", StringUtils.join(new String[]{tagTypeName, idAtt, spansAtt, textAtt, attributes}, " "));
+    public void writeXml(Appendable out) throws IOException {
+        out.append('<').append(getTagTypeName());
+        out.append(" id=\"").append(tid);
+        out.append("\" spans=\"").append(getSpansAsString());
+        out.append("\" text=\"");
+        writeEscaped(out, text);
+        out.append("\" ");
+        writeAttributesXml(out);
+        out.append(" />");
     }
 
     @Override
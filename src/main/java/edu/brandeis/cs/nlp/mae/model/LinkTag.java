@@ -29,8 +29,8 @@ import com.j256.ormlite.field.ForeignCollectionField;
 import com.j256.ormlite.table.DatabaseTable;
 import edu.brandeis.cs.nlp.mae.MaeStrings;
 import edu.brandeis.cs.nlp.mae.database.LinkTagDao;
-import org.apache.commons.lang3.StringUtils;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -134,12 +134,11 @@ public class LinkTag extends Tag implements ModelI {
     }
 
     @Override
-    public String toXmlString() {
-        // TODO 151229 maybe re-implement this (and one in ExtentTag) using DOM in the future for robustness?
-        String tagTypeName = getTagTypeName();
-        String idAtt = String.format("id=\"%s\"", tid);
-        String attributes = getAttributesXmlString();
-        return String.format("<%s />", StringUtils.join(new String[]{tagTypeName, idAtt, attributes}, " "));
+    public void writeXml(Appendable out) throws IOException {
+        out.append('<').append(getTagTypeName());
+        out.append(" id=\"").append(tid).append("\" ");
+        writeAttributesXml(out);
+        out.append(" />");
     }
 
     @Override
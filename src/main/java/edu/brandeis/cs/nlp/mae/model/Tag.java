@@ -27,8 +27,8 @@ package edu.brandeis.cs.nlp.mae.model;
 import com.j256.ormlite.dao.ForeignCollection;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.field.ForeignCollectionField;
-import org.apache.commons.lang3.StringUtils;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -152,31 +152,74 @@ public abstract class Tag implements ModelI, Comparable<Tag> {
 
     public abstract String toJsonString();
 
-    public abstract String toXmlString();
+    public String toXmlString() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeXml(sb);
+        } catch (IOException e) {
+            // StringBuilder never throws
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
 
-    String escapeXmlString(String text) {
+    /**
+     * Writes this tag as a single XML element, without building intermediate strings.
+     */
+    public abstract void writeXml(Appendable out) throws IOException;
+
+    /**
+     * Escapes text for an attribute value. Newlines become spaces, and
+     * an already escaped "&amp;amp;" is not escaped again.
+     */
+    static void writeEscaped(Appendable out, String text) throws IOException {
         if (text == null) {
-            return "";
-        } else {
-            text = text.replace("\n", " ");
-            text = text.replace("&", "&amp;");
-            text = text.replace("&amp;amp;", "&amp;");
-            text = text.replace("<", "&lt;");
-            text = text.replace(">", "&gt;");
-            text = text.replace("\"", "&quot;");
-            text = text.replace("'", "&apos;");
-            return text;
+            return;
+        }
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\n':
+                    out.append(' ');
+                    break;
+                case '&':
+                    out.append("&amp;");
+                    if (text.startsWith("amp;", i + 1)) {
+                        i += 4;
+                    }
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                case '\'':
+                    out.append("&apos;");
+                    break;
+                default:
+                    out.append(c);
+            }
         }
-
     }
 
-    protected String getAttributesXmlString() {
-        Map<String, String> attMap = getAttributesWithNames();
-        List<String> attList = new ArrayList<>();
-        for (String attName : attMap.keySet()) {
-
-            attList.add(String.format("%s=\"%s\"", attName, escapeXmlString(attMap.get(attName))));
+    /**
+     * Writes attributes as space-separated name="value" pairs, in insertion order.
+     */
+    protected void writeAttributesXml(Appendable out) throws IOException {
+        boolean first = true;
+        for (Map.Entry<String, String> att : getAttributesWithNames().entrySet()) {
+            if (!first) {
+                out.append(' ');
+            }
+            first = false;
+            out.append(att.getKey()).append("=\"");
+            writeEscaped(out, att.getValue());
+            out.append('"');
         }
-        return StringUtils.join(attList, " ");
     }
 }
@@ -31,7 +31,7 @@ import com.j256.ormlite.field.DatabaseField;
  */
 public class TagProperty implements ModelI {
 
-    @DatabaseField(generatedId = true, columnName = DBSchema.TAB_AT_COL_ID)
+    @DatabaseField(generatedId = true, allowGeneratedIdInsert = true, columnName = DBSchema.TAB_AT_COL_ID)
     private int id;
 
     @DatabaseField(foreign = true, canBeNull = false, columnName = DBSchema.TAB_AT_FCOL_TT)
@@ -58,10 +58,12 @@ public class TagType implements ModelI, Comparable<TagType> {
     @ForeignCollectionField(eager = true)
     private ForeignCollection<ArgumentType> argumentTypes;
 
-    @ForeignCollectionField(eager = true)
+    // tag instances are not loaded along with the type, iterate on demand
+    // or use paged queries in the driver
+    @ForeignCollectionField(eager = false)
     private ForeignCollection<ExtentTag> extentTags;
 
-    @ForeignCollectionField(eager = true)
+    @ForeignCollectionField(eager = false)
     private ForeignCollection<LinkTag> linkTags;
 
     public TagType() {
@@ -157,6 +159,10 @@ public class TagType implements ModelI, Comparable<TagType> {
         }
     }
 
+    /**
+     * Note that tag collections are lazy, this will iterate over all tags of
+     * the type. Use MaeDriverI#countTagsOfType() for a single count query.
+     */
     public int getNumInstances() {
         return getTags().size();
     }
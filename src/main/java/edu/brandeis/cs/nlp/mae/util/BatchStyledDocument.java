@@ -0,0 +1,92 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.util;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.*;
+import java.util.List;
+
+/**
+ * A DefaultStyledDocument that can restyle many character runs under a
+ * single write lock, notifying listeners with one change event that
+ * covers all of them.
+ * Created by krim on 11/19/2016.
+ */
+public class BatchStyledDocument extends DefaultStyledDocument {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Sets character attributes over each of ranges, where ranges are
+     * sorted, non-overlapping [start, end) pairs and attributes are
+     * matched by index.
+     */
+    public void setCharacterAttributes(List<int[]> ranges, List<AttributeSet> attributes, boolean replace) {
+        if (ranges.isEmpty()) {
+            return;
+        }
+        if (ranges.size() == 1) {
+            int[] range = ranges.get(0);
+            setCharacterAttributes(range[0], range[1] - range[0], attributes.get(0), replace);
+            return;
+        }
+        int batchStart = ranges.get(0)[0];
+        int batchEnd = ranges.get(ranges.size() - 1)[1];
+        try {
+            writeLock();
+            DefaultDocumentEvent changes = new DefaultDocumentEvent(
+                    batchStart, batchEnd - batchStart, DocumentEvent.EventType.CHANGE);
+            for (int i = 0; i < ranges.size(); i++) {
+                int start = ranges.get(i)[0];
+                int end = Math.min(ranges.get(i)[1], getLength());
+                if (start >= end) {
+                    continue;
+                }
+                buffer.change(start, end - start, changes);
+                AttributeSet copied = attributes.get(i).copyAttributes();
+                int lastEnd;
+                for (int pos = start; pos < end; pos = lastEnd) {
+                    Element run = getCharacterElement(pos);
+                    lastEnd = run.getEndOffset();
+                    if (pos == lastEnd) {
+                        break;
+                    }
+                    MutableAttributeSet attr = (MutableAttributeSet) run.getAttributes();
+                    changes.addEdit(new AttributeUndoableEdit(run, copied, replace));
+                    if (replace) {
+                        attr.removeAttributes(attr);
+                    }
+                    attr.addAttributes(copied);
+                }
+            }
+            changes.end();
+            fireChangedUpdate(changes);
+            fireUndoableEditUpdate(new UndoableEditEvent(this, changes));
+        } finally {
+            writeUnlock();
+        }
+    }
+}
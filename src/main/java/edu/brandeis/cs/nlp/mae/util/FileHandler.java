@@ -30,8 +30,8 @@ import java.io.File;
 import java.io.FileFilter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -78,7 +78,7 @@ public class FileHandler {
         if (directory.isDirectory()) {
             File[] files = directory.listFiles(XML_FILTER);
             if (files.length > 0) {
-                return new LinkedList<>(Arrays.asList(files));
+                return new ArrayList<>(Arrays.asList(files));
             } else {
                 throw new MaeIOException("No XML found in the directory: " + directory.getName());
             }
@@ -98,32 +98,24 @@ public class FontHandler {
     }
 
     public static StyledDocument stringToSimpleStyledDocument(String plainText, String defaultFontName, int fontSize, Color fontColor) {
-        StyledDocument document = new DefaultStyledDocument();
-        try {
+        StyledDocumentBuilder builder = new StyledDocumentBuilder(fontSize, fontColor);
+        if (plainText != null) {
+            int runStart = 0;
             int offset = 0;
-            if (plainText != null) {
-                while (offset < plainText.length()) {
-
-                    int length = 1;
-                    SimpleAttributeSet attributeSet = new SimpleAttributeSet();
-                    String fontFam = defaultFontName;
-                    Character c = plainText.charAt(offset);
-                    if (Character.isHighSurrogate(c)) {
-                        fontFam = getFontToDraw(plainText.codePointAt(offset)).getFontName();
-                        length = plainText.length() > offset + 2 ? 2 : 1;
-
-                    }
-                    document.insertString(offset, plainText.substring(offset, offset + length), StyleContext.getDefaultStyleContext().getStyle(StyleContext.DEFAULT_STYLE));
-                    StyleConstants.setFontFamily(attributeSet, fontFam);
-                    StyleConstants.setFontSize(attributeSet, fontSize);
-                    StyleConstants.setForeground(attributeSet, fontColor);
-                    document.setCharacterAttributes(offset, length, attributeSet, false);
-
+            while (offset < plainText.length()) {
+                if (Character.isHighSurrogate(plainText.charAt(offset))) {
+                    builder.append(plainText, runStart, offset, defaultFontName);
+                    int length = plainText.length() >= offset + 2 ? 2 : 1;
+                    String fontFam = getFontToDraw(plainText.codePointAt(offset)).getFontName();
+                    builder.append(plainText, offset, offset + length, fontFam);
                     offset += length;
+                    runStart = offset;
+                } else {
+                    offset++;
                 }
             }
-        } catch (BadLocationException ignored) {
+            builder.append(plainText, runStart, plainText.length(), defaultFontName);
         }
-        return document;
+        return builder.build();
     }
 }
@@ -0,0 +1,131 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.util;
+
+import javax.swing.text.*;
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Collects foreground styles (color, underline, italic) for character
+ * locations and coalesces consecutive locations with the same style into
+ * maximal runs, so that they can be applied with one attribute update
+ * per run.
+ * Created by krim on 11/19/2016.
+ */
+public class ForegroundStyleRuns {
+
+    private final List<int[]> ranges;
+    private final List<AttributeSet> styles;
+    private final Map<List<Object>, AttributeSet> styleCache;
+
+    public ForegroundStyleRuns() {
+        ranges = new ArrayList<>();
+        styles = new ArrayList<>();
+        styleCache = new HashMap<>();
+    }
+
+    public void add(int location, Color color, boolean underline, boolean italic) {
+        addRange(location, location + 1, color, underline, italic);
+    }
+
+    public void addRange(int start, int end, Color color, boolean underline, boolean italic) {
+        if (start >= end) {
+            return;
+        }
+        AttributeSet style = getStyle(color, underline, italic);
+        int last = ranges.size() - 1;
+        if (last >= 0 && styles.get(last) == style && ranges.get(last)[1] == start) {
+            ranges.get(last)[1] = end;
+        } else {
+            ranges.add(new int[]{start, end});
+            styles.add(style);
+        }
+    }
+
+    public int size() {
+        return ranges.size();
+    }
+
+    public List<int[]> getRanges() {
+        return Collections.unmodifiableList(ranges);
+    }
+
+    public void applyTo(StyledDocument document) {
+        if (ranges.isEmpty()) {
+            return;
+        }
+        extendOverSurrogates(document);
+        if (document instanceof BatchStyledDocument && isSorted()) {
+            ((BatchStyledDocument) document).setCharacterAttributes(ranges, styles, false);
+        } else {
+            for (int i = 0; i < ranges.size(); i++) {
+                int[] range = ranges.get(i);
+                document.setCharacterAttributes(range[0], range[1] - range[0], styles.get(i), false);
+            }
+        }
+    }
+
+    private AttributeSet getStyle(Color color, boolean underline, boolean italic) {
+        List<Object> key = Arrays.asList(color, underline, italic);
+        AttributeSet style = styleCache.get(key);
+        if (style == null) {
+            SimpleAttributeSet attributeSet = new SimpleAttributeSet();
+            StyleConstants.setForeground(attributeSet, color);
+            StyleConstants.setUnderline(attributeSet, underline);
+            StyleConstants.setItalic(attributeSet, italic);
+            styleCache.put(key, attributeSet);
+            style = attributeSet;
+        }
+        return style;
+    }
+
+    private void extendOverSurrogates(StyledDocument document) {
+        // a run ending on a high surrogate takes the low half of the pair with it
+        Segment segment = new Segment();
+        int length = document.getLength();
+        for (int[] range : ranges) {
+            try {
+                if (range[1] < length) {
+                    document.getText(range[1] - 1, 1, segment);
+                    if (Character.isHighSurrogate(segment.first())) {
+                        range[1]++;
+                    }
+                }
+            } catch (BadLocationException ignored) {
+            }
+        }
+    }
+
+    private boolean isSorted() {
+        for (int i = 1; i < ranges.size(); i++) {
+            if (ranges.get(i)[0] < ranges.get(i - 1)[1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An augmented AVL tree of half-open integer intervals [start, end).
+ * Each node keeps the largest end offset in its subtree, so that point
+ * and range (stabbing) queries run in O(log n + k), where k is the
+ * number of reported intervals. The same interval can be stored with
+ * different values; values are used to break ties among equal intervals.
+ *
+ * Created by krim on 11/2/2016.
+ */
+public class IntervalTree<V extends Comparable<V>> {
+
+    private Node<V> root;
+    private int size;
+
+    public IntervalTree() {
+        root = null;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * Adds an interval [start, end) with a value.
+     *
+     * @return false if exactly the same interval-value pair is already in the tree
+     */
+    public boolean add(int start, int end, V value) {
+        if (start >= end) {
+            throw new IllegalArgumentException(String.format("ill-formed interval: [%d, %d)", start, end));
+        }
+        int before = size;
+        root = insert(root, start, end, value);
+        return size > before;
+    }
+
+    /**
+     * Removes an interval [start, end) with a value.
+     *
+     * @return false if no such interval-value pair is in the tree
+     */
+    public boolean remove(int start, int end, V value) {
+        int before = size;
+        root = delete(root, start, end, value);
+        return size < before;
+    }
+
+    /**
+     * Returns values of all intervals containing the given point.
+     */
+    public List<V> getValuesAt(int point) {
+        return getValuesBetween(point, point + 1);
+    }
+
+    /**
+     * Returns values of all intervals overlapping with [begin, end).
+     * Values are ordered by the start offsets of their intervals.
+     */
+    public List<V> getValuesBetween(int begin, int end) {
+        List<V> values = new ArrayList<>();
+        if (begin < end) {
+            collectOverlapping(root, begin, end, values);
+        }
+        return values;
+    }
+
+    /**
+     * Returns all intervals overlapping with [begin, end), as int pairs
+     * ordered by their start offsets.
+     */
+    public List<int[]> getIntervalsBetween(int begin, int end) {
+        List<int[]> intervals = new ArrayList<>();
+        if (begin < end) {
+            collectOverlappingIntervals(root, begin, end, intervals);
+        }
+        return intervals;
+    }
+
+    private void collectOverlapping(Node<V> node, int begin, int end, List<V> values) {
+        if (node == null || node.maxEnd <= begin) {
+            return;
+        }
+        collectOverlapping(node.left, begin, end, values);
+        if (node.start < end) {
+            if (node.end > begin) {
+                values.add(node.value);
+            }
+            collectOverlapping(node.right, begin, end, values);
+        }
+    }
+
+    private void collectOverlappingIntervals(Node<V> node, int begin, int end, List<int[]> intervals) {
+        if (node == null || node.maxEnd <= begin) {
+            return;
+        }
+        collectOverlappingIntervals(node.left, begin, end, intervals);
+        if (node.start < end) {
+            if (node.end > begin) {
+                intervals.add(new int[]{node.start, node.end});
+            }
+            collectOverlappingIntervals(node.right, begin, end, intervals);
+        }
+    }
+
+    private int compare(int start, int end, V value, Node<V> node) {
+        if (start != node.start) {
+            return Integer.compare(start, node.start);
+        } else if (end != node.end) {
+            return Integer.compare(end, node.end);
+        }
+        return value.compareTo(node.value);
+    }
+
+    private Node<V> insert(Node<V> node, int start, int end, V value) {
+        if (node == null) {
+            size++;
+            return new Node<>(start, end, value);
+        }
+        int c = compare(start, end, value, node);
+        if (c < 0) {
+            node.left = insert(node.left, start, end, value);
+        } else if (c > 0) {
+            node.right = insert(node.right, start, end, value);
+        } else {
+            return node;
+        }
+        return rebalance(node);
+    }
+
+    private Node<V> delete(Node<V> node, int start, int end, V value) {
+        if (node == null) {
+            return null;
+        }
+        int c = compare(start, end, value, node);
+        if (c < 0) {
+            node.left = delete(node.left, start, end, value);
+        } else if (c > 0) {
+            node.right = delete(node.right, start, end, value);
+        } else {
+            size--;
+            if (node.left == null) {
+                return node.right;
+            } else if (node.right == null) {
+                return node.left;
+            }
+            Node<V> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            node.right = deleteMin(node.right);
+            successor.right = node.right;
+            successor.left = node.left;
+            node = successor;
+        }
+        return rebalance(node);
+    }
+
+    private Node<V> deleteMin(Node<V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = deleteMin(node.left);
+        return rebalance(node);
+    }
+
+    private Node<V> rebalance(Node<V> node) {
+        node.update();
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        } else if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private Node<V> rotateRight(Node<V> node) {
+        Node<V> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        node.update();
+        pivot.update();
+        return pivot;
+    }
+
+    private Node<V> rotateLeft(Node<V> node) {
+        Node<V> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        node.update();
+        pivot.update();
+        return pivot;
+    }
+
+    private static <T> int height(Node<T> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static class Node<V> {
+        final int start;
+        final int end;
+        final V value;
+        int maxEnd;
+        int height;
+        Node<V> left;
+        Node<V> right;
+
+        Node(int start, int end, V value) {
+            this.start = start;
+            this.end = end;
+            this.value = value;
+            this.maxEnd = end;
+            this.height = 1;
+        }
+
+        void update() {
+            height = 1 + Math.max(height(left), height(right));
+            maxEnd = end;
+            if (left != null && left.maxEnd > maxEnd) {
+                maxEnd = left.maxEnd;
+            }
+            if (right != null && right.maxEnd > maxEnd) {
+                maxEnd = right.maxEnd;
+            }
+        }
+    }
+
+}
@@ -80,26 +80,49 @@ public class SpanHandler {
      * @return a formatted string of spans of a tag
      */
     public static String convertPairsToString(List<int[]> spans) {
-        return convertArrayToString(convertPairsToArray(spans));
-//        if (spans.size() == 0) {
-//            return MaeStrings.NCSPAN_PLACEHOLDER;
-//        }
-//
-//        String spanString = "";
-//        Iterator<int[]> iter = spans.iterator();
-//        while (iter.hasNext()) {
-//            int[] span = iter.next();
-//            spanString += span[0] + MaeStrings.SPANRANGE + span[1];
-//            if (iter.hasNext()) {
-//                spanString += MaeStrings.SPANDELIMITER;
-//            }
-//        }
-//        logger.debug("=== Conversion finished ===");
-//        return spanString;
+        List<int[]> sorted = new ArrayList<>(spans);
+        Collections.sort(sorted, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a1, int[] a2) {
+                return Integer.compare(a1[0], a2[0]);
+            }
+        });
+        // overlapping or adjacent spans are merged, empty ones (including NC placeholders) are skipped
+        StringBuilder spansString = new StringBuilder();
+        boolean open = false;
+        int start = 0;
+        int end = 0;
+        for (int[] span : sorted) {
+            if (span[0] >= span[1]) {
+                continue;
+            }
+            if (open && span[0] <= end) {
+                end = Math.max(end, span[1]);
+                continue;
+            }
+            if (open) {
+                appendSpan(spansString, start, end);
+            }
+            open = true;
+            start = span[0];
+            end = span[1];
+        }
+        if (!open) {
+            return MaeStrings.NCSPAN_PLACEHOLDER;
+        }
+        appendSpan(spansString, start, end);
+        return spansString.toString();
+    }
+
+    private static void appendSpan(StringBuilder spansString, int start, int end) {
+        if (spansString.length() > 0) {
+            spansString.append(MaeStrings.SPANDELIMITER);
+        }
+        spansString.append(start).append(MaeStrings.SPANRANGE).append(end);
     }
 
     /**
-     * Takes an array of CharIndex, make it into an array of int pairs,
+     * Takes an array of character offsets, make it into an array of int pairs,
      * which can be used in convertPairsToString()
      *
      * @param spans - an sorted set of integer pairs
@@ -124,16 +147,13 @@ public class SpanHandler {
         int start = spans[0];
         int prev = spans[0];
         for (int i = 1; i < spans.length; i++) {
-            if (i == spans.length - 1) {
-                spansList.add(new int[]{start, spans[i] + 1});
-            } else if (prev + 1 < spans[i]) {
+            if (prev + 1 < spans[i]) {
                 spansList.add(new int[]{start, prev + 1});
-                prev = spans[i];
                 start = spans[i];
-            } else {
-                prev = spans[i];
             }
+            prev = spans[i];
         }
+        spansList.add(new int[]{start, prev + 1});
         logger.debug("=== Conversion finished ===");
         return spansList;
 
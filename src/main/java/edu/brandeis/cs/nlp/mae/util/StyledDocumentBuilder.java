@@ -0,0 +1,109 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.util;
+
+import javax.swing.text.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a StyledDocument from runs of text that share a font family,
+ * so that the document is filled by one insertion and one attribute
+ * update per run instead of per character.
+ * Created by krim on 11/18/2016.
+ */
+public class StyledDocumentBuilder {
+
+    private final int fontSize;
+    private final Color fontColor;
+    private final StringBuilder text;
+    private final List<Integer> runStarts;
+    private final List<String> runFonts;
+
+    public StyledDocumentBuilder(int fontSize, Color fontColor) {
+        this.fontSize = fontSize;
+        this.fontColor = fontColor;
+        this.text = new StringBuilder();
+        this.runStarts = new ArrayList<>();
+        this.runFonts = new ArrayList<>();
+    }
+
+    public StyledDocumentBuilder append(CharSequence chars, String fontFamily) {
+        return append(chars, 0, chars.length(), fontFamily);
+    }
+
+    public StyledDocumentBuilder append(CharSequence chars, int start, int end, String fontFamily) {
+        if (start >= end) {
+            return this;
+        }
+        int last = runFonts.size() - 1;
+        if (last < 0 || !runFonts.get(last).equals(fontFamily)) {
+            runStarts.add(text.length());
+            runFonts.add(fontFamily);
+        }
+        text.append(chars, start, end);
+        return this;
+    }
+
+    public int getRunCount() {
+        return runFonts.size();
+    }
+
+    public StyledDocument build() {
+        StyledDocument document = new BatchStyledDocument();
+        if (text.length() == 0) {
+            return document;
+        }
+        Map<String, AttributeSet> attributeCache = new HashMap<>();
+        try {
+            // the first run's style goes in with the text, the rest are applied over it
+            document.insertString(0, text.toString(), getAttributes(attributeCache, runFonts.get(0)));
+            for (int i = 1; i < runFonts.size(); i++) {
+                int start = runStarts.get(i);
+                int end = i + 1 < runStarts.size() ? runStarts.get(i + 1) : text.length();
+                document.setCharacterAttributes(start, end - start,
+                        getAttributes(attributeCache, runFonts.get(i)), false);
+            }
+        } catch (BadLocationException ignored) {
+        }
+        return document;
+    }
+
+    private AttributeSet getAttributes(Map<String, AttributeSet> cache, String fontFamily) {
+        AttributeSet attributes = cache.get(fontFamily);
+        if (attributes == null) {
+            SimpleAttributeSet attributeSet = new SimpleAttributeSet();
+            StyleConstants.setFontFamily(attributeSet, fontFamily);
+            StyleConstants.setFontSize(attributeSet, fontSize);
+            StyleConstants.setForeground(attributeSet, fontColor);
+            cache.put(fontFamily, attributeSet);
+            attributes = attributeSet;
+        }
+        return attributes;
+    }
+}
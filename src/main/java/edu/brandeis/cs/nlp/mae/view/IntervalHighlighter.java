@@ -0,0 +1,160 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.view;
+
+import javax.swing.plaf.TextUI;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.JTextComponent;
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * A highlighter that, on top of regular highlights (e.g. text selection
+ * by the caret), keeps bulk highlights as merged [start, end) intervals
+ * per painter in sorted maps, and paints only intervals intersecting the
+ * clip area. Painters are layered in the order they are first used.
+ * Created by krim on 11/20/2016.
+ */
+public class IntervalHighlighter extends DefaultHighlighter {
+
+    private JTextComponent component;
+    private final Map<HighlightPainter, TreeMap<Integer, Integer>> layers;
+
+    public IntervalHighlighter() {
+        super();
+        layers = new LinkedHashMap<>();
+    }
+
+    @Override
+    public void install(JTextComponent c) {
+        super.install(c);
+        component = c;
+        layers.clear();
+    }
+
+    @Override
+    public void deinstall(JTextComponent c) {
+        super.deinstall(c);
+        component = null;
+        layers.clear();
+    }
+
+    /**
+     * Adds highlights over sorted, non-overlapping [start, end) ranges,
+     * merging them with intervals already highlighted by the same painter.
+     */
+    public void addHighlights(List<int[]> ranges, HighlightPainter painter) {
+        if (ranges.isEmpty()) {
+            return;
+        }
+        TreeMap<Integer, Integer> intervals = layers.get(painter);
+        if (intervals == null) {
+            intervals = new TreeMap<>();
+            layers.put(painter, intervals);
+        }
+        for (int[] range : ranges) {
+            addInterval(intervals, range[0], range[1]);
+        }
+        damage(ranges.get(0)[0], ranges.get(ranges.size() - 1)[1]);
+    }
+
+    private static void addInterval(TreeMap<Integer, Integer> intervals, int start, int end) {
+        Map.Entry<Integer, Integer> prev = intervals.floorEntry(start);
+        if (prev != null && prev.getValue() >= start) {
+            start = prev.getKey();
+            end = Math.max(end, prev.getValue());
+        }
+        Map.Entry<Integer, Integer> next = intervals.ceilingEntry(start);
+        while (next != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            intervals.remove(next.getKey());
+            next = intervals.ceilingEntry(start);
+        }
+        intervals.put(start, end);
+    }
+
+    public int getIntervalCount() {
+        int count = 0;
+        for (TreeMap<Integer, Integer> intervals : layers.values()) {
+            count += intervals.size();
+        }
+        return count;
+    }
+
+    @Override
+    public void removeAllHighlights() {
+        super.removeAllHighlights();
+        if (!layers.isEmpty()) {
+            layers.clear();
+            if (component != null) {
+                component.repaint();
+            }
+        }
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (layers.isEmpty() || component == null) {
+            return;
+        }
+        Rectangle clip = g.getClipBounds();
+        int clipStart = 0;
+        int clipEnd = component.getDocument().getLength();
+        if (clip != null) {
+            clipStart = Math.max(0, component.viewToModel(new Point(0, clip.y)));
+            clipEnd = Math.max(clipStart, component.viewToModel(new Point(component.getWidth(), clip.y + clip.height)));
+        }
+        Rectangle bounds = component.getBounds();
+        Insets insets = component.getInsets();
+        bounds.x = insets.left;
+        bounds.y = insets.top;
+        bounds.width -= insets.left + insets.right;
+        bounds.height -= insets.top + insets.bottom;
+
+        for (Map.Entry<HighlightPainter, TreeMap<Integer, Integer>> layer : layers.entrySet()) {
+            TreeMap<Integer, Integer> intervals = layer.getValue();
+            Integer from = intervals.floorKey(clipStart);
+            Map<Integer, Integer> visible = intervals.subMap(from == null ? clipStart : from, true, clipEnd, true);
+            for (Map.Entry<Integer, Integer> interval : visible.entrySet()) {
+                if (interval.getValue() >= clipStart) {
+                    layer.getKey().paint(g, interval.getKey(), interval.getValue(), bounds, component);
+                }
+            }
+        }
+    }
+
+    private void damage(int start, int end) {
+        if (component == null) {
+            return;
+        }
+        TextUI ui = component.getUI();
+        int length = component.getDocument().getLength();
+        if (ui != null) {
+            ui.damageRange(component, Math.min(start, length), Math.min(end, length));
+        }
+    }
+}
@@ -113,6 +113,7 @@ public class TextPanelView extends JPanel {
         JScrollPane scrollableDocument = new JScrollPane(documentArea);
 
         documentArea.setEditable(false);
+        documentArea.setHighlighter(new IntervalHighlighter());
         documentArea.setContentType("text/plain; charset=UTF-8");
         documentArea.setStyledDocument(document);
 
@@ -128,6 +129,10 @@ public class TextPanelView extends JPanel {
 
     }
 
+    public JViewport getDocumentViewport() {
+        return ((JScrollPane) getTabs().getSelectedComponent()).getViewport();
+    }
+
     public DefaultStyledDocument getDocument() {
         return (DefaultStyledDocument) getDocumentPane().getDocument();
     }
@@ -24,12 +24,15 @@
 
 package edu.brandeis.cs.nlp.mae.agreement;
 
+import edu.brandeis.cs.nlp.mae.agreement.io.AnnotationDirsIndexer;
 import edu.brandeis.cs.nlp.mae.agreement.io.AnnotationFilesIndexer;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
@@ -65,6 +68,55 @@ public class AnnotationFilesIndexerTest {
                 1, doc2nulls);
     }
 
+    @Test
+    public void canIndexAnnotatorDirectories() throws Exception {
+        URL exmapleFileUrl = Thread.currentThread().getContextClassLoader().getResource("iaa_example");
+        File exampleDir = new File(exmapleFileUrl.getPath());
+        File datasetDir = Files.createTempDirectory("mae-iaa-dirs").toFile();
+        try {
+            for (File annotation : exampleDir.listFiles((dir, name) -> name.endsWith(".xml"))) {
+                String[] split = annotation.getName().replace(".xml", "").split("_");
+                File annotatorDir = new File(datasetDir, split[1]);
+                // suffixes in file names are optional in annotator directories
+                String fileName = split[1].equals("a1") ? annotation.getName() : split[0] + ".xml";
+                FileUtils.copyFile(annotation, new File(annotatorDir, fileName));
+            }
+            AnnotationDirsIndexer dirsIndexer = new AnnotationDirsIndexer();
+            dirsIndexer.indexAnnotations(datasetDir);
+            indexer.indexAnnotations(exampleDir);
+            assertEquals("Expected 5 annotators, found " + dirsIndexer.getAnnotators(),
+                    indexer.getAnnotators(), dirsIndexer.getAnnotators());
+            assertEquals("Expected 4 documents, found " + dirsIndexer.getDocumentNames(),
+                    indexer.getDocumentNames(), dirsIndexer.getDocumentNames());
+            for (String document : indexer.getDocumentNames()) {
+                assertEquals("Expected same number of annotations of " + document,
+                        countNull(indexer.getAnnotationsOfDocument(document)),
+                        countNull(dirsIndexer.getAnnotationsOfDocument(document)));
+            }
+        } finally {
+            FileUtils.deleteDirectory(datasetDir);
+        }
+    }
+
+    @Test
+    public void canIndexDocumentsSharingSuffixes() throws Exception {
+        File datasetDir = Files.createTempDirectory("mae-iaa-files").toFile();
+        try {
+            for (String fileName : new String[]{"doc1_a1.xml", "doc1_a2.xml", "xdoc1_a2.xml"}) {
+                FileUtils.writeStringToFile(new File(datasetDir, fileName), "<Task/>", "UTF-8");
+            }
+            indexer.indexAnnotations(datasetDir);
+            Map<String, String[]> map = indexer.getDocumentFileMap();
+            assertEquals("Expected 2 documents, found " + map.keySet(), 2, map.size());
+            assertEquals("Expected doc1 has 2 annotations, found " + (2 - countNull(map.get("doc1"))),
+                    0, countNull(map.get("doc1")));
+            assertEquals("Expected xdoc1 has 1 annotation, found " + (2 - countNull(map.get("xdoc1"))),
+                    1, countNull(map.get("xdoc1")));
+        } finally {
+            FileUtils.deleteDirectory(datasetDir);
+        }
+    }
+
     private int countNull(Object[] array) {
         int count = 0;
         for (Object obj : array) {
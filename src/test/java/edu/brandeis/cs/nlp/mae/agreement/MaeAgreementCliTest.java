@@ -0,0 +1,95 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.agreement;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by krim on 11/12/2016.
+ */
+public class MaeAgreementCliTest {
+
+    private String taskPath;
+    private String datasetPath;
+    private ByteArrayOutputStream out;
+    private ByteArrayOutputStream err;
+
+    @Before
+    public void setUp() throws Exception {
+        URL sampleFileUrl = Thread.currentThread().getContextClassLoader().getResource("iaa_example/iaaSample.dtd");
+        taskPath = new File(sampleFileUrl.getPath()).getPath();
+        URL exampleDirUrl = Thread.currentThread().getContextClassLoader().getResource("iaa_example");
+        datasetPath = new File(exampleDirUrl.getPath()).getPath();
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+    }
+
+    private int run(String... args) {
+        return MaeAgreementCli.run(args, new PrintStream(out, true), new PrintStream(err, true));
+    }
+
+    @Test
+    public void canWriteJson() throws Exception {
+        int status = run("--task", taskPath, "--dataset", datasetPath,
+                "--local", "alphau=NOUN/type/comment,VERB",
+                "--global", "pi=MOOD_DECL,MOOD_IMPE,MOOD_SUBJ");
+        String json = out.toString();
+        assertEquals("Expected success, found: " + err, 0, status);
+        assertTrue("Expected task name, found: " + json, json.contains("\"task\": \"NounVerbTask\""));
+        assertTrue("Expected 4 documents, found: " + json, json.contains("\"documents\": 4"));
+        assertTrue("Expected local alpha_u of NOUN::type, found: " + json, json.contains("\"NOUN::type\": "));
+        assertTrue("Expected global pi, found: " + json, json.contains("\"cross-tag_multi_pi\": "));
+        assertTrue("Expected timings, found: " + json, json.contains("\"millis\": "));
+    }
+
+    @Test
+    public void canWriteCsv() throws Exception {
+        int status = run("--task", taskPath, "--dataset", datasetPath,
+                "--local", "pi=NAMED_ENTITY/type", "--format", "csv", "--threads", "1");
+        String[] lines = out.toString().trim().split("\n");
+        assertEquals("Expected success, found: " + err, 0, status);
+        assertEquals("Expected a header, found: " + lines[0], "scope,metric,target,agreement,millis", lines[0].trim());
+        assertEquals("Expected 2 rows for span and type, found: " + (lines.length - 1), 3, lines.length);
+        assertTrue("Expected local pi of NAMED_ENTITY::type, found: " + lines[2],
+                lines[2].startsWith("local,pi,NAMED_ENTITY::type,"));
+    }
+
+    @Test
+    public void canRejectBadArguments() throws Exception {
+        assertEquals("Expected usage error without metrics", 2, run("--task", taskPath, "--dataset", datasetPath));
+        assertEquals("Expected usage error for unknown metric", 2,
+                run("--task", taskPath, "--dataset", datasetPath, "--local", "foo=NOUN"));
+        assertTrue("Expected usage text, found: " + err, err.toString().contains("usage:"));
+    }
+}
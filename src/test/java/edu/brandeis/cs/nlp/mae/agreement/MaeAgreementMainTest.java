@@ -25,19 +25,28 @@
 package edu.brandeis.cs.nlp.mae.agreement;
 
 import edu.brandeis.cs.nlp.mae.MaeStrings;
+import edu.brandeis.cs.nlp.mae.agreement.io.AgreementResultStore;
 import edu.brandeis.cs.nlp.mae.database.LocalSqliteDriverImpl;
 import edu.brandeis.cs.nlp.mae.database.MaeDriverI;
 import edu.brandeis.cs.nlp.mae.io.DTDLoader;
+import edu.brandeis.cs.nlp.mae.io.MaeIOException;
 import edu.brandeis.cs.nlp.mae.util.MappedSet;
+import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Created by krim on 4/14/2016.
@@ -113,4 +122,187 @@ public class MaeAgreementMainTest {
         sample.putCollection("ADJ_ADV", new LinkedList<String>() {{add("type");}});
         System.out.println(calc.agreementsToString("GlobalUnitize: " + sample, calc.calculateGlobalAlphaU(sample)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void canCalculateAgreementsInParallel() throws Exception {
+        MappedSet<String, String> units = new MappedSet<>();
+        units.putCollection("NOUN", new LinkedList<String>() {{add("type"); add("comment");}});
+        units.putCollection("VERB", new LinkedList<String>() {{add("tense"); add("aspect");}});
+        MappedSet<String, String> entities = new MappedSet<>();
+        entities.putCollection("NAMED_ENTITY", new LinkedList<String>() {{add("type");}});
+        MappedSet<String, String> moods = new MappedSet<>();
+        moods.putCollection("MOOD_DECL", new LinkedList<>());
+        moods.putCollection("MOOD_IMPE", new LinkedList<>());
+        moods.putCollection("MOOD_SUBJ", new LinkedList<>());
+
+        calc.setParallelism(1);
+        Map<String, Double> sequentialAlphaU = calc.calculateLocalAlphaU(units);
+        Map<String, Double> sequentialGlobalAlphaU = calc.calculateGlobalAlphaU(units);
+        Map<String, Double> sequentialPi = calc.calculateLocalMultiPi(entities);
+        Map<String, Double> sequentialGlobalKappa = calc.calculateGlobalMultiKappa(moods);
+
+        calc.setParallelism(4);
+        assertEquals("Expected same local alpha_u in parallel, found: " + sequentialAlphaU,
+                sequentialAlphaU, calc.calculateLocalAlphaU(units));
+        assertEquals("Expected same global alpha_u in parallel, found: " + sequentialGlobalAlphaU,
+                sequentialGlobalAlphaU, calc.calculateGlobalAlphaU(units));
+        assertEquals("Expected same local multi pi in parallel, found: " + sequentialPi,
+                sequentialPi, calc.calculateLocalMultiPi(entities));
+        assertEquals("Expected same global multi kappa in parallel, found: " + sequentialGlobalKappa,
+                sequentialGlobalKappa, calc.calculateGlobalMultiKappa(moods));
+    }
+
+    @Test
+    public void canRejectDifferentPrimaryText() throws Exception {
+        URL exmapleFileUrl = Thread.currentThread().getContextClassLoader().getResource("iaa_example");
+        File datasetDir = Files.createTempDirectory("mae-iaa").toFile();
+        try {
+            FileUtils.copyDirectory(new File(exmapleFileUrl.getPath()), datasetDir);
+            File changed = new File(datasetDir, "doc1_a2.xml");
+            String xml = FileUtils.readFileToString(changed, "UTF-8");
+            FileUtils.writeStringToFile(changed, xml.replace("house", "horse"), "UTF-8");
+            FileUtils.deleteQuietly(new File(datasetDir, "iaaSample.dtd"));
+            try {
+                new MaeAgreementMain(driver).loadAnnotationFiles(datasetDir);
+                fail("Expected doc1_a2 to be rejected for its primary text");
+            } catch (MaeIOException e) {
+                assertTrue("Expected doc1_a2 in the error, found: " + e.getMessage(),
+                        e.getMessage().contains("doc1_a2.xml"));
+            }
+        } finally {
+            FileUtils.deleteDirectory(datasetDir);
+        }
+    }
+
+    private Map<String, Double> calculateAll(MaeAgreementMain calc) throws Exception {
+        MappedSet<String, String> units = new MappedSet<>();
+        units.putCollection("VERB", new LinkedList<String>() {{add("tense"); add("aspect");}});
+        MappedSet<String, String> entities = new MappedSet<>();
+        entities.putCollection("NAMED_ENTITY", new LinkedList<String>() {{add("type");}});
+        MappedSet<String, String> moods = new MappedSet<>();
+        moods.putCollection("MOOD_DECL", new LinkedList<>());
+        moods.putCollection("MOOD_IMPE", new LinkedList<>());
+        moods.putCollection("MOOD_SUBJ", new LinkedList<>());
+
+        Map<String, Double> agreements = new TreeMap<>();
+        agreements.putAll(calc.calculateLocalAlphaU(units));
+        agreements.putAll(calc.calculateGlobalAlphaU(units));
+        agreements.putAll(calc.calculateLocalMultiPi(entities));
+        agreements.putAll(calc.calculateGlobalMultiKappa(moods));
+        return agreements;
+    }
+
+    @Test
+    public void canReuseStoredContributions() throws Exception {
+        URL exmapleFileUrl = Thread.currentThread().getContextClassLoader().getResource("iaa_example");
+        File datasetDir = Files.createTempDirectory("mae-iaa").toFile();
+        File storeDir = Files.createTempDirectory("mae-iaa-store").toFile();
+        try {
+            FileUtils.copyDirectory(new File(exmapleFileUrl.getPath()), datasetDir);
+            FileUtils.deleteQuietly(new File(datasetDir, "iaaSample.dtd"));
+            AgreementResultStore store = new AgreementResultStore(storeDir);
+
+            MaeAgreementMain first = new MaeAgreementMain(driver);
+            first.setResultStore(store);
+            first.loadAnnotationFiles(datasetDir);
+            Map<String, Double> expected = calculateAll(first);
+
+            MaeAgreementMain second = new MaeAgreementMain(driver);
+            second.setResultStore(store);
+            second.loadAnnotationFiles(datasetDir);
+            assertEquals("Expected same agreements from stored contributions", expected, calculateAll(second));
+            for (String document : second.getFileIdx().getDocumentNames()) {
+                assertFalse("Expected unchanged " + document + " not to be parsed",
+                        second.getParseCache().isInMemory(document));
+            }
+
+            File changed = new File(datasetDir, "doc1_a2.xml");
+            String xml = FileUtils.readFileToString(changed, "UTF-8");
+            FileUtils.writeStringToFile(changed, xml.replace("tense=\"\"", "tense=\"past\""), "UTF-8");
+            MaeAgreementMain fresh = new MaeAgreementMain(driver);
+            fresh.loadAnnotationFiles(datasetDir);
+            MaeAgreementMain third = new MaeAgreementMain(driver);
+            third.setResultStore(store);
+            third.loadAnnotationFiles(datasetDir);
+            Map<String, Double> recalculated = calculateAll(third);
+            assertEquals("Expected agreements of the changed dataset, found: " + recalculated,
+                    calculateAll(fresh), recalculated);
+            assertTrue("Expected changed doc1 to be parsed", third.getParseCache().isInMemory("doc1"));
+            assertFalse("Expected unchanged doc2 not to be parsed", third.getParseCache().isInMemory("doc2"));
+        } finally {
+            FileUtils.deleteDirectory(datasetDir);
+            FileUtils.deleteDirectory(storeDir);
+        }
+    }
+
+    @Test
+    public void canMissStoredContributionsOnChangedTask() throws Exception {
+        URL exmapleFileUrl = Thread.currentThread().getContextClassLoader().getResource("iaa_example");
+        File datasetDir = Files.createTempDirectory("mae-iaa").toFile();
+        File storeDir = Files.createTempDirectory("mae-iaa-store").toFile();
+        File taskFile = new File(storeDir.getParentFile(), storeDir.getName() + ".dtd");
+        MaeDriverI changedDriver = null;
+        try {
+            FileUtils.copyDirectory(new File(exmapleFileUrl.getPath()), datasetDir);
+            FileUtils.moveFile(new File(datasetDir, "iaaSample.dtd"), taskFile);
+            AgreementResultStore store = new AgreementResultStore(storeDir);
+
+            MaeDriverI originalDriver = new LocalSqliteDriverImpl(MaeStrings.TEST_DB_FILE + ".dtd");
+            try {
+                new DTDLoader(originalDriver).read(taskFile);
+                MaeAgreementMain first = new MaeAgreementMain(originalDriver);
+                first.setResultStore(store);
+                first.loadAnnotationFiles(datasetDir);
+                calculateAll(first);
+            } finally {
+                originalDriver.destroy();
+            }
+
+            String dtd = FileUtils.readFileToString(taskFile, "UTF-8");
+            FileUtils.writeStringToFile(taskFile,
+                    dtd + "\n<!ATTLIST NAMED_ENTITY comment CDATA #IMPLIED >\n", "UTF-8");
+            changedDriver = new LocalSqliteDriverImpl(MaeStrings.TEST_DB_FILE + ".dtd");
+            new DTDLoader(changedDriver).read(taskFile);
+            MaeAgreementMain second = new MaeAgreementMain(changedDriver);
+            second.setResultStore(store);
+            second.loadAnnotationFiles(datasetDir);
+            calculateAll(second);
+            for (String document : second.getFileIdx().getDocumentNames()) {
+                assertTrue("Expected " + document + " to be parsed again under a changed DTD",
+                        second.getParseCache().isInMemory(document));
+            }
+        } finally {
+            if (changedDriver != null) {
+                changedDriver.destroy();
+            }
+            FileUtils.deleteQuietly(taskFile);
+            FileUtils.deleteDirectory(datasetDir);
+            FileUtils.deleteDirectory(storeDir);
+        }
+    }
+
+    @Test
+    public void canJoinAttributesToTheirOwnTags() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<NounVerbTask>\n" +
+                "<TEXT><![CDATA[I went and I go and I went.]]></TEXT>\n<TAGS>\n" +
+                "<VERB id=\"V0\" spans=\"2~6\" text=\"went\" tense=\"past\" />\n" +
+                "<VERB id=\"V1\" spans=\"13~15\" text=\"go\" tense=\"%s\" />\n" +
+                "<VERB id=\"V2\" spans=\"22~26\" text=\"went\" tense=\"past\" />\n" +
+                "</TAGS>\n</NounVerbTask>";
+        File datasetDir = Files.createTempDirectory("mae-iaa").toFile();
+        try {
+            FileUtils.writeStringToFile(new File(datasetDir, "doc1_a1.xml"), String.format(xml, "present"), "UTF-8");
+            FileUtils.writeStringToFile(new File(datasetDir, "doc1_a2.xml"), String.format(xml, "future"), "UTF-8");
+            MaeAgreementMain calc = new MaeAgreementMain(driver);
+            calc.loadAnnotationFiles(datasetDir);
+            MappedSet<String, String> sample = new MappedSet<>();
+            sample.putCollection("VERB", new LinkedList<String>() {{add("tense");}});
+            double alphaU = calc.calculateLocalAlphaU(sample).get("VERB::tense");
+            // annotators disagree only on V1; when tenses leak into all VERB tags
+            // (joined without tids) V0 and V2 disagree too, and it drops to 0.5121
+            assertEquals("Expected disagreement only on V1, found: " + alphaU, 0.8253, alphaU, 0.0001);
+        } finally {
+            FileUtils.deleteDirectory(datasetDir);
+        }
+    }
+}
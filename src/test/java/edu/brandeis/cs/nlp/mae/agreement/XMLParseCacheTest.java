@@ -0,0 +1,139 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.agreement;
+
+import edu.brandeis.cs.nlp.mae.MaeStrings;
+import edu.brandeis.cs.nlp.mae.agreement.io.AnnotationFilesIndexer;
+import edu.brandeis.cs.nlp.mae.agreement.io.ParsedAnnotation;
+import edu.brandeis.cs.nlp.mae.agreement.io.XMLParseCache;
+import edu.brandeis.cs.nlp.mae.database.LocalSqliteDriverImpl;
+import edu.brandeis.cs.nlp.mae.database.MaeDriverI;
+import edu.brandeis.cs.nlp.mae.io.DTDLoader;
+import edu.brandeis.cs.nlp.mae.io.ParsedAtt;
+import edu.brandeis.cs.nlp.mae.io.ParsedTag;
+import edu.brandeis.cs.nlp.mae.util.SpanHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by krim on 11/10/2016.
+ */
+public class XMLParseCacheTest {
+
+    private MaeDriverI driver;
+    private AnnotationFilesIndexer indexer;
+    private XMLParseCache parseCache;
+
+    @Before
+    public void setUp() throws Exception {
+        driver = new LocalSqliteDriverImpl(MaeStrings.TEST_DB_FILE);
+        URL sampleFileUrl = Thread.currentThread().getContextClassLoader().getResource("iaa_example/iaaSample.dtd");
+        new DTDLoader(driver).read(new File(sampleFileUrl.getPath()));
+
+        URL exampleDirUrl = Thread.currentThread().getContextClassLoader().getResource("iaa_example");
+        indexer = new AnnotationFilesIndexer();
+        indexer.indexAnnotations(new File(exampleDirUrl.getPath()));
+        parseCache = new XMLParseCache(driver, indexer);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        parseCache.clear();
+        driver.destroy();
+    }
+
+    @Test
+    public void canIndexTagsBySpans() throws Exception {
+        ParsedAnnotation parse = parseCache.getParses("doc1")[0];
+        List<ParsedTag> nouns = parse.getTagsOfTypeAndSpans("NOUN", SpanHandler.range(1, 11));
+        assertEquals("Expected 1 noun at 1~11, found: " + nouns, 1, nouns.size());
+        assertEquals("Expected N0 at 1~11, found: " + nouns.get(0).getTid(), "N0", nouns.get(0).getTid());
+        assertTrue("Expected no verb at 1~11",
+                parse.getTagsOfTypeAndSpans("VERB", SpanHandler.range(1, 11)).isEmpty());
+        assertEquals("Expected 3 nouns, found: " + parse.getTagsOfType("NOUN").size(),
+                3, parse.getTagsOfType("NOUN").size());
+    }
+
+    @Test
+    public void canIndexAttsByTid() throws Exception {
+        ParsedAnnotation parse = parseCache.getParses("doc1")[0];
+        boolean found = false;
+        for (ParsedAtt att : parse.getAttsOfTid("NE0")) {
+            if (att.getAttTypeName().equals("type")) {
+                assertEquals("Expected NE0 to be a person, found: " + att.getAttValue(), "person", att.getAttValue());
+                found = true;
+            }
+        }
+        assertTrue("Expected type attribute of NE0", found);
+        assertTrue("Expected no attributes of unknown tid", parse.getAttsOfTid("NONE").isEmpty());
+    }
+
+    @Test
+    public void canCacheParses() throws Exception {
+        assertTrue("Expected the same parses on second request",
+                parseCache.getParses("doc2") == parseCache.getParses("doc2"));
+    }
+
+    @Test
+    public void canSpillEvictedParses() throws Exception {
+        XMLParseCache boundedCache = new XMLParseCache(driver.getTaskSchema(), indexer, 1);
+        try {
+            ParsedAnnotation[] doc1 = parseCache.getParses("doc1");
+            boundedCache.getParses("doc1");
+            boundedCache.getParses("doc2");
+            assertFalse("Expected doc1 to be evicted", boundedCache.isInMemory("doc1"));
+            assertTrue("Expected doc1 to be spilled to disk", boundedCache.isSpilled("doc1"));
+            assertTrue("Expected doc2 to be kept", boundedCache.isInMemory("doc2"));
+
+            ParsedAnnotation[] reloaded = boundedCache.getParses("doc1");
+            assertTrue("Expected doc1 to be read back", boundedCache.isInMemory("doc1"));
+            assertEquals("Expected " + doc1.length + " annotations, found: " + reloaded.length,
+                    doc1.length, reloaded.length);
+            for (int i = 0; i < doc1.length; i++) {
+                assertEquals("Expected same tags, found: " + reloaded[i].getParsedTags(),
+                        doc1[i].getParsedTags().toString(), reloaded[i].getParsedTags().toString());
+                assertEquals("Expected same number of attributes, found: " + reloaded[i].getParsedAtts().size(),
+                        doc1[i].getParsedAtts().size(), reloaded[i].getParsedAtts().size());
+            }
+            List<ParsedTag> nouns = reloaded[0].getTagsOfTypeAndSpans("NOUN", SpanHandler.range(1, 11));
+            assertEquals("Expected N0 at 1~11 after reading back, found: " + nouns,
+                    "N0", nouns.get(0).getTid());
+            assertEquals("Expected NE0 attributes after reading back",
+                    "person", reloaded[0].getAttsOfTid("NE0").get(0).getAttValue());
+        } finally {
+            boundedCache.clear();
+        }
+        assertFalse("Expected spilled files to be deleted", boundedCache.isSpilled("doc1"));
+    }
+}
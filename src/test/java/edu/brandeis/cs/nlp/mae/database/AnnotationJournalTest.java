@@ -0,0 +1,206 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.database;
+
+import edu.brandeis.cs.nlp.mae.MaeStrings;
+import edu.brandeis.cs.nlp.mae.controller.action.SaveXML;
+import edu.brandeis.cs.nlp.mae.model.*;
+import edu.brandeis.cs.nlp.mae.util.SpanHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by krim on 11/16/2016.
+ */
+public class AnnotationJournalTest {
+
+    private File taskFile;
+    private File annotationFile;
+    private File journalFile;
+    private MaeDriverI driver;
+    private MaeDriverI recovered;
+
+    @Before
+    public void setUp() throws Exception {
+        URL taskUrl = Thread.currentThread().getContextClassLoader().getResource("xml_samples/sampleTask.dtd");
+        URL annotationUrl = Thread.currentThread().getContextClassLoader().getResource("xml_samples/sampleTask.xml");
+        taskFile = new File(taskUrl.getPath());
+        annotationFile = new File(annotationUrl.getPath());
+        journalFile = File.createTempFile("mae-test", ".journal");
+
+        driver = new LocalSqliteDriverImpl(MaeStrings.TEST_DB_FILE);
+        driver.readTask(taskFile);
+        driver.readAnnotation(annotationFile);
+        driver.setJournal(new AnnotationJournal(journalFile));
+
+        recovered = new LocalSqliteDriverImpl(MaeStrings.TEST_DB_FILE + ".recovered");
+        recovered.readTask(taskFile);
+        recovered.readAnnotation(annotationFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        driver.destroy();
+        recovered.destroy();
+        journalFile.delete();
+    }
+
+    private int makeEdits() throws Exception {
+        TagType noun = driver.getTagTypeByName("NOUN");
+        TagType action = driver.getTagTypeByName("ACTION");
+        ExtentTag newNoun = driver.createExtentTag(noun, "Miller", SpanHandler.range(5, 11));
+        driver.updateAttribute(driver.getTagByTid("N0"), driver.getAttributeTypeOfTagTypeByName(noun, "type"), "person");
+        driver.deleteAttribute(driver.getTagByTid("N1"), driver.getAttributeTypeOfTagTypeByName(noun, "comment"));
+        ExtentTag verb = (ExtentTag) driver.getTagByTid("V0");
+        driver.updateTagSpans(verb, SpanHandler.range(12, 16));
+        driver.updateTagText(verb, "want");
+        LinkTag newLink = driver.createLinkTag(action);
+        driver.addArgument(newLink, driver.getArgumentTypeOfTagTypeByName(action, "from"), newNoun);
+        driver.UpdateArgument((LinkTag) driver.getTagByTid("AC1"), driver.getArgumentTypeOfTagTypeByName(action, "to"), null);
+        driver.deleteTag(driver.getTagByTid("AR0"));
+        driver.deleteTag(driver.createExtentTag(noun, "entire", SpanHandler.range(22, 28)));
+        return 11;
+    }
+
+    @Test
+    public void canRecoverEditsFromJournal() throws Exception {
+        int edits = makeEdits();
+        driver.getJournal().sync();
+
+        int replayed = AnnotationJournal.replay(journalFile, recovered);
+        assertEquals(
+                "Expected all edits to be replayed, found: " + replayed,
+                edits, replayed);
+        assertTrue(
+                "Expected recovered annotation to be marked as changed",
+                recovered.isAnnotationChanged());
+        assertEquals(
+                "Expected recovered annotation to be identical to the edited one",
+                SaveXML.generateXMLString(driver), SaveXML.generateXMLString(recovered));
+    }
+
+    @Test
+    public void canIgnoreTornRecord() throws Exception {
+        int edits = makeEdits();
+        driver.getJournal().close();
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write(new byte[]{0, 0, 1});
+        }
+
+        int replayed = AnnotationJournal.replay(journalFile, recovered);
+        assertEquals(
+                "Expected a torn record to be skipped, found: " + replayed,
+                edits, replayed);
+    }
+
+    @Test
+    public void canStopAtGarbageRecordLength() throws Exception {
+        int edits = makeEdits();
+        driver.getJournal().close();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(journalFile, true))) {
+            out.writeInt(Integer.MAX_VALUE);
+            out.writeLong(0L);
+        }
+
+        int replayed = AnnotationJournal.replay(journalFile, recovered);
+        assertEquals(
+                "Expected a record running past the end of file to be skipped, found: " + replayed,
+                edits, replayed);
+    }
+
+    @Test
+    public void canMoveAsideCorruptedJournal() throws Exception {
+        makeEdits();
+        driver.getJournal().close();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(journalFile, true))) {
+            // a well-framed record whose string length runs past the record
+            out.writeInt(6);
+            out.writeByte(AnnotationJournal.TAG_DELETED);
+            out.writeByte(1);
+            out.writeInt(Integer.MAX_VALUE);
+        }
+        File failed = new File(journalFile.getPath() + ".failed");
+        try {
+            String message = AnnotationJournal.recover(journalFile, recovered);
+            assertTrue(
+                    "Expected a warning about the failed recovery, found: " + message,
+                    message.startsWith("Failed to recover"));
+            assertFalse(
+                    "Expected the corrupted journal to be moved aside",
+                    journalFile.exists());
+            assertTrue(
+                    "Expected the corrupted journal to be kept as " + failed,
+                    failed.exists());
+        } finally {
+            failed.delete();
+        }
+    }
+
+    @Test
+    public void canMoveAsideJournalForChangedTask() throws Exception {
+        makeEdits();
+        driver.getJournal().close();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(journalFile))) {
+            // creates a tag of a type no longer in the DTD
+            byte[] record = {AnnotationJournal.EXTENT_CREATED, 4,
+                    0, 0, 0, 2, 'X', '0', 0, 0, 0, 1, 'X', -1, -1, -1, -1, 0, 0, 0, 3, '0', '~', '1'};
+            out.writeInt(record.length);
+            out.write(record);
+        }
+        File failed = new File(journalFile.getPath() + ".failed");
+        try {
+            String message = AnnotationJournal.recover(journalFile, recovered);
+            assertTrue(
+                    "Expected a warning about the failed recovery, found: " + message,
+                    message.startsWith("Failed to recover"));
+            assertTrue(
+                    "Expected the journal to be kept as " + failed,
+                    failed.exists());
+        } finally {
+            failed.delete();
+        }
+    }
+
+    @Test
+    public void canTruncateJournalOnSave() throws Exception {
+        makeEdits();
+        driver.getJournal().truncate();
+        int replayed = AnnotationJournal.replay(journalFile, recovered);
+        assertEquals(
+                "Expected nothing to replay after truncation, found: " + replayed,
+                0, replayed);
+    }
+
+}
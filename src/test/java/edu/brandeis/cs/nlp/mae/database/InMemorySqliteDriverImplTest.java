@@ -0,0 +1,77 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.database;
+
+import edu.brandeis.cs.nlp.mae.model.ExtentTag;
+import edu.brandeis.cs.nlp.mae.model.TagType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created by krim on 11/4/2016.
+ */
+public class InMemorySqliteDriverImplTest {
+
+    private InMemorySqliteDriverImpl driver;
+
+    TagType noun;
+
+    @Before
+    public void setUp() throws Exception {
+        driver = new InMemorySqliteDriverImpl();
+        driver.setAnnotationFileName("TEST_SAMPLE");
+        noun = driver.createTagType("NOUN", "N", false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        driver.destroy();
+    }
+
+    @Test
+    public void canAnnotateWithoutDBFile() throws Exception {
+        driver.createExtentTag("N0", noun, "jenny", 5,6,7,8,9);
+        driver.setPrimaryText("hello jenny");
+        assertEquals(
+                "Expected the DB to be in memory, found: " + driver.getDBSourceName(),
+                InMemorySqliteDriverImpl.IN_MEMORY_DB, driver.getDBSourceName());
+        assertFalse(
+                "Expected no DB file to be written",
+                new File(InMemorySqliteDriverImpl.IN_MEMORY_DB).exists());
+
+        ExtentTag tag = driver.getTagsAt(7).get(0);
+        assertEquals(
+                "Expected the span index is kept, found: " + tag.getId(),
+                "N0", tag.getId());
+        assertEquals(
+                "Expected the id tracker is kept, found: " + driver.getNextId(noun),
+                "N1", driver.getNextId(noun));
+    }
+}
@@ -32,9 +32,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 import static org.junit.Assert.*;
 
@@ -86,6 +84,46 @@ public class LocalSqliteDriverImplTest {
 
     }
 
+    @Test
+    public void canShareTaskSchemaAcrossDrivers() throws Exception {
+        driver.setTaskName("NounVerbTask");
+        AttributeType nounType = driver.createAttributeType(noun, "type");
+        driver.setAttributeTypeValueSet(nounType, "person", "place");
+        TaskSchema schema = driver.getTaskSchema();
+        String attTypeId = schema.getAttributeType(noun, "type").getId();
+
+        LocalSqliteDriverImpl other = new LocalSqliteDriverImpl(MaeStrings.TEST_DB_FILE + ".other");
+        try {
+            other.installTaskSchema(schema);
+            assertEquals(
+                    "Expected task name is installed, found: " + other.getTaskName(),
+                    "NounVerbTask", other.getTaskName());
+            assertEquals(
+                    "Expected 2 extent tag types, found: " + other.getExtentTagTypes().size(),
+                    2, other.getExtentTagTypes().size());
+            assertSame(
+                    "Expected tag types are shared, not re-created",
+                    schema.getTagType("NOUN"), other.getTagTypeByName("NOUN"));
+            assertEquals(
+                    "Expected argument types are installed, found: " + other.getArgumentTypesOfLinkTagType(semanticRole),
+                    2, other.getArgumentTypesOfLinkTagType(semanticRole).size());
+
+            ExtentTag tag = other.createExtentTag("N1", other.getTagTypeByName("NOUN"), "jenny", new int[]{0, 1});
+            other.addAttribute(tag, other.getAttributeTypeOfTagTypeByName(noun, "type"), "person");
+            assertEquals(
+                    "Expected attributes refer to installed types, found: " + other.getTagByTid("N1").getAttributesWithNames(),
+                    "person", other.getTagByTid("N1").getAttributesWithNames().get("type"));
+            assertEquals(
+                    "Expected shared types are not modified, found: " + schema.getAttributeType(noun, "type").getId(),
+                    attTypeId, schema.getAttributeType(noun, "type").getId());
+            assertEquals(
+                    "Expected the original driver is intact, found: " + driver.getAllExtentTagsOfAllTypes(false),
+                    0, driver.getAllExtentTagsOfAllTypes(false).size());
+        } finally {
+            other.destroy();
+        }
+    }
+
     @Test
     public void canCreateTag() throws Exception {
         ExtentTag tag = driver.createExtentTag("N01", noun, "jenny", 5,6,7,8,9);
@@ -216,6 +254,67 @@ public class LocalSqliteDriverImplTest {
 
     }
 
+    @Test
+    public void canKeepLocationIndexUpToDate() throws Exception {
+        ExtentTag nTag = driver.createExtentTag("N01", noun, "jenny", 5,6,7,8,9);
+        ExtentTag vTag = driver.createExtentTag("V01", verb, "loves", 11, 12, 13, 14, 15);
+
+        List<ExtentTag> retrievedTags = driver.getTagsOfTypeBetween(noun, 0, 20);
+        assertEquals(
+                "Expected 1 noun tag in the range, found: " + retrievedTags.size(),
+                1, retrievedTags.size());
+        assertEquals(
+                "Expected 2 tags in the range, found: " + driver.getTagsByTypesBetween(7, 12).size(),
+                2, driver.getTagsByTypesBetween(7, 12).size());
+
+        driver.updateTagSpans(nTag, new int[]{20,21,22});
+        assertTrue(
+                "Expected N01 is no longer at its old offset",
+                driver.getTagsAt(5).isEmpty());
+        assertTrue(
+                "Expected N01 is found at its new offset",
+                driver.getTagsAt(21).contains(nTag));
+
+        driver.deleteTag(vTag);
+        assertTrue(
+                "Expected V01 is not found after deletion",
+                driver.getTagsAt(12).isEmpty());
+        assertEquals(
+                "Expected only N01 anchors remain, found: " + driver.getAllAnchors(),
+                3, driver.getAllAnchors().size());
+
+    }
+
+    @Test
+    public void canRetrieveTagsByPages() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            driver.createExtentTag("N0" + i, noun, "n", i);
+        }
+        driver.createExtentTag("V01", verb, "v", 10);
+
+        assertEquals(
+                "Expected 5 noun tags are counted, found: " + driver.countTagsOfType(noun),
+                5, driver.countTagsOfType(noun));
+
+        List<ExtentTag> page = driver.getExtentTagsOfType(noun, 0, 2);
+        assertEquals(
+                "Expected first page has 2 tags, found: " + page.size(),
+                2, page.size());
+        page = driver.getExtentTagsOfType(noun, 4, 2);
+        assertEquals(
+                "Expected last page has 1 tag, found: " + page.size(),
+                1, page.size());
+        assertEquals(
+                "Expected tags are paged in order of tid, found: " + page.get(0).getId(),
+                "N04", page.get(0).getId());
+
+        TagType retrieved = driver.getTagTypeByName("NOUN");
+        assertEquals(
+                "Expected lazy tag collection can still be iterated, found: " + retrieved.getNumInstances(),
+                5, retrieved.getNumInstances());
+
+    }
+
     @Test
     public void canRetrieveAllNCTagsByTypes() throws Exception {
         ExtentTag nTag3 = driver.createExtentTag("N03", noun, "jimmy", 16,17,18,19,20);
@@ -268,6 +367,47 @@ public class LocalSqliteDriverImplTest {
 
     }
 
+    @Test
+    public void canKeepAnchorBitmapsUpToDate() throws Exception {
+        ExtentTag nTag = driver.createExtentTag("N01", noun, "jenny", 5, 6, 7, 8, 9);
+        ExtentTag overlapping = driver.createExtentTag("N02", noun, "y lov", 8, 9, 10, 11, 12);
+        ExtentTag vTag = driver.createExtentTag("V01", verb, "lov", 20, 21, 22);
+
+        BitSet nouns = driver.getAnchorBitsOfTagType(noun);
+        assertEquals(
+                "Expected 8 noun anchors, found: " + nouns,
+                8, nouns.cardinality());
+
+        driver.deleteTag(overlapping);
+        nouns = driver.getAnchorBitsOfTagType(noun);
+        assertEquals(
+                "Expected N01 anchors remain after deleting an overlapping tag, found: " + nouns,
+                5, nouns.cardinality());
+        assertTrue(
+                "Expected shared offset is still anchored by N01", nouns.get(8));
+
+        LinkTag link = driver.createLinkTag("S01", semanticRole);
+        driver.addArgument(link, agent, nTag);
+        driver.addArgument(link, pred, vTag);
+        BitSet arguments = driver.getAnchorBitsOfTagType(semanticRole);
+        assertEquals(
+                "Expected anchors of both arguments, found: " + arguments,
+                8, arguments.cardinality());
+
+        driver.updateTagSpans(vTag, new int[]{30, 31});
+        arguments = driver.getAnchorBitsOfTagType(semanticRole);
+        assertTrue(
+                "Expected argument anchors to follow span updates, found: " + arguments,
+                arguments.get(30) && !arguments.get(20));
+
+        driver.deleteTag(link);
+        arguments = driver.getAnchorBitsOfTagType(semanticRole);
+        assertTrue(
+                "Expected no argument anchors after deleting the link, found: " + arguments,
+                arguments.isEmpty());
+
+    }
+
     @Test
     public void canRetrieveLinkTagsByType() throws Exception {
         ExtentTag nTag = driver.createExtentTag("N01", noun, "jenny", 5,6,7,8,9);
@@ -336,4 +476,93 @@ public class LocalSqliteDriverImplTest {
         // cannot continue test on atts/args, because of lack of methods in driver to get atts/args without referencing tag
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void canDeleteTagsInBulk() throws Exception {
+        ExtentTag john = driver.createExtentTag("N0", noun, "John", 0, 1, 2, 3);
+        ExtentTag loves = driver.createExtentTag("V0", verb, "loves", 5, 6, 7, 8, 9);
+        driver.createExtentTag("N1", noun, "Mary", 10, 11, 12, 13);
+        driver.createExtentTag("N2", noun, "", new int[0]);
+        driver.addAttribute(john, driver.createAttributeType(noun, "proper"), "true");
+        LinkTag link = driver.createLinkTag("S0", semanticRole);
+        driver.addArgument(link, agent, john);
+        driver.addArgument(link, pred, loves);
+
+        Set<String> deleted = driver.deleteTags(Collections.singletonList("N0"));
+        assertEquals(
+                "Expected the link on N0 to be deleted with it, found: " + deleted,
+                new HashSet<>(Arrays.asList("N0", "S0")), deleted);
+        assertTrue(
+                "Expected N0 and S0 not to be in DB any more",
+                driver.getTagByTid("N0") == null && driver.getTagByTid("S0") == null);
+        assertEquals(
+                "Expected location index to forget N0, found: " + driver.getTagsAt(1).size(),
+                0, driver.getTagsAt(1).size());
+
+        deleted = driver.deleteTagsBetween(9, 11);
+        assertEquals(
+                "Expected tags overlapping 9~11 to be deleted, found: " + deleted,
+                new HashSet<>(Arrays.asList("V0", "N1")), deleted);
+
+        deleted = driver.deleteTagsOfType(noun);
+        assertEquals(
+                "Expected remaining NC noun to be deleted, found: " + deleted,
+                Collections.singleton("N2"), deleted);
+    }
+
+    @Test
+    public void canRetypeTags() throws Exception {
+        AttributeType nounType = driver.createAttributeType(noun, "type");
+        driver.createAttributeType(noun, "comment");
+        driver.createAttributeType(verb, "type");
+        ExtentTag john = driver.createExtentTag("N0", noun, "John", 0, 1, 2, 3);
+        driver.addAttribute(john, nounType, "person");
+        driver.addAttribute(john, driver.getAttributeTypeOfTagTypeByName(noun, "comment"), "to be dropped");
+        LinkTag link = driver.createLinkTag("S0", semanticRole);
+        driver.addArgument(link, agent, john);
+
+        Map<String, String> renamed = driver.retypeTags(Collections.singletonList("N0"), verb);
+        assertEquals(
+                "Expected N0 to get a new verb id, found: " + renamed,
+                "V0", renamed.get("N0"));
+        Tag retyped = driver.getTagByTid("V0");
+        assertEquals(
+                "Expected retyped tag to be a verb, found: " + retyped.getTagTypeName(),
+                "VERB", retyped.getTagTypeName());
+        assertEquals(
+                "Expected only the attribute shared with the new type, found: " + retyped.getAttributesWithNames(),
+                Collections.singletonMap("type", "person"), retyped.getAttributesWithNames());
+        assertEquals(
+                "Expected location index to follow the new id, found: " + driver.getTagIdsAt(1),
+                Collections.singletonList("V0"), driver.getTagIdsAt(1));
+        assertEquals(
+                "Expected the link to point at the new id",
+                "V0", ((LinkTag) driver.getTagByTid("S0")).getArgumentTags().get(0).getId());
+
+        try {
+            driver.retypeTags(Collections.singletonList("V0"), semanticRole);
+            fail("Expected retyping an extent tag into a link to fail");
+        } catch (MaeDBException ignored) {
+        }
+    }
+
+    @Test
+    public void canKeepIdRefsOnRetype() throws Exception {
+        AttributeType antecedent = driver.createAttributeType(noun, "antecedent");
+        driver.setAttributeTypeIDRef(antecedent, true);
+        AttributeType comment = driver.createAttributeType(noun, "comment");
+        driver.createExtentTag("N0", noun, "John", 0, 1, 2, 3);
+        ExtentTag he = driver.createExtentTag("N1", noun, "he", 10, 11);
+        driver.addAttribute(he, antecedent, "N0");
+        driver.addAttribute(he, comment, "N0");
+
+        Map<String, String> renamed = driver.retypeTags(Collections.singletonList("N0"), verb);
+        Map<String, String> attributes = driver.getTagByTid("N1").getAttributesWithNames();
+        assertEquals(
+                "Expected the IDREF attribute to follow the new id, found: " + attributes,
+                renamed.get("N0"), attributes.get("antecedent"));
+        assertEquals(
+                "Expected a free-text attribute to be untouched, found: " + attributes,
+                "N0", attributes.get("comment"));
+    }
+}
@@ -28,6 +28,7 @@ import edu.brandeis.cs.nlp.mae.MaeStrings;
 import edu.brandeis.cs.nlp.mae.database.LocalSqliteDriverImpl;
 import edu.brandeis.cs.nlp.mae.database.MaeDBException;
 import edu.brandeis.cs.nlp.mae.model.ExtentTag;
+import edu.brandeis.cs.nlp.mae.model.LinkTag;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -37,7 +38,9 @@ import org.xml.sax.SAXException;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -113,6 +116,74 @@ public class AnnotationLoaderTest {
         loader.readAsXml(sampleFile);
     }
 
+    @Test
+    public void canLoadXMLInSinglePass() throws Exception {
+        readSimpleDTD();
+        loader = new AnnotationLoader(driver);
+        URL sampleFileUrl = Thread.currentThread().getContextClassLoader().getResource("xml_samples/sampleTask.xml");
+        File sampleFile = new File(sampleFileUrl.getPath());
+        String warnings = loader.loadFile(sampleFile);
+        assertFalse(
+                "Expected the file is read as an annotation, found: " + warnings,
+                warnings.contains("read as the primary text"));
+        assertEquals(
+                "Expected the primary text is read, found: " + driver.getPrimaryText(),
+                "\nMrs Miller wants the entire house repainted.\n", driver.getPrimaryText());
+        assertTrue(
+                "Expected tags are read along with the text",
+                driver.getAllExtentTagsOfAllTypes(false).size() > 0);
+    }
+
+    @Test
+    public void canLoadXMLInBatches() throws Exception {
+        readSimpleDTD();
+        loader = new AnnotationLoader(driver);
+        loader.setBatchSize(1);
+        URL sampleFileUrl = Thread.currentThread().getContextClassLoader().getResource("xml_samples/sampleTask.xml");
+        File sampleFile = new File(sampleFileUrl.getPath());
+        loader.loadFile(sampleFile);
+        assertEquals(
+                "Expected 6 extent tags are loaded, found: " + driver.getAllExtentTagsOfAllTypes(false).size(),
+                6, driver.getAllExtentTagsOfAllTypes(false).size());
+        assertEquals(
+                "Expected 3 link tags are loaded, found: " + driver.getAllLinkTagsOfAllTypes().size(),
+                3, driver.getAllLinkTagsOfAllTypes().size());
+
+        LinkTag description = (LinkTag) driver.getTagByTid("D1");
+        Map<String, String> args = description.getArgumentTidsWithNames();
+        assertEquals(
+                "Expected arguments across batches are linked, found: " + args,
+                "N1", args.get("arg0"));
+        assertEquals(
+                "Expected arguments across batches are linked, found: " + args,
+                "A0", args.get("arg2"));
+        assertEquals(
+                "Expected attributes are loaded in batches, found: " + description.getAttributesWithNames(),
+                "described_by", description.getAttributesWithNames().get("relationship"));
+    }
+
+    @Test
+    public void canAbortOnTaskNameMismatch() throws Exception {
+        readSimpleDTD();
+        URL sampleFileUrl = Thread.currentThread().getContextClassLoader().getResource("xml_samples/sampleTask.xml");
+        File sampleFile = new File(sampleFileUrl.getPath());
+        MaeXMLParser parser = new MaeXMLParser(driver);
+        assertFalse(
+                "Expected parsing is aborted on a different task name",
+                parser.readAnnotationFile(sampleFile, "AnotherTask"));
+        assertTrue(parser.isXmlDocument());
+        assertEquals(
+                "Expected no tags are parsed after aborting, found: " + parser.getParsedTags().size(),
+                0, parser.getParsedTags().size());
+
+        sampleFileUrl = Thread.currentThread().getContextClassLoader().getResource("xml_samples/sampleTask.dtd");
+        sampleFile = new File(sampleFileUrl.getPath());
+        assertFalse(parser.readAnnotationFile(sampleFile, "NounVerbTask"));
+        assertFalse(
+                "Expected a DTD file is not recognized as an XML",
+                parser.isXmlDocument());
+    }
+
     @Ignore
     public void canReadComplexXML() throws IOException, SAXException, MaeIOException, MaeDBException {
         readComplexDTD();
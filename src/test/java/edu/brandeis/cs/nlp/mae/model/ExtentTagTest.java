@@ -48,7 +48,7 @@ public class ExtentTagTest {
     protected final static String DATABASE_URL = "jdbc:sqlite:" + MaeStrings.TEST_DB_FILE;
     protected ConnectionSource cs;
 
-    Dao<CharIndex, Integer> charIndexDao;
+    Dao<CharSpan, Integer> charSpanDao;
     Dao<ExtentTag, String> eTagDao;
     Dao<TagType, Integer> tagTypeDao;
     Dao<AttributeType, Integer> attTypeDao;
@@ -73,7 +73,7 @@ public class ExtentTagTest {
         tagTypeDao = DaoManager.createDao(source, TagType.class);
         attTypeDao = DaoManager.createDao(source, AttributeType.class);
         attDao = DaoManager.createDao(source, Attribute.class);
-        charIndexDao = DaoManager.createDao(source, CharIndex.class);
+        charSpanDao = DaoManager.createDao(source, CharSpan.class);
 
         lTagDao = DaoManager.createDao(source, LinkTag.class);
         argTypeDao = DaoManager.createDao(source, ArgumentType.class);
@@ -81,7 +81,7 @@ public class ExtentTagTest {
 
         dropAllTables(source);
 
-        TableUtils.createTable(source, CharIndex.class);
+        TableUtils.createTable(source, CharSpan.class);
         TableUtils.createTable(source, ExtentTag.class);
         TableUtils.createTable(source, TagType.class);
         TableUtils.createTable(source, AttributeType.class);
@@ -99,7 +99,7 @@ public class ExtentTagTest {
     }
 
     protected void dropAllTables(ConnectionSource source) throws Exception {
-        TableUtils.dropTable(source, CharIndex.class, true);
+        TableUtils.dropTable(source, CharSpan.class, true);
         TableUtils.dropTable(source, ExtentTag.class, true);
         TableUtils.dropTable(source, TagType.class, true);
         TableUtils.dropTable(source, AttributeType.class, true);
@@ -121,7 +121,7 @@ public class ExtentTagTest {
 
     protected ExtentTag createTag(String tid, TagType tagType, String text, int[] spans) throws Exception {
         ExtentTag tag = new ExtentTag(tid, tagType, "filename");
-        for (CharIndex ci: tag.setSpans(spans)) { charIndexDao.create(ci); }
+        for (CharSpan cs: tag.setSpans(spans)) { charSpanDao.create(cs); }
         tag.setText(text);
         eTagDao.create(tag);
         return tag;
@@ -131,7 +131,7 @@ public class ExtentTagTest {
     public void canSaveTag() throws Exception {
         ExtentTag tag = new ExtentTag("N01", noun, "filename");
         tag.setText("John");
-        for (CharIndex ci: tag.setSpans(1, 2, 3, 4)) { charIndexDao.create(ci); }
+        for (CharSpan cs: tag.setSpans(1, 2, 3, 4)) { charSpanDao.create(cs); }
         eTagDao.create(tag);
         assertEquals(
                 "Expected 1 tag in DB, found " + eTagDao.countOf(),
@@ -142,8 +142,12 @@ public class ExtentTagTest {
                 "Expected same text after retrieved, found " + retrievedTag.getText(),
                 "John", retrievedTag.getText());
         assertEquals(
-                "Expected 4 chars allocated, found " + retrievedTag.getSpans().size(),
-                4, retrievedTag.getSpans().size()
+                "Expected 1 span allocated, found " + retrievedTag.getSpans().size(),
+                1, retrievedTag.getSpans().size()
+        );
+        assertEquals(
+                "Expected 4 chars allocated, found " + retrievedTag.getSpansAsArray().length,
+                4, retrievedTag.getSpansAsArray().length
         );
     }
 
@@ -153,7 +157,7 @@ public class ExtentTagTest {
         ArrayList<int[]> spans = new ArrayList<>();
         spans.add(span);
         ExtentTag nTag = new ExtentTag("N01", noun, "filename");
-        for (CharIndex ci: nTag.setSpans(spans)) { charIndexDao.create(ci); }
+        for (CharSpan cs: nTag.setSpans(spans)) { charSpanDao.create(cs); }
         nTag.setText("Crown");
         eTagDao.create(nTag);
 
@@ -186,7 +190,7 @@ public class ExtentTagTest {
                 = eTagDao.queryBuilder().where().
                 eq(DBSchema.TAB_TAG_FCOL_TT, verb.getName()).query().get(0);
         assertEquals(
-                "Expected 3 chars allocated to vTag set by List, found: " + retrievedVTag.getSpans().size(),
+                "Expected 3 chars allocated to vTag set by List, found: " + retrievedVTag.getSpansAsArray().length,
                 3, retrievedVTag.getSpansAsArray().length
         );
         assertEquals(
@@ -248,28 +252,29 @@ public class ExtentTagTest {
         createTag("N01", noun, "Crown", new int[]{0,1,2,3,4});
         createTag("V01", verb, "own", new int[]{2,3,4});
 
-        List<CharIndex> retrievedIndices
-                = charIndexDao.queryForEq(DBSchema.TAB_CI_COL_LOCATION, 3);
+        List<CharSpan> retrievedSpans
+                = charSpanDao.queryBuilder().where()
+                .le(DBSchema.TAB_CS_COL_START, 3).and().gt(DBSchema.TAB_CS_COL_END, 3).query();
 
         assertEquals(
-                "Expected 2 tags at offset 3, found: " + retrievedIndices.size(),
-                2, retrievedIndices.size()
+                "Expected 2 tags at offset 3, found: " + retrievedSpans.size(),
+                2, retrievedSpans.size()
         );
 
-        QueryBuilder<CharIndex, Integer> ciQb = charIndexDao.queryBuilder();
-        ciQb.where().eq(DBSchema.TAB_CI_COL_LOCATION, 3);
+        QueryBuilder<CharSpan, Integer> csQb = charSpanDao.queryBuilder();
+        csQb.where().le(DBSchema.TAB_CS_COL_START, 3).and().gt(DBSchema.TAB_CS_COL_END, 3);
         QueryBuilder<ExtentTag, String> tagQb = eTagDao.queryBuilder();
-        List<ExtentTag> retrievedTags = tagQb.join(ciQb).query();
+        List<ExtentTag> retrievedTags = tagQb.join(csQb).query();
 
         assertEquals(
                 "Expected 2 tags from querying 3, found: " + retrievedTags.size(),
                 2, retrievedTags.size()
         );
 
-        ciQb.reset();
+        csQb.reset();
         tagQb.reset();
-        ciQb.where().eq(DBSchema.TAB_CI_COL_LOCATION, 1);
-        retrievedTags = tagQb.join(ciQb).query();
+        csQb.where().le(DBSchema.TAB_CS_COL_START, 1).and().gt(DBSchema.TAB_CS_COL_END, 1);
+        retrievedTags = tagQb.join(csQb).query();
 
         assertEquals(
                 "Expected 1 tags from querying 1, found: " + retrievedTags.size(),
@@ -277,6 +282,22 @@ public class ExtentTagTest {
         );
     }
 
+    @Test
+    public void canStoreDiscontinuousSpans() throws Exception {
+        createTag("N02", noun,
+                "John ... Smith", new int[]{3,4,5,6,10,11,12,13,14});
+
+        ExtentTag retrievedTag = eTagDao.queryForAll().get(0);
+        assertEquals(
+                "Expected 2 span rows for a discontinuous tag, found: " + retrievedTag.getSpans().size(),
+                2, retrievedTag.getSpans().size()
+        );
+        assertEquals(
+                "Expected 9 chars allocated, found: " + retrievedTag.getSpansAsArray().length,
+                9, retrievedTag.getSpansAsArray().length
+        );
+    }
+
     @Test
     public void canDeleteTag() throws Exception{
 
@@ -318,4 +339,21 @@ public class ExtentTagTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void canWriteEscapedXml() throws Exception {
+        createTag("N01", noun, "Tom & \"Jerry\"\n<'s> &amp;", new int[]{1, 2, 3, 4});
+        ExtentTag retrievedTag = eTagDao.queryForId("N01");
+        String expected = "<NOUN id=\"N01\" spans=\"1~5\" "
+                + "text=\"Tom &amp; &quot;Jerry&quot; &lt;&apos;s&gt; &amp;\"  />";
+        assertEquals(
+                "Expected escaped XML, found: " + retrievedTag.toXmlString(),
+                expected, retrievedTag.toXmlString());
+
+        StringBuilder streamed = new StringBuilder();
+        retrievedTag.writeXml(streamed);
+        assertEquals(
+                "Expected streamed XML to be identical, found: " + streamed,
+                expected, streamed.toString());
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.util;
+
+import org.junit.Test;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+import java.awt.*;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created by krim on 11/19/2016.
+ */
+public class ForegroundStyleRunsTest {
+
+    @Test
+    public void canCoalesceConsecutiveLocations() throws Exception {
+        ForegroundStyleRuns runs = new ForegroundStyleRuns();
+        for (int location : new int[]{0, 1, 2, 3, 5, 6}) {
+            runs.add(location, Color.RED, false, false);
+        }
+        runs.add(7, Color.RED, true, false);
+        runs.add(8, Color.BLUE, true, false);
+        assertEquals(
+                "Expected 4 runs, found: " + runs.size(),
+                4, runs.size());
+        assertTrue(
+                "Expected first run to be 0~4, found: " + Arrays.toString(runs.getRanges().get(0)),
+                Arrays.equals(new int[]{0, 4}, runs.getRanges().get(0)));
+    }
+
+    @Test
+    public void canApplyRunsWithSingleChangeEvent() throws Exception {
+        StyledDocument document = FontHandler.stringToSimpleStyledDocument(
+                "John loves Mary and Mary loves John", "Serif", 12, Color.BLACK);
+        final int[] changeEvents = {0};
+        document.addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                changeEvents[0]++;
+            }
+        });
+        ForegroundStyleRuns runs = new ForegroundStyleRuns();
+        for (int location = 0; location < 4; location++) {
+            runs.add(location, Color.RED, false, false);
+        }
+        for (int location = 11; location < 15; location++) {
+            runs.add(location, Color.BLUE, true, true);
+        }
+        runs.applyTo(document);
+
+        assertEquals(
+                "Expected a single change event, found: " + changeEvents[0],
+                1, changeEvents[0]);
+        Color color = StyleConstants.getForeground(document.getCharacterElement(2).getAttributes());
+        assertEquals(
+                "Expected first run to be red, found: " + color,
+                Color.RED, color);
+        boolean underline = StyleConstants.isUnderline(document.getCharacterElement(12).getAttributes());
+        assertTrue(
+                "Expected second run to be underlined, found: " + underline, underline);
+        color = StyleConstants.getForeground(document.getCharacterElement(6).getAttributes());
+        assertEquals(
+                "Expected gap to keep default color, found: " + color,
+                Color.BLACK, color);
+    }
+}
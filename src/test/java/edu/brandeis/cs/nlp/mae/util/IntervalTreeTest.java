@@ -0,0 +1,124 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.util;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created by krim on 11/2/2016.
+ */
+public class IntervalTreeTest {
+
+    @Test
+    public void canAnswerPointQueries() throws Exception {
+        IntervalTree<String> tree = new IntervalTree<>();
+        tree.add(0, 5, "N01");
+        tree.add(2, 5, "V01");
+        tree.add(10, 15, "N02");
+
+        List<String> found = tree.getValuesAt(3);
+        assertEquals(
+                "Expected 2 intervals at offset 3, found: " + found,
+                Arrays.asList("N01", "V01"), found);
+        found = tree.getValuesAt(5);
+        assertTrue(
+                "Expected no intervals at an exclusive end, found: " + found,
+                found.isEmpty());
+        found = tree.getValuesAt(14);
+        assertEquals(
+                "Expected 1 interval at offset 14, found: " + found,
+                Collections.singletonList("N02"), found);
+    }
+
+    @Test
+    public void canAnswerRangeQueries() throws Exception {
+        IntervalTree<String> tree = new IntervalTree<>();
+        tree.add(0, 5, "N01");
+        tree.add(2, 5, "V01");
+        tree.add(10, 15, "N02");
+
+        List<String> found = tree.getValuesBetween(4, 11);
+        assertEquals(
+                "Expected 3 intervals overlapping [4, 11), found: " + found,
+                3, found.size());
+        found = tree.getValuesBetween(5, 10);
+        assertTrue(
+                "Expected no intervals in a gap, found: " + found,
+                found.isEmpty());
+    }
+
+    @Test
+    public void canRemoveIntervals() throws Exception {
+        IntervalTree<String> tree = new IntervalTree<>();
+        tree.add(0, 5, "N01");
+        tree.add(0, 5, "N02");
+        assertFalse(
+                "Expected a duplicate interval-value pair not to be added",
+                tree.add(0, 5, "N01"));
+
+        assertTrue(tree.remove(0, 5, "N01"));
+        assertFalse(tree.remove(0, 5, "N01"));
+        assertEquals(
+                "Expected only N02 remains, found: " + tree.getValuesAt(1),
+                Collections.singletonList("N02"), tree.getValuesAt(1));
+        assertEquals(1, tree.size());
+    }
+
+    @Test
+    public void agreesWithLinearScan() throws Exception {
+        Random random = new Random(42);
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        List<int[]> intervals = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(10000);
+            int end = start + 1 + random.nextInt(50);
+            intervals.add(new int[]{start, end, i});
+            tree.add(start, end, i);
+        }
+        // remove every third interval to exercise rebalancing on deletion
+        for (int i = 0; i < intervals.size(); i += 3) {
+            int[] interval = intervals.get(i);
+            assertTrue(tree.remove(interval[0], interval[1], interval[2]));
+        }
+        for (int q = 0; q < 200; q++) {
+            int begin = random.nextInt(10000);
+            int end = begin + 1 + random.nextInt(200);
+            Set<Integer> expected = new TreeSet<>();
+            for (int i = 0; i < intervals.size(); i++) {
+                int[] interval = intervals.get(i);
+                if (i % 3 != 0 && interval[0] < end && interval[1] > begin) {
+                    expected.add(interval[2]);
+                }
+            }
+            assertEquals(
+                    String.format("Expected same results as a linear scan over [%d, %d)", begin, end),
+                    expected, new TreeSet<>(tree.getValuesBetween(begin, end)));
+        }
+    }
+}
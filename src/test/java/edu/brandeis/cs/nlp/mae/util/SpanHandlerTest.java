@@ -116,6 +116,17 @@ public class SpanHandlerTest {
                         20, MaeStrings.SPANRANGE, 24),
                 string
         );
+
+        pairs.clear();
+        pairs.add(new int[]{5,9});
+        pairs.add(new int[]{0,3});
+        pairs.add(new int[]{3,6});
+        string = SpanHandler.convertPairsToString(pairs);
+        assertEquals(
+                "Should merge overlapping and adjacent spans, found: " + string,
+                String.format("%d%s%d", 0, MaeStrings.SPANRANGE, 9),
+                string
+        );
     }
 
     @Test
@@ -156,6 +167,14 @@ public class SpanHandlerTest {
                 SpanHandler.listOfArraysEquals(pairs, gold)
         );
 
+        array = new int[]{0,1,2,3,7,8,9,10,12};
+        pairs = SpanHandler.convertArrayToPairs(array);
+        gold.add(new int[]{12,13});
+        assertTrue(
+                "Should convert a multispan ending with a singleton, found: " + SpanHandler.listOfArraysToString(pairs),
+                SpanHandler.listOfArraysEquals(pairs, gold)
+        );
+
     }
 
 
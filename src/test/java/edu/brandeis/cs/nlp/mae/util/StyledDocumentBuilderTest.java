@@ -0,0 +1,82 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.util;
+
+import org.junit.Test;
+
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+import java.awt.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created by krim on 11/18/2016.
+ */
+public class StyledDocumentBuilderTest {
+
+    @Test
+    public void canMergeRunsOfSameFont() throws Exception {
+        StyledDocumentBuilder builder = new StyledDocumentBuilder(12, Color.BLACK);
+        builder.append("John ", "Serif").append("loves ", "Serif").append("😀", "Emoji").append(" Mary", "Serif");
+        assertEquals(
+                "Expected 3 runs after merging adjacent ones, found: " + builder.getRunCount(),
+                3, builder.getRunCount());
+
+        StyledDocument document = builder.build();
+        String text = document.getText(0, document.getLength());
+        assertEquals(
+                "Expected text to be intact, found: " + text,
+                "John loves 😀 Mary", text);
+        String font = StyleConstants.getFontFamily(document.getCharacterElement(11).getAttributes());
+        assertEquals(
+                "Expected second run to keep its own font, found: " + font,
+                "Emoji", font);
+        font = StyleConstants.getFontFamily(document.getCharacterElement(14).getAttributes());
+        assertEquals(
+                "Expected last run in default font, found: " + font,
+                "Serif", font);
+        int size = StyleConstants.getFontSize(document.getCharacterElement(0).getAttributes());
+        assertEquals(
+                "Expected font size to be applied, found: " + size,
+                12, size);
+    }
+
+    @Test
+    public void canBuildDocumentWithoutSurrogates() throws Exception {
+        StringBuilder plain = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            plain.append("lorem ipsum ");
+        }
+        StyledDocument document = FontHandler.stringToSimpleStyledDocument(plain.toString(), "Serif", 12, Color.BLACK);
+        assertEquals(
+                "Expected whole text in the document, found: " + document.getLength(),
+                plain.length(), document.getLength());
+        int firstRunEnd = document.getCharacterElement(0).getEndOffset();
+        assertEquals(
+                "Expected the whole text in a single run, found a run ending at: " + firstRunEnd,
+                plain.length(), firstRunEnd);
+    }
+}
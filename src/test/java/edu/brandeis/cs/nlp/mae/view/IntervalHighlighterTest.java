@@ -0,0 +1,77 @@
+/*
+ * MAE - Multi-purpose Annotation Environment
+ *
+ * Copyright Keigh Rim (krim@brandeis.edu)
+ * Department of Computer Science, Brandeis University
+ * Original program by Amber Stubbs (astubbs@cs.brandeis.edu)
+ *
+ * MAE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, @see <a href="http://www.gnu.org/licenses">http://www.gnu.org/licenses</a>.
+ *
+ * For feedback, reporting bugs, use the project on Github
+ * @see <a href="https://github.com/keighrim/mae-annotation">https://github.com/keighrim/mae-annotation</a>.
+ */
+
+package edu.brandeis.cs.nlp.mae.view;
+
+import edu.brandeis.cs.nlp.mae.util.ColorHandler;
+import edu.brandeis.cs.nlp.mae.util.SpanHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.*;
+import javax.swing.text.Highlighter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created by krim on 11/20/2016.
+ */
+public class IntervalHighlighterTest {
+
+    private IntervalHighlighter highlighter;
+
+    @Before
+    public void setUp() throws Exception {
+        JTextPane pane = new JTextPane();
+        pane.setText("John loves Mary and Mary loves John");
+        highlighter = new IntervalHighlighter();
+        pane.setHighlighter(highlighter);
+    }
+
+    @Test
+    public void canMergeOffsetsIntoIntervals() throws Exception {
+        Highlighter.HighlightPainter painter = ColorHandler.getDefaultHighlighter();
+        int[] offsets = SpanHandler.range(0, 1000);
+        highlighter.addHighlights(SpanHandler.convertArrayToPairs(offsets), painter);
+        assertEquals(
+                "Expected a single interval for consecutive offsets, found: " + highlighter.getIntervalCount(),
+                1, highlighter.getIntervalCount());
+
+        highlighter.addHighlights(SpanHandler.convertArrayToPairs(new int[]{1200, 1201, 1300}), painter);
+        highlighter.addHighlights(SpanHandler.convertArrayToPairs(new int[]{1000, 1100}), painter);
+        assertEquals(
+                "Expected adjacent intervals to be merged, found: " + highlighter.getIntervalCount(),
+                4, highlighter.getIntervalCount());
+
+        highlighter.addHighlights(SpanHandler.convertArrayToPairs(new int[]{5, 6}), ColorHandler.getVividHighliter());
+        assertEquals(
+                "Expected a separate layer for another painter, found: " + highlighter.getIntervalCount(),
+                5, highlighter.getIntervalCount());
+
+        highlighter.removeAllHighlights();
+        assertEquals(
+                "Expected no intervals after removing all, found: " + highlighter.getIntervalCount(),
+                0, highlighter.getIntervalCount());
+    }
+}